@@ -0,0 +1,242 @@
+package com.hevlar.productgraphql;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hevlar.productgraphql.controller.CategoryController;
+import com.hevlar.productgraphql.controller.ProductController;
+import com.hevlar.productgraphql.exception.CustomExceptionResolver;
+import com.hevlar.productgraphql.execution.BlockingExecutionInstrumentation;
+import com.hevlar.productgraphql.execution.CachingPreparsedDocumentProvider;
+import com.hevlar.productgraphql.execution.ExecutionThreads;
+import com.hevlar.productgraphql.model.Category;
+import com.hevlar.productgraphql.model.Product;
+import com.hevlar.productgraphql.repository.BlockingCategoryReads;
+import com.hevlar.productgraphql.repository.BlockingProductReads;
+import com.hevlar.productgraphql.repository.CategoryRepository;
+import com.hevlar.productgraphql.repository.CategoryRepositoryCustomImpl;
+import com.hevlar.productgraphql.repository.MongoIndexes;
+import com.hevlar.productgraphql.repository.ProductRepository;
+import com.hevlar.productgraphql.repository.ProductRepositoryCustomImpl;
+import com.hevlar.productgraphql.service.CategoryService;
+import com.hevlar.productgraphql.service.ChangeFeed;
+import com.hevlar.productgraphql.service.ProductCache;
+import com.hevlar.productgraphql.service.ProductImportService;
+import com.hevlar.productgraphql.service.ProductService;
+import com.mongodb.reactivestreams.client.MongoClient;
+import com.mongodb.reactivestreams.client.MongoClients;
+import graphql.execution.instrumentation.Instrumentation;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.repository.support.ReactiveMongoRepositoryFactory;
+import org.springframework.data.repository.core.support.RepositoryComposition;
+import org.springframework.graphql.ExecutionGraphQlResponse;
+import org.springframework.graphql.data.method.annotation.support.AnnotatedControllerConfigurer;
+import org.springframework.graphql.execution.BatchLoaderRegistry;
+import org.springframework.graphql.execution.DefaultBatchLoaderRegistry;
+import org.springframework.graphql.execution.DefaultExecutionGraphQlService;
+import org.springframework.graphql.execution.GraphQlSource;
+import org.springframework.graphql.support.DefaultExecutionGraphQlRequest;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Throughput, p99 latency and heap use of the reactive and the blocking execution modes under bursts of
+ * 1k to 50k concurrent requests, each a page of a category and a batch of products by id, read from the Mongo
+ * at -Djmh.mongo.uri (mongodb://localhost:27017 by default). One operation is one burst, so requests per second
+ * are the score times the concurrency. The p99 latency of a request and the peak heap used, sampled every
+ * few milliseconds while the bursts run, are printed after every iteration, allocation rates come with -prof gc.
+ * The blocking mode runs as productgraphql.execution.mode=blocking does: each request starts on an execution
+ * thread, the reads block it on the synchronous driver and the fetched values are completed there.
+ * Run on JDK 21 to measure it on virtual threads, on JDK 17 it runs on a pool of 256 platform threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class ExecutionModeLoadBenchmark {
+
+    private static final String CATEGORY_PAGE = """
+            query CategoryPage($categoryHierarchy: [String!]!) {
+                productsByCategory(categoryHierarchy: $categoryHierarchy, first: 20) {
+                    edges { cursor node { id name status tags } }
+                    pageInfo { hasNextPage endCursor }
+                }
+            }
+            """;
+
+    private static final String PRODUCTS_BY_IDS = """
+            query ProductsByIds($ids: [ID!]!) {
+                getProducts(ids: $ids) { id name variants(first: 3) { name attributeList { key value } } }
+            }
+            """;
+
+    @Param({"reactive", "blocking"})
+    String mode;
+
+    @Param({"1000", "10000", "50000"})
+    int concurrency;
+
+    AnnotationConfigApplicationContext context;
+    MongoClient mongoClient;
+    com.mongodb.client.MongoClient blockingMongoClient;
+    ExecutorService executor;
+    Scheduler scheduler;
+    DefaultExecutionGraphQlService graphQlService;
+    List<String> categoryHierarchy;
+    List<String> productIds;
+    final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    final AtomicLong peakHeapUsed = new AtomicLong();
+    ScheduledExecutorService heapSampler;
+    Timer latency;
+
+    @Setup(Level.Trial)
+    public void setup(){
+        SyntheticCatalog catalog = SyntheticCatalog.of(100, 100_000, 5);
+        categoryHierarchy = catalog.getLeafHierarchies().get(0);
+        productIds = catalog.getProducts().stream().limit(20).map(Product::getId).toList();
+
+        String uri = System.getProperty("jmh.mongo.uri", "mongodb://localhost:27017");
+        mongoClient = MongoClients.create(uri);
+        ReactiveMongoTemplate template = new ReactiveMongoTemplate(mongoClient, "ProductGraphQlBenchmark");
+        template.dropCollection(Product.class).block();
+        template.dropCollection(Category.class).block();
+        MongoIndexes.declared().forEach((type, indexes) -> indexes.forEach(index -> template.indexOps(type).ensureIndex(index).block()));
+        ReactiveMongoRepositoryFactory factory = new ReactiveMongoRepositoryFactory(template);
+        factory.getRepository(ProductRepository.class,
+                        RepositoryComposition.RepositoryFragments.just(new ProductRepositoryCustomImpl(template)))
+                .insertUnordered(catalog.getProducts())
+                .block();
+        template.save(catalog.getTopCategory()).block();
+
+        if(mode.equals("blocking")){
+            executor = ExecutionThreads.newExecutor(256);
+            scheduler = Schedulers.fromExecutorService(executor, "graphql-blocking");
+            blockingMongoClient = com.mongodb.client.MongoClients.create(uri);
+        }
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+        context = new AnnotationConfigApplicationContext();
+        context.registerBean(MeterRegistry.class, () -> meterRegistry);
+        if(blockingMongoClient != null){
+            MongoTemplate blockingTemplate = new MongoTemplate(blockingMongoClient, "ProductGraphQlBenchmark");
+            context.registerBean(BlockingProductReads.class, () -> new BlockingProductReads(blockingTemplate, scheduler));
+            context.registerBean(BlockingCategoryReads.class, () -> new BlockingCategoryReads(blockingTemplate, scheduler));
+        }
+        // as the application wires the fragments, with the blocking reads in the blocking mode
+        context.registerBean(ProductRepository.class, () -> factory.getRepository(ProductRepository.class,
+                RepositoryComposition.RepositoryFragments.just(new ProductRepositoryCustomImpl(template, context.getBeanProvider(BlockingProductReads.class)))));
+        context.registerBean(CategoryRepository.class, () -> factory.getRepository(CategoryRepository.class,
+                RepositoryComposition.RepositoryFragments.just(new CategoryRepositoryCustomImpl(template, context.getBeanProvider(BlockingCategoryReads.class)))));
+        context.registerBean(BatchLoaderRegistry.class, DefaultBatchLoaderRegistry::new);
+        // only subscriptions read the change feed, and none are benchmarked
+        context.registerBean(ChangeFeed.class, ChangeFeed::disabled);
+        context.registerBean(CategoryService.class, () -> new CategoryService(
+                context.getBean(CategoryRepository.class), meterRegistry, Duration.ofSeconds(5)));
+        context.registerBean(ProductCache.class, ProductCache::disabled);
+        context.registerBean(ProductService.class);
+        context.registerBean(ProductImportService.class, () -> new ProductImportService(
+                context.getBean(ProductRepository.class), context.getBean(CategoryService.class), new ObjectMapper(), 1000));
+        context.registerBean(ProductController.class);
+        context.registerBean(CategoryController.class);
+        context.refresh();
+
+        AnnotatedControllerConfigurer controllerConfigurer = new AnnotatedControllerConfigurer();
+        controllerConfigurer.setApplicationContext(context);
+        controllerConfigurer.afterPropertiesSet();
+
+        List<Instrumentation> instrumentation = new ArrayList<>();
+        if(executor != null) instrumentation.add(new BlockingExecutionInstrumentation(executor));
+        CachingPreparsedDocumentProvider documentProvider = new CachingPreparsedDocumentProvider(1000, meterRegistry);
+        GraphQlSource graphQlSource = GraphQlSource.schemaResourceBuilder()
+                .schemaResources(new ClassPathResource("graphql/schema.graphqls"))
+                .configureRuntimeWiring(controllerConfigurer)
+                .exceptionResolvers(List.of(new CustomExceptionResolver()))
+                .instrumentation(instrumentation)
+                .configureGraphQl(builder -> builder.preparsedDocumentProvider(documentProvider))
+                .build();
+
+        graphQlService = new DefaultExecutionGraphQlService(graphQlSource);
+        graphQlService.addDataLoaderRegistrar(context.getBean(BatchLoaderRegistry.class));
+
+        // a burst allocates and drops its responses within milliseconds, so the heap is sampled while it runs
+        heapSampler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "heap-sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        heapSampler.scheduleAtFixedRate(() -> peakHeapUsed.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max),
+                0, 5, TimeUnit.MILLISECONDS);
+    }
+
+    @Setup(Level.Iteration)
+    public void setupIteration(){
+        latency = Timer.builder("request")
+                .publishPercentiles(0.99)
+                .register(new SimpleMeterRegistry());
+        peakHeapUsed.set(0);
+    }
+
+    @TearDown(Level.Iteration)
+    public void reportIteration(){
+        double p99 = 0;
+        for(ValueAtPercentile percentile: latency.takeSnapshot().percentileValues()){
+            p99 = percentile.value(TimeUnit.MILLISECONDS);
+        }
+        System.out.printf("%n%s x %d: p99 %.2f ms, peak heap used %d MB%n", mode, concurrency, p99, peakHeapUsed.get() / (1024 * 1024));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown(){
+        heapSampler.shutdown();
+        context.close();
+        mongoClient.close();
+        if(blockingMongoClient != null) blockingMongoClient.close();
+        if(executor != null) executor.shutdown();
+    }
+
+    private Mono<ExecutionGraphQlResponse> execute(String document, Map<String, Object> variables){
+        Mono<ExecutionGraphQlResponse> response = Mono.defer(() -> graphQlService
+                .execute(new DefaultExecutionGraphQlRequest(document, null, variables, null, "1", null)));
+        // as BlockingExecutionInterceptor does for web requests
+        if(scheduler != null) response = response.subscribeOn(scheduler);
+        return response
+                .elapsed()
+                .map(timed -> {
+                    latency.record(timed.getT1(), TimeUnit.MILLISECONDS);
+                    if(!timed.getT2().getErrors().isEmpty()) throw new IllegalStateException(timed.getT2().getErrors().toString());
+                    return timed.getT2();
+                });
+    }
+
+    @Benchmark
+    public long burst(){
+        return Flux.range(0, concurrency)
+                .flatMap(i -> i % 2 == 0
+                        ? execute(CATEGORY_PAGE, Map.of("categoryHierarchy", categoryHierarchy))
+                        : execute(PRODUCTS_BY_IDS, Map.of("ids", productIds)), concurrency)
+                .count()
+                .block();
+    }
+}
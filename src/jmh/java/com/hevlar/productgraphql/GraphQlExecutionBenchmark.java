@@ -0,0 +1,164 @@
+package com.hevlar.productgraphql;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hevlar.productgraphql.controller.CategoryController;
+import com.hevlar.productgraphql.controller.ProductController;
+import com.hevlar.productgraphql.exception.CustomExceptionResolver;
+import com.hevlar.productgraphql.execution.CachingPreparsedDocumentProvider;
+import com.hevlar.productgraphql.instrumentation.GraphQlMetricsInstrumentation;
+import com.hevlar.productgraphql.instrumentation.QueryComplexityInstrumentation;
+import com.hevlar.productgraphql.model.Product;
+import com.hevlar.productgraphql.repository.CategoryRepository;
+import com.hevlar.productgraphql.repository.ProductRepository;
+import com.hevlar.productgraphql.service.CategoryService;
+import com.hevlar.productgraphql.service.ChangeFeed;
+import com.hevlar.productgraphql.service.ProductCache;
+import com.hevlar.productgraphql.service.ProductImportService;
+import com.hevlar.productgraphql.service.ProductService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.graphql.ExecutionGraphQlResponse;
+import org.springframework.graphql.data.method.annotation.support.AnnotatedControllerConfigurer;
+import org.springframework.graphql.execution.BatchLoaderRegistry;
+import org.springframework.graphql.execution.DefaultBatchLoaderRegistry;
+import org.springframework.graphql.execution.DefaultExecutionGraphQlService;
+import org.springframework.graphql.execution.GraphQlSource;
+import org.springframework.graphql.support.DefaultExecutionGraphQlRequest;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end GraphQL execution through ExecutionGraphQlService with the application's controllers, services and
+ * instrumentation, over in-memory repositories so no Mongo is needed. Covers a page of a category,
+ * a batch of products by id and the category tree.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GraphQlExecutionBenchmark {
+
+    private static final String CATEGORY_PAGE = """
+            query CategoryPage($categoryHierarchy: [String!]!) {
+                productsByCategory(categoryHierarchy: $categoryHierarchy, first: 20) {
+                    edges { cursor node { id name status tags } }
+                    pageInfo { hasNextPage endCursor }
+                }
+            }
+            """;
+
+    private static final String PRODUCTS_BY_IDS = """
+            query ProductsByIds($ids: [ID!]!) {
+                getProducts(ids: $ids) { id name variants { name attributeList { key value } } }
+            }
+            """;
+
+    private static final String CATEGORY_TREE = """
+            query CategoryTree {
+                getCategories { name subCategories { name } }
+            }
+            """;
+
+    @Param({"1000", "100000"})
+    int products;
+
+    @Param({"10", "100"})
+    int leafCategories;
+
+    AnnotationConfigApplicationContext context;
+    DefaultExecutionGraphQlService graphQlService;
+    List<String> categoryHierarchy;
+    List<String> productIds;
+
+    @Setup(Level.Trial)
+    public void setup(){
+        SyntheticCatalog catalog = SyntheticCatalog.of(leafCategories, products, 5);
+        categoryHierarchy = catalog.getLeafHierarchies().get(0);
+        productIds = catalog.getProducts().stream().limit(20).map(Product::getId).toList();
+
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+        context = new AnnotationConfigApplicationContext();
+        context.registerBean(MeterRegistry.class, () -> meterRegistry);
+        ProductRepository productRepository = InMemoryRepositories.products(catalog.getProducts());
+        CategoryRepository categoryRepository = InMemoryRepositories.categories(List.of(catalog.getTopCategory()));
+        context.registerBean(ProductRepository.class, () -> productRepository);
+        context.registerBean(CategoryRepository.class, () -> categoryRepository);
+        context.registerBean(BatchLoaderRegistry.class, DefaultBatchLoaderRegistry::new);
+        // only subscriptions read the change feed, and none are benchmarked
+        context.registerBean(ChangeFeed.class, ChangeFeed::disabled);
+        context.registerBean(CategoryService.class, () -> new CategoryService(
+                context.getBean(CategoryRepository.class), meterRegistry, Duration.ofSeconds(5)));
+        // measures execution, so every product lookup still reaches the repository
+        context.registerBean(ProductCache.class, ProductCache::disabled);
+        context.registerBean(ProductService.class);
+        context.registerBean(ProductImportService.class, () -> new ProductImportService(
+                context.getBean(ProductRepository.class), context.getBean(CategoryService.class), new ObjectMapper(), 1000));
+        context.registerBean(ProductController.class);
+        context.registerBean(CategoryController.class);
+        context.refresh();
+
+        AnnotatedControllerConfigurer controllerConfigurer = new AnnotatedControllerConfigurer();
+        controllerConfigurer.setApplicationContext(context);
+        controllerConfigurer.afterPropertiesSet();
+
+        CachingPreparsedDocumentProvider documentProvider = new CachingPreparsedDocumentProvider(1000, meterRegistry);
+        GraphQlSource graphQlSource = GraphQlSource.schemaResourceBuilder()
+                .schemaResources(new ClassPathResource("graphql/schema.graphqls"))
+                .configureRuntimeWiring(controllerConfigurer)
+                .exceptionResolvers(List.of(new CustomExceptionResolver()))
+                .instrumentation(List.of(
+                        new QueryComplexityInstrumentation(10, 10000, 10, 1000, meterRegistry),
+                        new GraphQlMetricsInstrumentation(meterRegistry)))
+                .configureGraphQl(builder -> builder.preparsedDocumentProvider(documentProvider))
+                .build();
+
+        graphQlService = new DefaultExecutionGraphQlService(graphQlSource);
+        graphQlService.addDataLoaderRegistrar(context.getBean(BatchLoaderRegistry.class));
+
+        // runs every benchmarked operation once, so a path reaching a repository method that isn't served from memory fails here
+        try{
+            categoryPage();
+            productsByIds();
+            categoryTree();
+        }finally{
+            InMemoryRepositories.requireSupported(productRepository, categoryRepository);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown(){
+        context.close();
+    }
+
+    private ExecutionGraphQlResponse execute(String document, Map<String, Object> variables){
+        ExecutionGraphQlResponse response = graphQlService
+                .execute(new DefaultExecutionGraphQlRequest(document, null, variables, null, "1", null))
+                .block();
+        if(!response.getErrors().isEmpty()) throw new IllegalStateException(response.getErrors().toString());
+        return response;
+    }
+
+    @Benchmark
+    public Object categoryPage(){
+        return execute(CATEGORY_PAGE, Map.of("categoryHierarchy", categoryHierarchy));
+    }
+
+    @Benchmark
+    public Object productsByIds(){
+        return execute(PRODUCTS_BY_IDS, Map.of("ids", productIds));
+    }
+
+    @Benchmark
+    public Object categoryTree(){
+        return execute(CATEGORY_TREE, Map.of());
+    }
+}
@@ -0,0 +1,130 @@
+package com.hevlar.productgraphql;
+
+import com.hevlar.productgraphql.model.Category;
+import com.hevlar.productgraphql.model.CategoryPath;
+import com.hevlar.productgraphql.model.Product;
+import com.hevlar.productgraphql.repository.CategoryRepository;
+import com.hevlar.productgraphql.repository.ProductRepository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Stand-ins for the Mongo repositories that serve the read paths from memory, so benchmarks can run the
+ * whole GraphQL stack without a database. Projections are ignored. A call to any other method fails and is
+ * recorded, so a benchmark can run each of its operations once at setup and fail fast with
+ * {@link #requireSupported(Object...)} instead of measuring errors.
+ */
+public final class InMemoryRepositories {
+
+    private InMemoryRepositories(){
+    }
+
+    public static ProductRepository products(List<Product> products){
+        Map<String, Product> byId = new HashMap<>();
+        Map<String, List<Product>> byCategoryPath = new HashMap<>();
+        for(Product product: products){
+            byId.put(product.getId(), product);
+            for(String ancestor: product.getCategoryAncestors()){
+                byCategoryPath.computeIfAbsent(ancestor, path -> new ArrayList<>()).add(product);
+            }
+        }
+        byCategoryPath.values().forEach(list -> list.sort(Comparator.comparing(Product::getId)));
+
+        Map<String, Function<Object[], Object>> methods = new HashMap<>();
+        methods.put("findById", args -> Mono.justOrEmpty(byId.get((String) args[0])));
+        methods.put("existsById", args -> Mono.just(byId.containsKey((String) args[0])));
+        methods.put("findVariant", args -> Mono.justOrEmpty(byId.get((String) args[0]))
+                .flatMapIterable(Product::getVariants)
+                .filter(variant -> variant.name().equals(args[1]))
+                .next());
+        methods.put("findProjectedByIds", args -> Flux.fromStream(((Collection<?>) args[0]).stream().map(byId::get).filter(Objects::nonNull)));
+        methods.put("findAllByCategory", args -> Flux.fromIterable(byCategoryPath.getOrDefault(CategoryPath.of(hierarchy(args[0])), List.of()))
+                .filter(product -> product.getCategory().equals(args[0])));
+        methods.put("findProjectedByCategory", args -> {
+            List<String> hierarchy = hierarchy(args[0]);
+            boolean includeDescendants = (boolean) args[1];
+            String afterId = (String) args[2];
+            int limit = (int) args[3];
+            Stream<Product> stream = byCategoryPath.getOrDefault(CategoryPath.of(hierarchy), List.of()).stream()
+                    .filter(product -> includeDescendants || product.getCategory().equals(hierarchy))
+                    .filter(product -> afterId == null || product.getId().compareTo(afterId) > 0);
+            return Flux.fromStream(limit > 0 ? stream.limit(limit) : stream);
+        });
+        return proxy(ProductRepository.class, "InMemoryProductRepository", methods);
+    }
+
+    public static CategoryRepository categories(List<Category> categories){
+        Map<String, Function<Object[], Object>> methods = new HashMap<>();
+        methods.put("findAll", args -> Flux.fromIterable(categories));
+        methods.put("findById", args -> Flux.fromIterable(categories).filter(category -> args[0].equals(category.getId())).next());
+        methods.put("findByName", args -> Flux.fromIterable(categories).filter(category -> category.getName().equals(args[0])).next());
+        return proxy(CategoryRepository.class, "InMemoryCategoryRepository", methods);
+    }
+
+    /**
+     * Throws listing every method called on the repositories that they don't serve from memory.
+     */
+    public static void requireSupported(Object... repositories){
+        Set<String> unsupported = new TreeSet<>();
+        for(Object repository: repositories){
+            Handler handler = (Handler) Proxy.getInvocationHandler(repository);
+            handler.unsupportedCalls.forEach(method -> unsupported.add(handler.name + "." + method));
+        }
+        if(!unsupported.isEmpty()){
+            throw new IllegalStateException("The in-memory repositories don't support " + unsupported);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<String> hierarchy(Object argument){
+        return (List<String>) argument;
+    }
+
+    private static <T> T proxy(Class<T> repository, String name, Map<String, Function<Object[], Object>> methods){
+        return repository.cast(Proxy.newProxyInstance(repository.getClassLoader(), new Class<?>[]{repository}, new Handler(name, methods)));
+    }
+
+    private static final class Handler implements InvocationHandler {
+        private final String name;
+        private final Map<String, Function<Object[], Object>> methods;
+        private final Set<String> unsupportedCalls = ConcurrentHashMap.newKeySet();
+
+        private Handler(String name, Map<String, Function<Object[], Object>> methods){
+            this.name = name;
+            this.methods = methods;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args){
+            switch(method.getName()){
+                case "toString": return name;
+                case "hashCode": return System.identityHashCode(proxy);
+                case "equals": return proxy == args[0];
+                default: break;
+            }
+            Function<Object[], Object> implementation = methods.get(method.getName());
+            if(implementation != null) return implementation.apply(args);
+            unsupportedCalls.add(method.getName());
+            UnsupportedOperationException error = new UnsupportedOperationException(name + "." + method.getName());
+            if(method.getReturnType() == Mono.class) return Mono.error(error);
+            if(method.getReturnType() == Flux.class) return Flux.error(error);
+            throw error;
+        }
+    }
+}
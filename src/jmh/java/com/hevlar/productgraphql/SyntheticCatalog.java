@@ -0,0 +1,65 @@
+package com.hevlar.productgraphql;
+
+import com.hevlar.productgraphql.model.Attribute;
+import com.hevlar.productgraphql.model.Category;
+import com.hevlar.productgraphql.model.Product;
+import com.hevlar.productgraphql.model.ProductStatus;
+import com.hevlar.productgraphql.model.Variant;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A generated catalog for benchmarks: one top category with a number of leaf categories,
+ * and products spread evenly over the leaves, each with a number of variants.
+ */
+public final class SyntheticCatalog {
+
+    public static final String TOP_CATEGORY = "Catalog";
+
+    private final Category topCategory;
+    private final List<List<String>> leafHierarchies;
+    private final List<Product> products;
+
+    private SyntheticCatalog(int leafCategories, int products, int variantsPerProduct){
+        List<Category> leaves = new ArrayList<>(leafCategories);
+        this.leafHierarchies = new ArrayList<>(leafCategories);
+        for(int i = 0; i < leafCategories; i++){
+            leaves.add(new Category("Leaf " + i, List.of()));
+            leafHierarchies.add(List.of(TOP_CATEGORY, "Leaf " + i));
+        }
+        this.topCategory = new Category(TOP_CATEGORY, leaves);
+        this.topCategory.setId("catalog");
+
+        this.products = new ArrayList<>(products);
+        for(int i = 0; i < products; i++){
+            this.products.add(new Product(String.format("%08d", i), "Product " + i, "Description of product " + i, List.of(),
+                    leafHierarchies.get(i % leafCategories), List.of("tag" + (i % 50)), variants(i, variantsPerProduct), ProductStatus.AVAILABLE));
+        }
+    }
+
+    public static SyntheticCatalog of(int leafCategories, int products, int variantsPerProduct){
+        return new SyntheticCatalog(leafCategories, products, variantsPerProduct);
+    }
+
+    public static List<Variant> variants(int product, int count){
+        List<Variant> variants = new ArrayList<>(count);
+        for(int v = 0; v < count; v++){
+            variants.add(new Variant("Variant " + product + "." + v,
+                    List.of(new Attribute("colour", "colour " + v), new Attribute("size", "size " + (v % 5)))));
+        }
+        return variants;
+    }
+
+    public Category getTopCategory(){
+        return topCategory;
+    }
+
+    public List<List<String>> getLeafHierarchies(){
+        return leafHierarchies;
+    }
+
+    public List<Product> getProducts(){
+        return products;
+    }
+}
@@ -0,0 +1,103 @@
+package com.hevlar.productgraphql.instrumentation;
+
+import com.hevlar.productgraphql.model.Attribute;
+import com.hevlar.productgraphql.model.Product;
+import com.hevlar.productgraphql.model.ProductStatus;
+import com.hevlar.productgraphql.model.Variant;
+import graphql.ExecutionInput;
+import graphql.GraphQL;
+import graphql.execution.instrumentation.ChainedInstrumentation;
+import graphql.execution.instrumentation.SimplePerformantInstrumentation;
+import graphql.schema.GraphQLSchema;
+import graphql.schema.idl.RuntimeWiring;
+import graphql.schema.idl.SchemaGenerator;
+import graphql.schema.idl.SchemaParser;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.observation.DefaultMeterObservationHandler;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.graphql.observation.GraphQlObservationInstrumentation;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Overhead of the application's metrics on a query served from memory, so nothing hides it: Spring's observation
+ * instrumentation with the application's conventions, recorded to meters, chained with {@link GraphQlMetricsInstrumentation}.
+ * The budget is for the instrumented score to stay within 5% of the plain one; compare the two.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GraphQlMetricsInstrumentationBenchmark {
+
+    private static final String QUERY = """
+            query Sofas {
+                getProductsByCategory(categoryHierarchy: ["Furniture", "Living Room"]) {
+                    id
+                    name
+                    status
+                    variants { name attributeList { key value } }
+                }
+            }
+            """;
+
+    @Param({"20", "100"})
+    int products;
+
+    GraphQL plain;
+    GraphQL instrumented;
+
+    @Setup
+    public void setup(){
+        List<Product> catalog = new ArrayList<>(products);
+        for(int i = 0; i < products; i++){
+            catalog.add(new Product(String.valueOf(i), "Sofa " + i, "Sofa", List.of(), List.of("Furniture", "Living Room"), List.of(),
+                    List.of(new Variant("blue", List.of(new Attribute("colour", "blue")))), ProductStatus.AVAILABLE));
+        }
+        RuntimeWiring wiring = RuntimeWiring.newRuntimeWiring()
+                .type("Query", builder -> builder.dataFetcher("getProductsByCategory",
+                        environment -> CompletableFuture.completedFuture(catalog)))
+                .build();
+        GraphQLSchema schema = new SchemaGenerator().makeExecutableSchema(new SchemaParser().parse(schema()), wiring);
+
+        plain = GraphQL.newGraphQL(schema).instrumentation(SimplePerformantInstrumentation.INSTANCE).build();
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        ObservationRegistry observationRegistry = ObservationRegistry.create();
+        observationRegistry.observationConfig().observationHandler(new DefaultMeterObservationHandler(meterRegistry));
+        instrumented = GraphQL.newGraphQL(schema)
+                .instrumentation(new ChainedInstrumentation(List.of(
+                        new GraphQlObservationInstrumentation(observationRegistry,
+                                new GraphQlRequestObservationConvention(), new GraphQlDataFetcherObservationConvention()),
+                        new GraphQlMetricsInstrumentation(meterRegistry))))
+                .build();
+    }
+
+    private static String schema(){
+        try(InputStream schema = GraphQlMetricsInstrumentationBenchmark.class.getResourceAsStream("/graphql/schema.graphqls")){
+            return new String(schema.readAllBytes(), StandardCharsets.UTF_8);
+        }catch(IOException ex){
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    @Benchmark
+    public Object plain(){
+        return plain.execute(ExecutionInput.newExecutionInput(QUERY).build());
+    }
+
+    @Benchmark
+    public Object instrumented(){
+        return instrumented.execute(ExecutionInput.newExecutionInput(QUERY).build());
+    }
+}
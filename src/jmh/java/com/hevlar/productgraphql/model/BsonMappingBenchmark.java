@@ -0,0 +1,79 @@
+package com.hevlar.productgraphql.model;
+
+import com.hevlar.productgraphql.SyntheticCatalog;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DocumentCodec;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of mapping products and category trees to and from BSON with the converter the repositories use.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BsonMappingBenchmark {
+
+    @Param({"5", "50"})
+    int variantsPerProduct;
+
+    @Param({"10", "1000"})
+    int leafCategories;
+
+    MappingMongoConverter converter;
+    Product product;
+    Category category;
+    Document productDocument;
+    Document categoryDocument;
+
+    @Setup
+    public void setup(){
+        MongoMappingContext mappingContext = new MongoMappingContext();
+        mappingContext.afterPropertiesSet();
+        converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, mappingContext);
+        converter.afterPropertiesSet();
+
+        SyntheticCatalog catalog = SyntheticCatalog.of(leafCategories, 1, variantsPerProduct);
+        product = catalog.getProducts().get(0);
+        category = catalog.getTopCategory();
+        productDocument = writeProduct();
+        categoryDocument = writeCategory();
+    }
+
+    @Benchmark
+    public Document writeProduct(){
+        Document document = new Document();
+        converter.write(product, document);
+        return document;
+    }
+
+    @Benchmark
+    public Product readProduct(){
+        return converter.read(Product.class, productDocument);
+    }
+
+    @Benchmark
+    public RawBsonDocument encodeProduct(){
+        return new RawBsonDocument(writeProduct(), new DocumentCodec());
+    }
+
+    @Benchmark
+    public Document writeCategory(){
+        Document document = new Document();
+        converter.write(category, document);
+        return document;
+    }
+
+    @Benchmark
+    public Category readCategory(){
+        return converter.read(Category.class, categoryDocument);
+    }
+}
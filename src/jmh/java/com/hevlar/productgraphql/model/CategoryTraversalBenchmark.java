@@ -0,0 +1,119 @@
+package com.hevlar.productgraphql.model;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the original list scanning traversal with the indexed lookups on trees of 10k+ nodes.
+ * Shapes are "breadth x depth": 10x4 = 11,110 nodes, 100x2 = 10,100 nodes, 2x13 = 16,382 nodes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CategoryTraversalBenchmark {
+
+    @Param({"10x4", "100x2", "2x13"})
+    String shape;
+
+    Category root;
+    CategoryIndex index;
+    List<List<String>> paths;
+    int next;
+
+    @Setup
+    public void setup(){
+        String[] parts = shape.split("x");
+        int breadth = Integer.parseInt(parts[0]);
+        int depth = Integer.parseInt(parts[1]);
+        root = build("Root", breadth, depth);
+        index = CategoryIndex.of(List.of(root));
+
+        Random random = new Random(42);
+        paths = new ArrayList<>();
+        for(int i = 0; i < 1024; i++){
+            List<String> path = new ArrayList<>();
+            path.add("Root");
+            Category current = root;
+            while(!current.getSubCategories().isEmpty()){
+                current = current.getSubCategories().get(random.nextInt(current.getSubCategories().size()));
+                path.add(current.getName());
+            }
+            paths.add(List.copyOf(path));
+        }
+    }
+
+    private static Category build(String name, int breadth, int depth){
+        List<Category> subCategories = new ArrayList<>();
+        if(depth > 0){
+            for(int i = 0; i < breadth; i++){
+                subCategories.add(build(name + "." + i, breadth, depth - 1));
+            }
+        }
+        return new Category(name, subCategories);
+    }
+
+    private List<String> nextPath(){
+        next = (next + 1) & 1023;
+        return paths.get(next);
+    }
+
+    @Benchmark
+    public void legacyTraverse(Blackhole blackhole){
+        List<String> path = nextPath();
+        blackhole.consume(legacyTraverse(root, path.subList(1, path.size())));
+    }
+
+    @Benchmark
+    public void indexedTraverse(Blackhole blackhole){
+        List<String> path = nextPath();
+        blackhole.consume(root.traverse(path.subList(1, path.size())));
+    }
+
+    @Benchmark
+    public void indexFind(Blackhole blackhole){
+        blackhole.consume(index.find(nextPath()));
+    }
+
+    @Benchmark
+    public void legacyHasSubCategory(Blackhole blackhole){
+        List<String> path = nextPath();
+        blackhole.consume(legacyHasSubCategory(root, path.get(1)));
+    }
+
+    @Benchmark
+    public void indexedHasSubCategory(Blackhole blackhole){
+        List<String> path = nextPath();
+        blackhole.consume(root.hasSubCategory(path.get(1)));
+    }
+
+    // the implementation Category used before the index was introduced, kept as the baseline
+    private static Category legacyTraverse(Category category, List<String> subCategoryNames){
+        for(Category subCategory: category.getSubCategories()){
+            if(subCategory.getName().equals(subCategoryNames.get(0))){
+                if(subCategoryNames.size() > 1){
+                    return legacyTraverse(subCategory, subCategoryNames.subList(1, subCategoryNames.size()));
+                }else {
+                    return subCategory;
+                }
+            }
+        }
+        throw new IllegalArgumentException("Existing category provided doesn't exist");
+    }
+
+    private static boolean legacyHasSubCategory(Category category, String name){
+        for(Category sub: category.getSubCategories()){
+            if(sub.getName().equals(name)){
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,42 @@
+package com.hevlar.productgraphql.model;
+
+import com.hevlar.productgraphql.SyntheticCatalog;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of Product.hasVariantOfName for a hit at the end of the list and for a miss.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProductVariantBenchmark {
+
+    @Param({"10", "100", "1000"})
+    int variants;
+
+    Product product;
+    String lastVariantName;
+
+    @Setup
+    public void setup(){
+        product = new Product("1", "Product", "Description", List.of(), List.of("Catalog"), List.of(),
+                SyntheticCatalog.variants(1, variants), ProductStatus.AVAILABLE);
+        lastVariantName = product.getVariants().get(variants - 1).name();
+    }
+
+    @Benchmark
+    public boolean hasVariantOfName_hit(){
+        return product.hasVariantOfName(lastVariantName);
+    }
+
+    @Benchmark
+    public boolean hasVariantOfName_miss(){
+        return product.hasVariantOfName("missing");
+    }
+}
@@ -0,0 +1,101 @@
+package com.hevlar.productgraphql.repository;
+
+import com.hevlar.productgraphql.model.Category;
+import com.mongodb.reactivestreams.client.MongoClient;
+import com.mongodb.reactivestreams.client.MongoClients;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.repository.support.ReactiveMongoRepositoryFactory;
+import org.springframework.data.repository.core.support.RepositoryComposition;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cost of inserting one category into a large tree: reading, mutating and saving the whole tree
+ * against a single $push with array filters.
+ * Needs a running Mongo, set with -Djmh.mongo.uri (defaults to localhost).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CategoryInsertBenchmark {
+
+    /** Sub categories per node x levels below the top category, 10x3 is 1,110 nodes and 20x3 is 8,420. */
+    @Param({"10x3", "20x3"})
+    String shape;
+
+    MongoClient mongoClient;
+    ReactiveMongoTemplate template;
+    CategoryRepository categoryRepository;
+    List<List<String>> parents;
+    final AtomicLong sequence = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setupTrial(){
+        mongoClient = MongoClients.create(System.getProperty("jmh.mongo.uri", "mongodb://localhost:27017"));
+        template = new ReactiveMongoTemplate(mongoClient, "ProductGraphQlBenchmark");
+        categoryRepository = new ReactiveMongoRepositoryFactory(template).getRepository(CategoryRepository.class,
+                RepositoryComposition.RepositoryFragments.just(new CategoryRepositoryCustomImpl(template)));
+    }
+
+    @Setup(Level.Iteration)
+    public void setupIteration(){
+        String[] dimensions = shape.split("x");
+        int width = Integer.parseInt(dimensions[0]);
+        int depth = Integer.parseInt(dimensions[1]);
+        parents = new ArrayList<>();
+        template.dropCollection(Category.class).block();
+        categoryRepository.save(new Category("Root", children(List.of("Root"), width, depth))).block();
+    }
+
+    private List<Category> children(List<String> path, int width, int depth){
+        // new categories go under the second to last level, so the inserts spread across branches
+        if(depth == 1) parents.add(path);
+        if(depth == 0) return List.of();
+        List<Category> children = new ArrayList<>(width);
+        for(int i = 0; i < width; i++){
+            String name = "C" + i;
+            List<String> childPath = new ArrayList<>(path);
+            childPath.add(name);
+            children.add(new Category(name, children(childPath, width, depth - 1)));
+        }
+        return children;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown(){
+        mongoClient.close();
+    }
+
+    private List<String> randomParent(){
+        return parents.get(ThreadLocalRandom.current().nextInt(parents.size()));
+    }
+
+    @Benchmark
+    public Object readModifyWrite(){
+        List<String> parent = randomParent();
+        Category newCategory = new Category("New " + sequence.incrementAndGet(), List.of());
+        return categoryRepository.findByName(parent.get(0))
+                .flatMap(category -> {
+                    Category target = category.traverse(parent.subList(1, parent.size()));
+                    List<Category> subCategories = new ArrayList<>(target.getSubCategories());
+                    subCategories.add(newCategory);
+                    target.setSubCategories(subCategories);
+                    return categoryRepository.save(category);
+                })
+                .block();
+    }
+
+    @Benchmark
+    public Object arrayFilterPush(){
+        List<String> parent = randomParent();
+        return categoryRepository.pushSubCategory(parent, new Category("New " + sequence.incrementAndGet(), List.of())).block();
+    }
+}
@@ -0,0 +1,144 @@
+package com.hevlar.productgraphql.repository;
+
+import com.hevlar.productgraphql.model.Attribute;
+import com.hevlar.productgraphql.model.Product;
+import com.hevlar.productgraphql.model.ProductProjection;
+import com.hevlar.productgraphql.model.ProductStatus;
+import com.hevlar.productgraphql.model.Variant;
+import com.mongodb.ConnectionString;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandSucceededEvent;
+import com.mongodb.reactivestreams.client.MongoClient;
+import com.mongodb.reactivestreams.client.MongoClients;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.BsonDocumentCodec;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.repository.support.ReactiveMongoRepositoryFactory;
+import org.springframework.data.repository.core.support.RepositoryComposition;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Latency and bytes read of a page of 100 products when a query selects only id and name against the whole document.
+ * Bytes are measured once per trial and reported per operation as the bytesRead counter.
+ * Needs a running Mongo, set with -Djmh.mongo.uri (defaults to localhost).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProductProjectionBenchmark {
+
+    private static final List<String> CATEGORY = List.of("Furniture", "Living Room");
+    private static final ProductProjection NARROW = ProductProjection.of(List.of("name"));
+
+    @Param({"5", "50"})
+    int variantsPerProduct;
+
+    MongoClient mongoClient;
+    ProductRepository productRepository;
+    List<String> productIds;
+    final AtomicLong replyBytes = new AtomicLong();
+    volatile boolean measuringBytes;
+    long narrowPageBytes;
+    long widePageBytes;
+    long narrowByIdsBytes;
+    long wideByIdsBytes;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class ReadCounters {
+        public long bytesRead;
+    }
+
+    @Setup(Level.Trial)
+    public void setupTrial(){
+        CommandListener bytesListener = new CommandListener() {
+            @Override
+            public void commandSucceeded(CommandSucceededEvent event){
+                if(measuringBytes && (event.getCommandName().equals("find") || event.getCommandName().equals("getMore"))){
+                    replyBytes.addAndGet(new RawBsonDocument(event.getResponse(), new BsonDocumentCodec()).getByteBuffer().remaining());
+                }
+            }
+        };
+        mongoClient = MongoClients.create(MongoClientSettings.builder()
+                .applyConnectionString(new ConnectionString(System.getProperty("jmh.mongo.uri", "mongodb://localhost:27017")))
+                .addCommandListener(bytesListener)
+                .build());
+        ReactiveMongoTemplate template = new ReactiveMongoTemplate(mongoClient, "ProductGraphQlBenchmark");
+        productRepository = new ReactiveMongoRepositoryFactory(template).getRepository(ProductRepository.class,
+                RepositoryComposition.RepositoryFragments.just(new ProductRepositoryCustomImpl(template)));
+
+        template.dropCollection(Product.class).block();
+        List<Product> products = new ArrayList<>();
+        for(int i = 0; i < 1000; i++){
+            List<Variant> variants = new ArrayList<>();
+            for(int v = 0; v < variantsPerProduct; v++){
+                variants.add(new Variant("Variant " + v, List.of(new Attribute("colour", "colour " + v), new Attribute("size", "size " + v))));
+            }
+            products.add(new Product("Product " + i, "A fairly long description of product " + i + " ".repeat(200),
+                    List.of("https://example.com/images/" + i + "/1.jpg", "https://example.com/images/" + i + "/2.jpg"),
+                    CATEGORY, List.of("tag" + (i % 50)), variants, ProductStatus.AVAILABLE));
+        }
+        productRepository.insertUnordered(products).block();
+        productIds = products.subList(0, 100).stream().map(Product::getId).toList();
+
+        narrowPageBytes = measureBytes(() -> readPage(NARROW));
+        widePageBytes = measureBytes(() -> readPage(ProductProjection.ALL));
+        narrowByIdsBytes = measureBytes(() -> readByIds(NARROW));
+        wideByIdsBytes = measureBytes(() -> readByIds(ProductProjection.ALL));
+    }
+
+    private long measureBytes(Supplier<Object> read){
+        replyBytes.set(0);
+        measuringBytes = true;
+        read.get();
+        measuringBytes = false;
+        return replyBytes.get();
+    }
+
+    private Object readPage(ProductProjection projection){
+        return productRepository.findProjectedByCategory(CATEGORY, false, null, 100, projection).collectList().block();
+    }
+
+    private Object readByIds(ProductProjection projection){
+        return productRepository.findProjectedByIds(productIds, projection).collectList().block();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown(){
+        mongoClient.close();
+    }
+
+    @Benchmark
+    public Object narrowPage(ReadCounters counters){
+        counters.bytesRead += narrowPageBytes;
+        return readPage(NARROW);
+    }
+
+    @Benchmark
+    public Object widePage(ReadCounters counters){
+        counters.bytesRead += widePageBytes;
+        return readPage(ProductProjection.ALL);
+    }
+
+    @Benchmark
+    public Object narrowByIds(ReadCounters counters){
+        counters.bytesRead += narrowByIdsBytes;
+        return readByIds(NARROW);
+    }
+
+    @Benchmark
+    public Object wideByIds(ReadCounters counters){
+        counters.bytesRead += wideByIdsBytes;
+        return readByIds(ProductProjection.ALL);
+    }
+}
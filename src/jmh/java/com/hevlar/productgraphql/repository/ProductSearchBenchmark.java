@@ -0,0 +1,105 @@
+package com.hevlar.productgraphql.repository;
+
+import com.hevlar.productgraphql.model.CategoryPath;
+import com.hevlar.productgraphql.model.Product;
+import com.hevlar.productgraphql.model.ProductProjection;
+import com.hevlar.productgraphql.model.ProductStatus;
+import com.mongodb.reactivestreams.client.MongoClient;
+import com.mongodb.reactivestreams.client.MongoClients;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.TextIndexDefinition;
+import org.springframework.data.mongodb.repository.support.ReactiveMongoRepositoryFactory;
+import org.springframework.data.repository.core.support.RepositoryComposition;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of the first and a later page of 20 search results over 1M products, for a word matched by
+ * 1 in 10 products and a tag matched by 1 in 10000, with and without a category restriction.
+ * The products are only inserted when the collection doesn't already hold them.
+ * Needs a running Mongo, set with -Djmh.mongo.uri (defaults to localhost).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProductSearchBenchmark {
+
+    private static final int PRODUCTS = 1_000_000;
+    private static final int LEAF_CATEGORIES = 100;
+    private static final int PAGE_SIZE = 20;
+    private static final String[] MATERIALS = {"oak", "walnut", "leather", "linen", "velvet", "steel", "rattan", "marble", "glass", "wool"};
+
+    @Param({"walnut", "w0042"})
+    String text;
+
+    @Param({"false", "true"})
+    boolean inCategory;
+
+    MongoClient mongoClient;
+    ProductRepository productRepository;
+    String categoryPath;
+    Product lastOfFirstPage;
+
+    @Setup(Level.Trial)
+    public void setupTrial(){
+        mongoClient = MongoClients.create(System.getProperty("jmh.mongo.uri", "mongodb://localhost:27017"));
+        ReactiveMongoTemplate template = new ReactiveMongoTemplate(mongoClient, "ProductSearchBenchmark");
+        productRepository = new ReactiveMongoRepositoryFactory(template).getRepository(ProductRepository.class,
+                RepositoryComposition.RepositoryFragments.just(new ProductRepositoryCustomImpl(template)));
+
+        if(productRepository.count().block() != PRODUCTS){
+            template.dropCollection(Product.class).block();
+            template.indexOps(Product.class).ensureIndex(TextIndexDefinition.builder()
+                    .onField("name", 10F)
+                    .onField("tags", 5F)
+                    .onField("description")
+                    .build()).block();
+            template.indexOps(Product.class).ensureIndex(new Index("categoryAncestors", Sort.Direction.ASC)).block();
+            for(int from = 0; from < PRODUCTS; from += 10_000){
+                List<Product> chunk = new ArrayList<>(10_000);
+                for(int i = from; i < from + 10_000; i++){
+                    String material = MATERIALS[i % MATERIALS.length];
+                    chunk.add(new Product(String.format("%08d", i), material + " chair " + i,
+                            "A " + material + " chair of batch " + i / 100, List.of(),
+                            List.of("Catalog", "Leaf " + (i % LEAF_CATEGORIES)), List.of(material, "w" + String.format("%04d", i / 100 % 10_000)),
+                            List.of(), ProductStatus.AVAILABLE));
+                }
+                productRepository.insertUnordered(chunk).block();
+            }
+        }
+
+        categoryPath = inCategory ? CategoryPath.of(List.of("Catalog", "Leaf 1")) : null;
+        List<Product> firstPage = search(null, null).collectList().block();
+        lastOfFirstPage = firstPage.isEmpty() ? null : firstPage.get(Math.min(firstPage.size(), PAGE_SIZE) - 1);
+    }
+
+    private Flux<Product> search(Double afterScore, String afterId){
+        return productRepository.searchProducts(text, categoryPath, afterScore, afterId, PAGE_SIZE + 1, ProductProjection.of(List.of("name")));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown(){
+        mongoClient.close();
+    }
+
+    @Benchmark
+    public Object firstPage(){
+        return search(null, null).collectList().block();
+    }
+
+    @Benchmark
+    public Object secondPage(){
+        return lastOfFirstPage == null
+                ? List.of()
+                : search(lastOfFirstPage.getScore(), lastOfFirstPage.getId()).collectList().block();
+    }
+}
@@ -0,0 +1,109 @@
+package com.hevlar.productgraphql.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hevlar.productgraphql.model.Category;
+import com.hevlar.productgraphql.model.Product;
+import com.hevlar.productgraphql.model.ProductStatus;
+import com.hevlar.productgraphql.repository.CategoryRepository;
+import com.hevlar.productgraphql.repository.CategoryRepositoryCustomImpl;
+import com.hevlar.productgraphql.repository.ProductRepository;
+import com.hevlar.productgraphql.repository.ProductRepositoryCustomImpl;
+import com.mongodb.reactivestreams.client.MongoClient;
+import com.mongodb.reactivestreams.client.MongoClients;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.repository.support.ReactiveMongoRepositoryFactory;
+import org.springframework.data.repository.core.support.RepositoryComposition;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of addProduct one at a time against the bulk addProducts path.
+ * Needs a running Mongo, set with -Djmh.mongo.uri (defaults to localhost).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ProductIngestionBenchmark {
+
+    @Param({"10000"})
+    int products;
+
+    MongoClient mongoClient;
+    ReactiveMongoTemplate template;
+    ProductRepository productRepository;
+    CategoryService categoryService;
+    ProductService productService;
+    List<Product> batch;
+
+    /**
+     * The chunk size only applies to the bulk path, so oneAtATime runs once rather than once per chunk size.
+     */
+    @State(Scope.Benchmark)
+    public static class BulkImport {
+
+        @Param({"500", "1000", "5000"})
+        int chunkSize;
+
+        ProductImportService productImportService;
+
+        @Setup(Level.Trial)
+        public void setup(ProductIngestionBenchmark benchmark){
+            productImportService = new ProductImportService(benchmark.productRepository, benchmark.categoryService, new ObjectMapper(), chunkSize);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setupTrial(){
+        mongoClient = MongoClients.create(System.getProperty("jmh.mongo.uri", "mongodb://localhost:27017"));
+        template = new ReactiveMongoTemplate(mongoClient, "ProductGraphQlBenchmark");
+        ReactiveMongoRepositoryFactory factory = new ReactiveMongoRepositoryFactory(template);
+        productRepository = factory.getRepository(ProductRepository.class,
+                RepositoryComposition.RepositoryFragments.just(new ProductRepositoryCustomImpl(template)));
+        CategoryRepository categoryRepository = factory.getRepository(CategoryRepository.class,
+                RepositoryComposition.RepositoryFragments.just(new CategoryRepositoryCustomImpl(template)));
+
+        template.dropCollection(Category.class).block();
+        categoryRepository.save(new Category("Furniture", List.of(new Category("Living Room", List.of())))).block();
+        categoryService = new CategoryService(categoryRepository, new SimpleMeterRegistry(), Duration.ofSeconds(5));
+        categoryService.refreshSnapshot().block();
+
+        productService = new ProductService(productRepository, categoryService, ProductCache.disabled());
+    }
+
+    @Setup(Level.Invocation)
+    public void setupInvocation(){
+        template.dropCollection(Product.class).block();
+        batch = new ArrayList<>(products);
+        for(int i = 0; i < products; i++){
+            batch.add(new Product("Product " + i, "Description " + i, List.of(),
+                    List.of("Furniture", "Living Room"), List.of("tag" + (i % 50)), List.of(), ProductStatus.AVAILABLE));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown(){
+        mongoClient.close();
+    }
+
+    @Benchmark
+    public Object oneAtATime(){
+        return Flux.fromIterable(batch)
+                .concatMap(productService::addProduct)
+                .count()
+                .block();
+    }
+
+    @Benchmark
+    public Object bulk(BulkImport bulkImport){
+        return bulkImport.productImportService.addProducts(batch).block();
+    }
+}
@@ -0,0 +1,84 @@
+package com.hevlar.productgraphql.config;
+
+import com.hevlar.productgraphql.execution.BlockingExecutionInstrumentation;
+import com.hevlar.productgraphql.execution.BlockingExecutionInterceptor;
+import com.hevlar.productgraphql.execution.ExecutionThreads;
+import com.hevlar.productgraphql.repository.BlockingCategoryReads;
+import com.hevlar.productgraphql.repository.BlockingProductReads;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.mongodb.reactivestreams.client.MongoDatabase;
+import io.micrometer.core.instrument.binder.mongodb.MongoMetricsCommandListener;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.mongo.MongoConnectionDetails;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.SimpleMongoClientDatabaseFactory;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * The blocking execution mode, set with productgraphql.execution.mode=blocking. GraphQL requests and their
+ * data fetchers run on execution threads instead of the event loop and the Mongo driver threads, and every product
+ * and category read blocks them on a synchronous Mongo client, see {@link BlockingProductReads}. Writes and the
+ * change streams of subscriptions stay on the reactive driver.
+ * The execution threads are virtual threads only on a Java 21 runtime. On Java 17, which the project is built for,
+ * they are a bounded pool of productgraphql.execution.blocking.pool-size platform threads, so a request holds one
+ * of them for as long as its reads block. The default reactive mode registers none of this and opens no synchronous client.
+ */
+@Configuration
+@ConditionalOnProperty(name = "productgraphql.execution.mode", havingValue = "blocking")
+public class ExecutionModeConfig {
+
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService graphQlExecutor(@Value("${productgraphql.execution.blocking.pool-size:256}") int poolSize){
+        return ExecutionThreads.newExecutor(poolSize);
+    }
+
+    @Bean
+    public Scheduler graphQlScheduler(ExecutorService graphQlExecutor){
+        // not disposed with the scheduler, the executor is shut down as a bean of its own
+        return Schedulers.fromExecutorService(graphQlExecutor, "graphql-blocking");
+    }
+
+    @Bean
+    public BlockingExecutionInterceptor blockingExecutionInterceptor(Scheduler graphQlScheduler){
+        return new BlockingExecutionInterceptor(graphQlScheduler);
+    }
+
+    @Bean
+    public BlockingExecutionInstrumentation blockingExecutionInstrumentation(ExecutorService graphQlExecutor){
+        return new BlockingExecutionInstrumentation(graphQlExecutor);
+    }
+
+    @Bean(destroyMethod = "close")
+    public MongoClient blockingMongoClient(MongoConnectionDetails connectionDetails, ObjectProvider<MongoMetricsCommandListener> metricsListener){
+        MongoClientSettings.Builder settings = MongoClientSettings.builder().applyConnectionString(connectionDetails.getConnectionString());
+        metricsListener.ifAvailable(settings::addCommandListener);
+        return MongoClients.create(settings.build());
+    }
+
+    @Bean
+    public MongoTemplate blockingMongoTemplate(MongoClient blockingMongoClient, ReactiveMongoTemplate reactiveMongoTemplate){
+        // the same database and mapping as the reactive template
+        String database = reactiveMongoTemplate.getMongoDatabase().map(MongoDatabase::getName).block();
+        return new MongoTemplate(new SimpleMongoClientDatabaseFactory(blockingMongoClient, database), reactiveMongoTemplate.getConverter());
+    }
+
+    @Bean
+    public BlockingProductReads blockingProductReads(MongoTemplate blockingMongoTemplate, Scheduler graphQlScheduler){
+        return new BlockingProductReads(blockingMongoTemplate, graphQlScheduler);
+    }
+
+    @Bean
+    public BlockingCategoryReads blockingCategoryReads(MongoTemplate blockingMongoTemplate, Scheduler graphQlScheduler){
+        return new BlockingCategoryReads(blockingMongoTemplate, graphQlScheduler);
+    }
+}
@@ -0,0 +1,15 @@
+package com.hevlar.productgraphql.config;
+
+import com.hevlar.productgraphql.execution.CachingPreparsedDocumentProvider;
+import org.springframework.boot.autoconfigure.graphql.GraphQlSourceBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class GraphQlConfig {
+
+    @Bean
+    public GraphQlSourceBuilderCustomizer preparsedDocumentCustomizer(CachingPreparsedDocumentProvider preparsedDocumentProvider){
+        return builder -> builder.configureGraphQl(graphQl -> graphQl.preparsedDocumentProvider(preparsedDocumentProvider));
+    }
+}
@@ -2,9 +2,12 @@ package com.hevlar.productgraphql.controller;
 
 import com.hevlar.productgraphql.model.Category;
 import com.hevlar.productgraphql.service.CategoryService;
+import com.hevlar.productgraphql.service.ChangeFeed;
 import org.springframework.graphql.data.method.annotation.Argument;
 import org.springframework.graphql.data.method.annotation.MutationMapping;
 import org.springframework.graphql.data.method.annotation.QueryMapping;
+import org.springframework.graphql.data.method.annotation.SchemaMapping;
+import org.springframework.graphql.data.method.annotation.SubscriptionMapping;
 import org.springframework.stereotype.Controller;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
@@ -14,14 +17,32 @@ import java.util.List;
 @Controller
 public class CategoryController {
     private final CategoryService categoryService;
+    private final ChangeFeed changeFeed;
 
-    public CategoryController(CategoryService categoryService){
+    public CategoryController(CategoryService categoryService, ChangeFeed changeFeed){
         this.categoryService = categoryService;
+        this.changeFeed = changeFeed;
     }
 
     @QueryMapping
-    public Flux<Category> getCategories(){
-        return categoryService.getCategories();
+    public Flux<Category> getCategories(@Argument Integer depth){
+        return categoryService.getCategories(depth);
+    }
+
+    @QueryMapping
+    public Mono<Category> getCategory(@Argument List<String> path, @Argument Integer depth){
+        return categoryService.getCategory(path, depth);
+    }
+
+    /**
+     * Sub categories limited to depth levels, the direct sub categories being the first level.
+     */
+    @SchemaMapping(typeName = "Category")
+    public List<Category> subCategories(Category category, @Argument Integer depth){
+        if(depth == null || category.getSubCategories() == null) return category.getSubCategories();
+        if(depth < 0) throw new IllegalArgumentException("Depth must not be negative");
+        if(depth == 0) return List.of();
+        return category.getSubCategories().stream().map(subCategory -> subCategory.withDepth(depth - 1)).toList();
     }
 
     @MutationMapping
@@ -33,4 +54,9 @@ public class CategoryController {
     public Mono<Category> addCategoryToExisting(@Argument Category newCategory, @Argument List<String> existingCategory){
         return categoryService.addCategoryToExisting(newCategory, existingCategory);
     }
+
+    @SubscriptionMapping
+    public Flux<Category> categoryTreeChanged(){
+        return changeFeed.categoryChanges();
+    }
 }
@@ -0,0 +1,45 @@
+package com.hevlar.productgraphql.controller;
+
+import graphql.relay.Connection;
+import graphql.relay.ConnectionCursor;
+import graphql.relay.DefaultConnection;
+import graphql.relay.DefaultConnectionCursor;
+import graphql.relay.DefaultEdge;
+import graphql.relay.DefaultPageInfo;
+import graphql.relay.Edge;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Encodes keyset positions into opaque Relay cursors and builds connections from a fetched page.
+ */
+final class ConnectionCursors {
+
+    private ConnectionCursors(){
+    }
+
+    static String encode(String position){
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static String decode(String cursor){
+        if(cursor == null) return null;
+        try{
+            return new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        }catch(IllegalArgumentException ex){
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+
+    static <T> Connection<T> toConnection(List<T> nodes, boolean hasNextPage, Function<T, String> position){
+        List<Edge<T>> edges = nodes.stream()
+                .<Edge<T>>map(node -> new DefaultEdge<>(node, new DefaultConnectionCursor(encode(position.apply(node)))))
+                .toList();
+        ConnectionCursor startCursor = edges.isEmpty() ? null : edges.get(0).getCursor();
+        ConnectionCursor endCursor = edges.isEmpty() ? null : edges.get(edges.size() - 1).getCursor();
+        return new DefaultConnection<>(edges, new DefaultPageInfo(startCursor, endCursor, false, hasNextPage));
+    }
+}
@@ -1,28 +1,126 @@
 package com.hevlar.productgraphql.controller;
 
+import com.hevlar.productgraphql.model.AddProductResult;
+import com.hevlar.productgraphql.model.AddVariantResult;
+import com.hevlar.productgraphql.model.Attribute;
 import com.hevlar.productgraphql.model.Product;
+import com.hevlar.productgraphql.model.ProductFilter;
+import com.hevlar.productgraphql.model.ProductProjection;
 import com.hevlar.productgraphql.model.Variant;
+import com.hevlar.productgraphql.service.CategoryService;
+import com.hevlar.productgraphql.service.ChangeFeed;
+import com.hevlar.productgraphql.service.ProductImportService;
 import com.hevlar.productgraphql.service.ProductService;
+import graphql.relay.Connection;
+import graphql.schema.DataFetchingFieldSelectionSet;
+import org.dataloader.DataLoader;
 import org.springframework.graphql.data.method.annotation.Argument;
 import org.springframework.graphql.data.method.annotation.MutationMapping;
 import org.springframework.graphql.data.method.annotation.QueryMapping;
+import org.springframework.graphql.data.method.annotation.SchemaMapping;
+import org.springframework.graphql.data.method.annotation.SubscriptionMapping;
+import org.springframework.graphql.execution.BatchLoaderRegistry;
 import org.springframework.stereotype.Controller;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
 
 @Controller
 public class ProductController {
     private final ProductService productService;
+    private final ProductImportService productImportService;
+    private final CategoryService categoryService;
+    private final ChangeFeed changeFeed;
 
-    public ProductController(ProductService productService){
+    public ProductController(ProductService productService,
+                             ProductImportService productImportService,
+                             CategoryService categoryService,
+                             ChangeFeed changeFeed,
+                             BatchLoaderRegistry batchLoaderRegistry){
         this.productService = productService;
+        this.productImportService = productImportService;
+        this.categoryService = categoryService;
+        this.changeFeed = changeFeed;
+        // every product id lookup within one request goes through this loader and is batched into one read
+        // through the product cache, and one query that reads the union of the fields the uncached lookups selected
+        batchLoaderRegistry.forTypePair(ProductKey.class, Product.class)
+                .registerMappedBatchLoader((keys, environment) -> {
+                    Map<Boolean, Set<ProductKey>> byCached = keys.stream()
+                            .collect(Collectors.partitioningBy(ProductKey::cached, Collectors.toSet()));
+                    return Mono.zip(load(byCached.get(true), true), load(byCached.get(false), false))
+                            .map(products -> {
+                                Map<ProductKey, Product> found = new HashMap<>();
+                                for(ProductKey key: keys){
+                                    Product product = (key.cached() ? products.getT1() : products.getT2()).get(key.id());
+                                    if(product != null) found.put(key, product);
+                                }
+                                return found;
+                            });
+                });
+    }
+
+    private Mono<Map<String, Product>> load(Set<ProductKey> keys, boolean cached){
+        ProductProjection projection = keys.stream()
+                .map(ProductKey::projection)
+                .reduce(ProductProjection::union)
+                .orElse(ProductProjection.ALL);
+        Set<String> productIds = keys.stream().map(ProductKey::id).collect(Collectors.toSet());
+        return productService.getProductsByIds(productIds, projection, cached);
+    }
+
+    /**
+     * Loader key of a product lookup. The projection is part of the key, so the same product selected
+     * with different fields in one request isn't served from a cached, narrower read, and so is whether
+     * the lookup may be served from the product cache.
+     */
+    record ProductKey(String id, ProductProjection projection, boolean cached) {
     }
 
     @QueryMapping
-    public Flux<Product> getProductsByCategory(@Argument List<String> categoryHierarchy){
-        return productService.getProductsByCategoryHierarchy(categoryHierarchy);
+    public Flux<Product> getProductsByCategory(@Argument List<String> categoryHierarchy, @Argument boolean includeDescendants,
+                                               DataFetchingFieldSelectionSet selectionSet){
+        return productService.getProductsByCategoryHierarchy(categoryHierarchy, includeDescendants, ProductSelections.projection(selectionSet));
+    }
+
+    @QueryMapping
+    public Mono<Connection<Product>> productsByCategory(@Argument List<String> categoryHierarchy, @Argument boolean includeDescendants,
+                                                        @Argument int first, @Argument String after,
+                                                        DataFetchingFieldSelectionSet selectionSet){
+        return productService.getProductsByCategoryHierarchy(categoryHierarchy, includeDescendants, first, ConnectionCursors.decode(after),
+                        ProductSelections.connectionProjection(selectionSet))
+                .map(page -> ConnectionCursors.toConnection(page.products(), page.hasNextPage(), Product::getId));
+    }
+
+    @QueryMapping
+    public Mono<Connection<Product>> findProducts(@Argument ProductFilter filter, @Argument int first, @Argument String after,
+                                                  DataFetchingFieldSelectionSet selectionSet){
+        return productService.findProducts(filter, first, ConnectionCursors.decode(after), ProductSelections.connectionProjection(selectionSet))
+                .map(page -> ConnectionCursors.toConnection(page.products(), page.hasNextPage(), Product::getId));
+    }
+
+    @QueryMapping
+    public Mono<Connection<Product>> findProductsByVariantAttributes(@Argument List<Attribute> attributes, @Argument List<String> categoryHierarchy,
+                                                                     @Argument boolean includeDescendants, @Argument boolean matchingVariantOnly,
+                                                                     @Argument int first, @Argument String after,
+                                                                     DataFetchingFieldSelectionSet selectionSet){
+        return productService.findProductsByVariantAttributes(attributes, categoryHierarchy, includeDescendants, first, ConnectionCursors.decode(after),
+                        matchingVariantOnly, ProductSelections.connectionProjection(selectionSet))
+                .map(page -> ConnectionCursors.toConnection(page.products(), page.hasNextPage(), Product::getId));
+    }
+
+    @QueryMapping
+    public Mono<Connection<Product>> searchProducts(@Argument String text, @Argument List<String> categoryHierarchy,
+                                                    @Argument int first, @Argument String after,
+                                                    DataFetchingFieldSelectionSet selectionSet){
+        return productService.searchProducts(text, categoryHierarchy, first, ConnectionCursors.decode(after),
+                        ProductSelections.connectionProjection(selectionSet))
+                .map(page -> ConnectionCursors.toConnection(page.products(), page.hasNextPage(), ProductService::searchPosition));
     }
 
     @MutationMapping
@@ -30,13 +128,70 @@ public class ProductController {
         return productService.addProduct(newProduct);
     }
 
+    @MutationMapping
+    public Mono<List<AddProductResult>> addProducts(@Argument List<Product> products){
+        return productImportService.addProducts(products);
+    }
+
+    @QueryMapping
+    public CompletableFuture<Product> getProduct(@Argument String productId, @Argument boolean cached,
+                                                 DataFetchingFieldSelectionSet selectionSet,
+                                                 DataLoader<ProductKey, Product> productLoader){
+        return productLoader.load(new ProductKey(productId, ProductSelections.projection(selectionSet), cached));
+    }
+
+    @QueryMapping
+    public CompletableFuture<List<Product>> getProducts(@Argument List<String> ids, @Argument boolean cached,
+                                                        DataFetchingFieldSelectionSet selectionSet,
+                                                        DataLoader<ProductKey, Product> productLoader){
+        ProductProjection projection = ProductSelections.projection(selectionSet);
+        return productLoader.loadMany(ids.stream().map(id -> new ProductKey(id, projection, cached)).toList());
+    }
+
     @QueryMapping
-    public Mono<Product> getProduct(@Argument String productId){
-        return productService.getProduct(productId);
+    public Mono<Variant> getVariant(@Argument String productId, @Argument String name){
+        return productService.getVariant(productId, name);
     }
 
+    /**
+     * Pages the variants of a product. Reads that selected the page only read that part of the list,
+     * and paging what they read again gives the same page, so every product is paged here alike.
+     */
+    @SchemaMapping(typeName = "Product")
+    public List<Variant> variants(Product product, @Argument Integer first, @Argument String after){
+        if(first != null && (first < 1 || first > ProductSelections.MAX_VARIANTS_FIRST)){
+            throw new IllegalArgumentException("First must be between 1 and " + ProductSelections.MAX_VARIANTS_FIRST);
+        }
+        return product.variantsAfter(after, first);
+    }
+
+    /**
+     * Without returnProduct the product isn't read back, only its id and the added variant are returned.
+     */
     @MutationMapping
-    public Mono<Product> addVariant(@Argument String productId, @Argument Variant variant){
-        return productService.addVariant(productId, variant);
+    public Mono<AddVariantResult> addVariant(@Argument String productId, @Argument Variant variant, @Argument boolean returnProduct){
+        if(returnProduct) return productService.addVariant(productId, variant).map(product -> AddVariantResult.withProduct(product, variant));
+        return productService.appendVariant(productId, variant).map(added -> AddVariantResult.withoutProduct(productId, added));
+    }
+
+    /**
+     * The products of a category streamed one result at a time, as an alternative to incremental delivery
+     * of getProductsByCategory. Demand from the WebSocket flows back to the Mongo cursor.
+     */
+    @SubscriptionMapping
+    public Flux<Product> productsByCategoryStream(@Argument List<String> categoryHierarchy, @Argument boolean includeDescendants,
+                                                  DataFetchingFieldSelectionSet selectionSet){
+        return productService.streamProductsByCategoryHierarchy(categoryHierarchy, includeDescendants, ProductSelections.projection(selectionSet));
+    }
+
+    @SubscriptionMapping
+    public Flux<Product> productChanged(@Argument String productId){
+        return changeFeed.productChanges(productId);
+    }
+
+    @SubscriptionMapping
+    public Flux<Product> productsInCategoryChanged(@Argument List<String> categoryHierarchy, @Argument boolean includeDescendants){
+        return categoryService.validateCategoryHierarchy(categoryHierarchy)
+                .thenMany(changeFeed.productChangesInCategory(categoryHierarchy, includeDescendants));
     }
 }
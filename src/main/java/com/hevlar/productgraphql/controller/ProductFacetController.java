@@ -0,0 +1,25 @@
+package com.hevlar.productgraphql.controller;
+
+import com.hevlar.productgraphql.model.ProductFacets;
+import com.hevlar.productgraphql.model.ProductFilter;
+import com.hevlar.productgraphql.service.ProductFacetService;
+import org.springframework.graphql.data.method.annotation.Argument;
+import org.springframework.graphql.data.method.annotation.QueryMapping;
+import org.springframework.stereotype.Controller;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+@Controller
+public class ProductFacetController {
+    private final ProductFacetService productFacetService;
+
+    public ProductFacetController(ProductFacetService productFacetService){
+        this.productFacetService = productFacetService;
+    }
+
+    @QueryMapping
+    public Mono<ProductFacets> productFacets(@Argument List<String> categoryHierarchy, @Argument ProductFilter filter){
+        return productFacetService.getProductFacets(categoryHierarchy, filter);
+    }
+}
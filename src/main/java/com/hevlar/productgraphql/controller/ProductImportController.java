@@ -0,0 +1,28 @@
+package com.hevlar.productgraphql.controller;
+
+import com.hevlar.productgraphql.model.ImportProgress;
+import com.hevlar.productgraphql.service.ProductImportService;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+
+/**
+ * Catalog import over plain HTTP, for payloads too large to send as a GraphQL request.
+ * The body is newline delimited JSON, one product per line, split into lines as it arrives
+ * and read a line at a time, so a malformed line is reported by its line number rather than ending the import.
+ */
+@RestController
+public class ProductImportController {
+    private final ProductImportService productImportService;
+
+    public ProductImportController(ProductImportService productImportService){
+        this.productImportService = productImportService;
+    }
+
+    @PostMapping(path = "/import/products", consumes = MediaType.APPLICATION_NDJSON_VALUE, produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<ImportProgress> importProducts(@RequestBody Flux<String> lines){
+        return productImportService.importJsonLines(lines);
+    }
+}
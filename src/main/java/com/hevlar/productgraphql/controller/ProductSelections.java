@@ -0,0 +1,75 @@
+package com.hevlar.productgraphql.controller;
+
+import com.hevlar.productgraphql.model.ProductProjection;
+import graphql.schema.DataFetchingFieldSelectionSet;
+import graphql.schema.SelectedField;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Turns the fields a query selects on a {@link com.hevlar.productgraphql.model.Product} into a {@link ProductProjection}.
+ * GraphQL field names match the product property names, so a selection of
+ * {@code { name variants { name } }} reads "name" and "variants.name".
+ * A page of variants selected with first, and optionally after, only reads that part of the variants list.
+ */
+final class ProductSelections {
+
+    private static final String CONNECTION_NODE = "edges/node/";
+    static final int MAX_VARIANTS_FIRST = 100;
+
+    private ProductSelections(){
+    }
+
+    /**
+     * Projection of a field that returns products directly.
+     */
+    static ProductProjection projection(DataFetchingFieldSelectionSet selectionSet){
+        return projection(selectionSet, "");
+    }
+
+    /**
+     * Projection of a field that returns a product connection, read from the selection under edges.node.
+     */
+    static ProductProjection connectionProjection(DataFetchingFieldSelectionSet selectionSet){
+        return projection(selectionSet, CONNECTION_NODE);
+    }
+
+    private static ProductProjection projection(DataFetchingFieldSelectionSet selectionSet, String prefix){
+        if(selectionSet == null) return ProductProjection.ALL;
+        Set<String> fields = new HashSet<>();
+        for(SelectedField field: selectionSet.getFields(prefix + "**")){
+            // only the leaves are projected, a parent and its child in one projection is a path collision in Mongo
+            if(isIntrospection(field) || !isLeaf(field)) continue;
+            fields.add(field.getQualifiedName().substring(prefix.length()).replace('/', '.'));
+        }
+        return ProductProjection.of(fields).withVariantSlice(variantSlice(selectionSet, prefix));
+    }
+
+    /**
+     * The page of variants selected, or null when the whole list is needed. That is when first isn't given,
+     * or when variants is selected more than once, under aliases, with different pages.
+     */
+    private static ProductProjection.VariantSlice variantSlice(DataFetchingFieldSelectionSet selectionSet, String prefix){
+        List<SelectedField> selections = selectionSet.getFields(prefix + "variants");
+        ProductProjection.VariantSlice slice = null;
+        for(SelectedField selection: selections){
+            // an invalid first fails in the variants resolver, the read doesn't need to
+            if(!(selection.getArguments().get("first") instanceof Integer first) || first < 1 || first > MAX_VARIANTS_FIRST) return null;
+            ProductProjection.VariantSlice selected = new ProductProjection.VariantSlice(first, (String) selection.getArguments().get("after"));
+            if(slice != null && !slice.equals(selected)) return null;
+            slice = selected;
+        }
+        return slice;
+    }
+
+    private static boolean isLeaf(SelectedField field){
+        // an object field selecting nothing but __typename is read whole
+        return field.getSelectionSet().getImmediateFields().stream().allMatch(ProductSelections::isIntrospection);
+    }
+
+    private static boolean isIntrospection(SelectedField field){
+        return field.getName().startsWith("__");
+    }
+}
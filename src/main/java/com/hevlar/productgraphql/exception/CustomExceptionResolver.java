@@ -8,11 +8,26 @@ import org.springframework.graphql.execution.ErrorType;
 import org.springframework.lang.NonNull;
 import org.springframework.stereotype.Component;
 
+import java.util.Map;
+
 @Component
 public class CustomExceptionResolver extends DataFetcherExceptionResolverAdapter {
 
     @Override
     protected GraphQLError resolveToSingleError(@NonNull Throwable ex, @NonNull DataFetchingEnvironment env){
+        if(ex instanceof QueryComplexityException complexity){
+            return GraphqlErrorBuilder.newError()
+                    .errorType(ErrorType.BAD_REQUEST)
+                    .message(ex.getMessage())
+                    .path(env.getExecutionStepInfo().getPath())
+                    .location(env.getField().getSourceLocation())
+                    .extensions(Map.of(
+                            "depth", complexity.getDepth(),
+                            "maxDepth", complexity.getMaxDepth(),
+                            "cost", complexity.getCost(),
+                            "maxCost", complexity.getMaxCost()))
+                    .build();
+        }
         if(ex instanceof IllegalArgumentException){
             return GraphqlErrorBuilder.newError()
                     .errorType(ErrorType.BAD_REQUEST)
@@ -0,0 +1,23 @@
+package com.hevlar.productgraphql.exception;
+
+import lombok.Getter;
+
+/**
+ * Raised when an operation is deeper or estimated to cost more than the configured limits.
+ */
+@Getter
+public class QueryComplexityException extends RuntimeException {
+
+    private final int depth;
+    private final int maxDepth;
+    private final long cost;
+    private final long maxCost;
+
+    public QueryComplexityException(String message, int depth, int maxDepth, long cost, long maxCost){
+        super(message);
+        this.depth = depth;
+        this.maxDepth = maxDepth;
+        this.cost = cost;
+        this.maxCost = maxCost;
+    }
+}
@@ -0,0 +1,36 @@
+package com.hevlar.productgraphql.execution;
+
+import graphql.execution.instrumentation.InstrumentationState;
+import graphql.execution.instrumentation.SimplePerformantInstrumentation;
+import graphql.execution.instrumentation.parameters.InstrumentationFieldFetchParameters;
+import graphql.schema.DataFetcher;
+
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+/**
+ * Completes asynchronous data fetcher results on the execution threads, in the blocking execution mode,
+ * so the fields selected under them are fetched there even when the value came from a read still on the
+ * reactive driver, rather than on its threads.
+ * The fetchers themselves are still called in place, so data loader keys are queued before the loaders dispatch.
+ */
+public class BlockingExecutionInstrumentation extends SimplePerformantInstrumentation {
+
+    private final Executor executor;
+
+    public BlockingExecutionInstrumentation(Executor executor){
+        this.executor = executor;
+    }
+
+    @Override
+    public DataFetcher<?> instrumentDataFetcher(DataFetcher<?> dataFetcher, InstrumentationFieldFetchParameters parameters, InstrumentationState state){
+        if(parameters.isTrivialDataFetcher()) return dataFetcher;
+        return environment -> {
+            Object value = dataFetcher.get(environment);
+            return value instanceof CompletionStage<?> stage
+                    ? stage.toCompletableFuture().thenApplyAsync(Function.identity(), executor)
+                    : value;
+        };
+    }
+}
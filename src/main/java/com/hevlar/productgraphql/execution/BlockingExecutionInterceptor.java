@@ -0,0 +1,25 @@
+package com.hevlar.productgraphql.execution;
+
+import org.springframework.graphql.server.WebGraphQlInterceptor;
+import org.springframework.graphql.server.WebGraphQlRequest;
+import org.springframework.graphql.server.WebGraphQlResponse;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+/**
+ * Starts the execution of every request on a thread of its own, in the blocking execution mode,
+ * so parsing, validation and the top level data fetchers run there rather than on the event loop.
+ */
+public class BlockingExecutionInterceptor implements WebGraphQlInterceptor {
+
+    private final Scheduler scheduler;
+
+    public BlockingExecutionInterceptor(Scheduler scheduler){
+        this.scheduler = scheduler;
+    }
+
+    @Override
+    public Mono<WebGraphQlResponse> intercept(WebGraphQlRequest request, Chain chain){
+        return chain.next(request).subscribeOn(scheduler);
+    }
+}
@@ -0,0 +1,45 @@
+package com.hevlar.productgraphql.execution;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The threads GraphQL requests run on in the blocking execution mode.
+ * On a Java 21 runtime every task gets its own virtual thread. The project is built for Java 17, so they are
+ * looked up reflectively, and a Java 17 runtime gets a fixed pool of platform threads instead.
+ */
+@Slf4j
+public final class ExecutionThreads {
+
+    static final String THREAD_NAME_PREFIX = "graphql-blocking-";
+
+    private ExecutionThreads(){
+    }
+
+    public static ExecutorService newExecutor(int poolSize){
+        if(poolSize < 1) throw new IllegalArgumentException("Blocking pool size must be positive");
+        try{
+            ExecutorService executor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            log.info("GraphQL requests run on virtual threads");
+            return executor;
+        }catch(NoSuchMethodException | IllegalAccessException | InvocationTargetException ex){
+            // JDK 19 and 20 have the method, but throw unless preview features are enabled
+            log.info("Virtual threads are not available, GraphQL requests run on a pool of {} threads", poolSize);
+            return Executors.newFixedThreadPool(poolSize, threadFactory());
+        }
+    }
+
+    private static ThreadFactory threadFactory(){
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, THREAD_NAME_PREFIX + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
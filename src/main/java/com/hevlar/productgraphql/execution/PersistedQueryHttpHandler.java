@@ -0,0 +1,78 @@
+package com.hevlar.productgraphql.execution;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+import org.springframework.graphql.server.WebGraphQlHandler;
+import org.springframework.graphql.server.WebGraphQlRequest;
+import org.springframework.graphql.server.webflux.GraphQlHttpHandler;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The GraphQL HTTP handler, which rejects a request without a query before any interceptor runs. A request that only
+ * carries the hash of a persisted query is told apart on the body the handler decodes anyway, given a placeholder
+ * query and marked with a request attribute, which {@link PersistedQueryInterceptor} swaps for the registered one.
+ * Bodies are decoded up to spring.codec.max-in-memory-size, a larger one is answered with 413.
+ */
+@Component
+@ConditionalOnProperty(name = "productgraphql.graphql.persisted-queries.enabled", havingValue = "true", matchIfMissing = true)
+public class PersistedQueryHttpHandler extends GraphQlHttpHandler {
+
+    static final String HASH_ONLY_ATTRIBUTE = PersistedQueryHttpHandler.class.getName() + ".hashOnly";
+
+    private static final String PLACEHOLDER_QUERY = "# persisted query";
+
+    private static final ParameterizedTypeReference<Map<String, Object>> BODY_TYPE = new ParameterizedTypeReference<>() {};
+
+    @SuppressWarnings("removal")
+    private static final List<MediaType> RESPONSE_MEDIA_TYPES =
+            List.of(MediaType.APPLICATION_GRAPHQL_RESPONSE, MediaType.APPLICATION_JSON, MediaType.APPLICATION_GRAPHQL);
+
+    private final WebGraphQlHandler graphQlHandler;
+
+    public PersistedQueryHttpHandler(WebGraphQlHandler graphQlHandler){
+        super(graphQlHandler);
+        this.graphQlHandler = graphQlHandler;
+    }
+
+    @Override
+    public Mono<ServerResponse> handleRequest(ServerRequest serverRequest){
+        return serverRequest.bodyToMono(BODY_TYPE)
+                .onErrorMap(DataBufferLimitException.class, ex -> new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE, ex.getMessage(), ex))
+                .flatMap(body -> {
+                    if(isHashOnly(body)){
+                        body.put("query", PLACEHOLDER_QUERY);
+                        serverRequest.attributes().put(HASH_ONLY_ATTRIBUTE, Boolean.TRUE);
+                    }
+                    return graphQlHandler.handleRequest(new WebGraphQlRequest(serverRequest.uri(), serverRequest.headers().asHttpHeaders(),
+                            serverRequest.cookies(), serverRequest.attributes(), body, serverRequest.exchange().getRequest().getId(),
+                            serverRequest.exchange().getLocaleContext().getLocale()));
+                })
+                .flatMap(response -> ServerResponse.ok()
+                        .headers(headers -> headers.putAll(response.getResponseHeaders()))
+                        .contentType(responseMediaType(serverRequest))
+                        .bodyValue(response.toMap()));
+    }
+
+    private static boolean isHashOnly(Map<String, Object> body){
+        return body.get("query") == null && body.get("extensions") instanceof Map<?, ?> extensions
+                && extensions.get(PersistedQueryInterceptor.EXTENSION) != null;
+    }
+
+    private static MediaType responseMediaType(ServerRequest serverRequest){
+        // as the handler it replaces
+        for(MediaType accepted: serverRequest.headers().accept()){
+            if(RESPONSE_MEDIA_TYPES.contains(accepted)) return accepted;
+        }
+        return MediaType.APPLICATION_JSON;
+    }
+}
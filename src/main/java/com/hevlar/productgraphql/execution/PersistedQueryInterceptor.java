@@ -0,0 +1,88 @@
+package com.hevlar.productgraphql.execution;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import graphql.ExecutionResultImpl;
+import graphql.GraphqlErrorBuilder;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.graphql.execution.ErrorType;
+import org.springframework.graphql.server.WebGraphQlInterceptor;
+import org.springframework.graphql.server.WebGraphQlRequest;
+import org.springframework.graphql.server.WebGraphQlResponse;
+import org.springframework.graphql.support.DefaultExecutionGraphQlResponse;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+
+/**
+ * Automatic persisted queries, as sent by Apollo clients.
+ * A request carrying only the sha256 hash of its query in the persistedQuery extension is executed with the
+ * query registered for that hash, or answered with PersistedQueryNotFound so the client retries with the
+ * full query. A request carrying both registers the query once its hash is verified.
+ * Queries are kept per instance in a bounded cache, reported as graphql.persisted.queries cache metrics.
+ */
+@Component
+@ConditionalOnProperty(name = "productgraphql.graphql.persisted-queries.enabled", havingValue = "true", matchIfMissing = true)
+public class PersistedQueryInterceptor implements WebGraphQlInterceptor {
+
+    static final String EXTENSION = "persistedQuery";
+
+    private final Cache<String, String> queries;
+
+    public PersistedQueryInterceptor(@Value("${productgraphql.graphql.persisted-queries.max-size:10000}") long maxSize,
+                                     MeterRegistry meterRegistry){
+        this.queries = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, queries, "graphql.persisted.queries");
+    }
+
+    @Override
+    public Mono<WebGraphQlResponse> intercept(WebGraphQlRequest request, Chain chain){
+        if(!(request.getExtensions().get(EXTENSION) instanceof Map<?, ?> persistedQuery)) return chain.next(request);
+        if(!Integer.valueOf(1).equals(persistedQuery.get("version")))
+            return Mono.just(error(request, "Unsupported persisted query version", "PERSISTED_QUERY_NOT_SUPPORTED"));
+        if(!(persistedQuery.get("sha256Hash") instanceof String hash))
+            return Mono.just(error(request, "Persisted query hash is missing", "PERSISTED_QUERY_NOT_SUPPORTED"));
+
+        if(Boolean.TRUE.equals(request.getAttributes().get(PersistedQueryHttpHandler.HASH_ONLY_ATTRIBUTE))){
+            String query = queries.getIfPresent(hash);
+            if(query == null) return Mono.just(error(request, "PersistedQueryNotFound", "PERSISTED_QUERY_NOT_FOUND"));
+            request.configureExecutionInput((executionInput, builder) -> builder.query(query).build());
+            return chain.next(request);
+        }
+
+        if(!hash.equalsIgnoreCase(sha256(request.getDocument())))
+            return Mono.just(error(request, "Provided sha does not match query", "INVALID_PERSISTED_QUERY_HASH"));
+        queries.put(hash, request.getDocument());
+        return chain.next(request);
+    }
+
+    static String sha256(String query){
+        try{
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(query.getBytes(StandardCharsets.UTF_8)));
+        }catch(NoSuchAlgorithmException ex){
+            throw new IllegalStateException("SHA-256 is not available", ex);
+        }
+    }
+
+    private static WebGraphQlResponse error(WebGraphQlRequest request, String message, String code){
+        ExecutionResultImpl result = ExecutionResultImpl.newExecutionResult()
+                .addError(GraphqlErrorBuilder.newError()
+                        .errorType(ErrorType.BAD_REQUEST)
+                        .message(message)
+                        .extensions(Map.of("code", code))
+                        .build())
+                .build();
+        return new WebGraphQlResponse(new DefaultExecutionGraphQlResponse(request.toExecutionInput(), result));
+    }
+}
@@ -0,0 +1,23 @@
+package com.hevlar.productgraphql.instrumentation;
+
+import graphql.schema.GraphQLTypeUtil;
+import io.micrometer.common.KeyValues;
+import org.springframework.graphql.observation.DataFetcherObservationContext;
+import org.springframework.graphql.observation.DefaultDataFetcherObservationConvention;
+import org.springframework.stereotype.Component;
+
+/**
+ * Adds the parent type to the graphql.datafetcher observation, so fields of the same name on different types
+ * are timed apart. Trivial property fetchers aren't observed.
+ */
+@Component
+public class GraphQlDataFetcherObservationConvention extends DefaultDataFetcherObservationConvention {
+
+    static final String PARENT_TYPE = "graphql.parent.type";
+
+    @Override
+    public KeyValues getLowCardinalityKeyValues(DataFetcherObservationContext context){
+        return super.getLowCardinalityKeyValues(context)
+                .and(PARENT_TYPE, GraphQLTypeUtil.simplePrint(context.getEnvironment().getParentType()));
+    }
+}
@@ -0,0 +1,81 @@
+package com.hevlar.productgraphql.instrumentation;
+
+import graphql.ExecutionResult;
+import graphql.GraphQLError;
+import graphql.execution.instrumentation.InstrumentationContext;
+import graphql.execution.instrumentation.InstrumentationState;
+import graphql.execution.instrumentation.SimpleInstrumentationContext;
+import graphql.execution.instrumentation.SimplePerformantInstrumentation;
+import graphql.execution.instrumentation.parameters.InstrumentationExecutionParameters;
+import graphql.execution.instrumentation.parameters.InstrumentationValidationParameters;
+import graphql.language.Document;
+import graphql.validation.ValidationError;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records what Spring's GraphQlObservationInstrumentation doesn't:
+ * <ul>
+ *     <li>graphql.parse and graphql.validation, the time taken before execution</li>
+ *     <li>graphql.errors, the errors returned per error type</li>
+ * </ul>
+ * Whole requests and non-trivial data fetchers are timed by the observations, as graphql.request and graphql.datafetcher,
+ * tagged by {@link GraphQlRequestObservationConvention} and {@link GraphQlDataFetcherObservationConvention}.
+ * The time spent in Mongo itself is reported by the driver as mongodb.driver.commands.
+ */
+@Component
+public class GraphQlMetricsInstrumentation extends SimplePerformantInstrumentation {
+
+    private final MeterRegistry meterRegistry;
+    private final Timer parseTimer;
+    private final Timer validationTimer;
+    private final Map<String, Counter> errorCounters = new ConcurrentHashMap<>();
+
+    public GraphQlMetricsInstrumentation(MeterRegistry meterRegistry){
+        this.meterRegistry = meterRegistry;
+        this.parseTimer = Timer.builder("graphql.parse")
+                .description("Time taken to parse GraphQL documents")
+                .register(meterRegistry);
+        this.validationTimer = Timer.builder("graphql.validation")
+                .description("Time taken to validate GraphQL documents")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public InstrumentationContext<ExecutionResult> beginExecution(InstrumentationExecutionParameters parameters, InstrumentationState state){
+        return SimpleInstrumentationContext.whenCompleted((result, throwable) -> {
+            if(result == null) return;
+            for(GraphQLError error: result.getErrors()){
+                errorCounter(error.getErrorType() == null ? "UNKNOWN" : error.getErrorType().toString()).increment();
+            }
+        });
+    }
+
+    @Override
+    public InstrumentationContext<Document> beginParse(InstrumentationExecutionParameters parameters, InstrumentationState state){
+        long start = System.nanoTime();
+        return SimpleInstrumentationContext.whenCompleted((document, throwable) ->
+                parseTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+    }
+
+    @Override
+    public InstrumentationContext<List<ValidationError>> beginValidation(InstrumentationValidationParameters parameters, InstrumentationState state){
+        long start = System.nanoTime();
+        return SimpleInstrumentationContext.whenCompleted((errors, throwable) ->
+                validationTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+    }
+
+    private Counter errorCounter(String errorType){
+        return errorCounters.computeIfAbsent(errorType, key -> Counter.builder("graphql.errors")
+                .description("Errors returned in GraphQL responses")
+                .tag("errorType", errorType)
+                .register(meterRegistry));
+    }
+}
@@ -0,0 +1,39 @@
+package com.hevlar.productgraphql.instrumentation;
+
+import io.micrometer.common.KeyValues;
+import org.springframework.graphql.observation.DefaultExecutionRequestObservationConvention;
+import org.springframework.graphql.observation.ExecutionRequestObservationContext;
+import org.springframework.graphql.observation.GraphQlObservationDocumentation.ExecutionRequestLowCardinalityKeyNames;
+import org.springframework.stereotype.Component;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tags the graphql.request observation, timed by Spring's GraphQlObservationInstrumentation, with the operation name.
+ * Operation names come from clients, past {@link #MAX_OPERATION_NAMES} of them new names are all tagged as other.
+ */
+@Component
+public class GraphQlRequestObservationConvention extends DefaultExecutionRequestObservationConvention {
+
+    static final String ANONYMOUS = "anonymous";
+    static final String OTHER = "other";
+
+    static final int MAX_OPERATION_NAMES = 200;
+
+    private final Set<String> operations = ConcurrentHashMap.newKeySet();
+
+    @Override
+    public KeyValues getLowCardinalityKeyValues(ExecutionRequestObservationContext context){
+        String operation = context.getCarrier().getOperationName();
+        return super.getLowCardinalityKeyValues(context)
+                .and(ExecutionRequestLowCardinalityKeyNames.OPERATION.asString(), operation == null ? ANONYMOUS : bounded(operation));
+    }
+
+    private String bounded(String operation){
+        if(operations.contains(operation)) return operation;
+        if(operations.size() >= MAX_OPERATION_NAMES) return OTHER;
+        operations.add(operation);
+        return operation;
+    }
+}
@@ -0,0 +1,56 @@
+package com.hevlar.productgraphql.instrumentation;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.reactivestreams.Publisher;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records the size of every GraphQL HTTP response body as the graphql.response.size histogram.
+ */
+@Component
+public class GraphQlResponseSizeFilter implements WebFilter {
+
+    private final String graphQlPath;
+    private final DistributionSummary responseSize;
+
+    public GraphQlResponseSizeFilter(@Value("${spring.graphql.path:/graphql}") String graphQlPath, MeterRegistry meterRegistry){
+        this.graphQlPath = graphQlPath;
+        this.responseSize = DistributionSummary.builder("graphql.response.size")
+                .description("Size of GraphQL HTTP response bodies")
+                .baseUnit("bytes")
+                .publishPercentileHistogram()
+                .minimumExpectedValue(64.0)
+                .maximumExpectedValue(16.0 * 1024 * 1024)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain){
+        if(exchange.getRequest().getMethod() != HttpMethod.POST
+                || !graphQlPath.equals(exchange.getRequest().getPath().pathWithinApplication().value())){
+            return chain.filter(exchange);
+        }
+        AtomicLong bytes = new AtomicLong();
+        ServerHttpResponse response = new ServerHttpResponseDecorator(exchange.getResponse()) {
+            @Override
+            public Mono<Void> writeWith(Publisher<? extends DataBuffer> body){
+                return super.writeWith(Flux.from(body).doOnNext(buffer -> bytes.addAndGet(buffer.readableByteCount())));
+            }
+        };
+        return chain.filter(exchange.mutate().response(response).build())
+                .doOnSuccess(done -> responseSize.record(bytes.get()));
+    }
+}
@@ -0,0 +1,185 @@
+package com.hevlar.productgraphql.instrumentation;
+
+import com.hevlar.productgraphql.exception.QueryComplexityException;
+import graphql.ExecutionResult;
+import graphql.analysis.QueryTraverser;
+import graphql.analysis.QueryVisitorFieldEnvironment;
+import graphql.analysis.QueryVisitorStub;
+import graphql.execution.ExecutionContext;
+import graphql.execution.instrumentation.InstrumentationContext;
+import graphql.execution.instrumentation.InstrumentationState;
+import graphql.execution.instrumentation.SimpleInstrumentationContext;
+import graphql.execution.instrumentation.SimplePerformantInstrumentation;
+import graphql.execution.instrumentation.parameters.InstrumentationCreateStateParameters;
+import graphql.execution.instrumentation.parameters.InstrumentationExecuteOperationParameters;
+import graphql.execution.instrumentation.parameters.InstrumentationFieldFetchParameters;
+import graphql.schema.DataFetcher;
+import graphql.schema.GraphQLType;
+import graphql.schema.GraphQLTypeUtil;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Computes the depth and estimated cost of every operation before it executes and rejects the ones over the limits.
+ * <p>
+ * Every field costs 1, or 10 for a root field since those go to Mongo, multiplied by the number of times it is
+ * expected to be resolved. A field with a first argument, or an ids or products list argument, is expected to return
+ * that many items. A root list of products without one reads the whole category, so it is expected to return the
+ * unbounded list size; any other list field is expected to return the default list size. Introspection is free.
+ * <p>
+ * A rejected operation fails each of its root fields with a {@link QueryComplexityException}, which
+ * CustomExceptionResolver turns into a BAD_REQUEST error, so nothing below the root is fetched.
+ */
+@Component
+public class QueryComplexityInstrumentation extends SimplePerformantInstrumentation {
+
+    static final int ROOT_FIELD_WEIGHT = 10;
+
+    /** List arguments whose size is the number of items the field returns. */
+    private static final List<String> SIZE_ARGUMENTS = List.of("ids", "products");
+
+    /** Item types of the root lists that read the collection unpaginated, the category tree comes from the snapshot. */
+    private static final List<String> UNBOUNDED_LIST_TYPES = List.of("Product");
+
+    private final int maxDepth;
+    private final long maxCost;
+    private final int defaultListSize;
+    private final int unboundedListSize;
+    private final DistributionSummary costSummary;
+    private final DistributionSummary depthSummary;
+
+    public QueryComplexityInstrumentation(@Value("${productgraphql.graphql.complexity.max-depth:10}") int maxDepth,
+                                          @Value("${productgraphql.graphql.complexity.max-cost:10000}") long maxCost,
+                                          @Value("${productgraphql.graphql.complexity.default-list-size:10}") int defaultListSize,
+                                          @Value("${productgraphql.graphql.complexity.unbounded-list-size:1000}") int unboundedListSize,
+                                          MeterRegistry meterRegistry){
+        this.maxDepth = maxDepth;
+        this.maxCost = maxCost;
+        this.defaultListSize = defaultListSize;
+        this.unboundedListSize = unboundedListSize;
+        this.costSummary = DistributionSummary.builder("graphql.operation.cost")
+                .description("Estimated cost of GraphQL operations")
+                .register(meterRegistry);
+        this.depthSummary = DistributionSummary.builder("graphql.operation.depth")
+                .description("Depth of GraphQL operations")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public InstrumentationState createState(InstrumentationCreateStateParameters parameters){
+        return new ComplexityState();
+    }
+
+    @Override
+    public InstrumentationContext<ExecutionResult> beginExecuteOperation(InstrumentationExecuteOperationParameters parameters,
+                                                                         InstrumentationState state){
+        ExecutionContext executionContext = parameters.getExecutionContext();
+        Complexity complexity = analyse(executionContext);
+        costSummary.record(complexity.cost);
+        depthSummary.record(complexity.depth);
+
+        if(complexity.depth > maxDepth){
+            ((ComplexityState) state).rejection = new QueryComplexityException(
+                    "Query depth " + complexity.depth + " exceeds the maximum of " + maxDepth,
+                    complexity.depth, maxDepth, complexity.cost, maxCost);
+        }else if(complexity.cost > maxCost){
+            ((ComplexityState) state).rejection = new QueryComplexityException(
+                    "Query cost " + complexity.cost + " exceeds the maximum of " + maxCost,
+                    complexity.depth, maxDepth, complexity.cost, maxCost);
+        }
+        return SimpleInstrumentationContext.noOp();
+    }
+
+    @Override
+    public DataFetcher<?> instrumentDataFetcher(DataFetcher<?> dataFetcher, InstrumentationFieldFetchParameters parameters,
+                                                InstrumentationState state){
+        QueryComplexityException rejection = ((ComplexityState) state).rejection;
+        if(rejection == null || parameters.getExecutionStepInfo().getPath().getLevel() != 1) return dataFetcher;
+        return environment -> {
+            throw rejection;
+        };
+    }
+
+    Complexity analyse(ExecutionContext executionContext){
+        Complexity complexity = new Complexity();
+        QueryTraverser.newQueryTraverser()
+                .schema(executionContext.getGraphQLSchema())
+                .document(executionContext.getDocument())
+                .operationName(executionContext.getOperationDefinition().getName())
+                .coercedVariables(executionContext.getCoercedVariables())
+                .build()
+                .visitPreOrder(new QueryVisitorStub() {
+                    @Override
+                    public void visitField(QueryVisitorFieldEnvironment environment){
+                        if(isIntrospection(environment)) return;
+                        int weight = environment.getParentEnvironment() == null ? ROOT_FIELD_WEIGHT : 1;
+                        complexity.cost = saturatedAdd(complexity.cost, saturatedMultiply(weight, resolutions(environment.getParentEnvironment())));
+                        complexity.depth = Math.max(complexity.depth, depth(environment));
+                    }
+                });
+        return complexity;
+    }
+
+    /**
+     * How many times the children of this field are resolved.
+     */
+    private long resolutions(QueryVisitorFieldEnvironment environment){
+        long resolutions = 1;
+        for(QueryVisitorFieldEnvironment current = environment; current != null; current = current.getParentEnvironment()){
+            resolutions = saturatedMultiply(resolutions, expectedSize(current));
+        }
+        return resolutions;
+    }
+
+    private long expectedSize(QueryVisitorFieldEnvironment environment){
+        if(environment.getArguments().get("first") instanceof Integer first) return first;
+        for(String argument: SIZE_ARGUMENTS){
+            if(environment.getArguments().get(argument) instanceof List<?> list) return list.size();
+        }
+        GraphQLType type = GraphQLTypeUtil.unwrapNonNull(environment.getFieldDefinition().getType());
+        if(!GraphQLTypeUtil.isList(type)) return 1;
+        // the items of a paginated connection are already counted by its first argument
+        QueryVisitorFieldEnvironment parent = environment.getParentEnvironment();
+        if(parent != null && parent.getArguments().containsKey("first")) return 1;
+        if(parent == null && UNBOUNDED_LIST_TYPES.contains(GraphQLTypeUtil.unwrapAll(type).getName())) return unboundedListSize;
+        return defaultListSize;
+    }
+
+    private static int depth(QueryVisitorFieldEnvironment environment){
+        int depth = 0;
+        for(QueryVisitorFieldEnvironment current = environment; current != null; current = current.getParentEnvironment()){
+            depth++;
+        }
+        return depth;
+    }
+
+    private static boolean isIntrospection(QueryVisitorFieldEnvironment environment){
+        for(QueryVisitorFieldEnvironment current = environment; current != null; current = current.getParentEnvironment()){
+            if(current.getField().getName().startsWith("__")) return true;
+        }
+        return false;
+    }
+
+    private static long saturatedMultiply(long a, long b){
+        long result = a * b;
+        return (a != 0 && (result / a != b || result < 0)) ? Long.MAX_VALUE : result;
+    }
+
+    private static long saturatedAdd(long a, long b){
+        long result = a + b;
+        return result < 0 ? Long.MAX_VALUE : result;
+    }
+
+    static final class Complexity {
+        int depth;
+        long cost;
+    }
+
+    private static final class ComplexityState implements InstrumentationState {
+        private volatile QueryComplexityException rejection;
+    }
+}
@@ -0,0 +1,15 @@
+package com.hevlar.productgraphql.model;
+
+public record AddProductResult(
+        int index,
+        Product product,
+        String error
+) {
+    public static AddProductResult success(int index, Product product){
+        return new AddProductResult(index, product, null);
+    }
+
+    public static AddProductResult failure(int index, String error){
+        return new AddProductResult(index, null, error);
+    }
+}
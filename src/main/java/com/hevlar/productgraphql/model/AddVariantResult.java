@@ -0,0 +1,15 @@
+package com.hevlar.productgraphql.model;
+
+public record AddVariantResult(
+        String productId,
+        Variant variant,
+        Product product
+) {
+    public static AddVariantResult withProduct(Product product, Variant variant){
+        return new AddVariantResult(product.getId(), variant, product);
+    }
+
+    public static AddVariantResult withoutProduct(String productId, Variant variant){
+        return new AddVariantResult(productId, variant, null);
+    }
+}
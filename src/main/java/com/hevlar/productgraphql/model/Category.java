@@ -1,7 +1,13 @@
 package com.hevlar.productgraphql.model;
 
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Transient;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.util.List;
@@ -15,44 +21,64 @@ public class Category{
     String name;
     List<Category> subCategories;
 
+    @Transient
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private final LazyIndex<String, Category> subCategoryIndex = new LazyIndex<>(Category::getName);
+
     public Category(String name, List<Category> subCategories){
         this.name = name;
         this.subCategories = subCategories != null ? subCategories : List.of();
     }
 
     public boolean hasSubCategory(String name){
-        for (Category sub: subCategories) {
-            if(sub.name.equals(name)){
-                return true;
-            }
-        }
-        return false;
+        return getSubCategory(name) != null;
+    }
+
+    /**
+     * Returns the direct sub category with the given name, or null when there is none.
+     */
+    public Category getSubCategory(String name){
+        List<Category> current = subCategories;
+        Integer position = subCategoryIndex.position(current, name);
+        return position == null ? null : current.get(position);
     }
 
     public Category traverse(List<String> subCategoryNames){
         if(subCategoryNames == null || subCategoryNames.size() == 0) return this;
-        for(Category subCategory: subCategories){
-            if(subCategory.getName().equals(subCategoryNames.get(0))){
-                if(subCategoryNames.size() > 1){
-                    return traverse(subCategory, subCategoryNames.subList(1, subCategoryNames.size()));
-                }else {
-                    return subCategory;
-                }
+        Category current = this;
+        for(int i = 0; i < subCategoryNames.size(); i++){
+            current = current.getSubCategory(subCategoryNames.get(i));
+            if(current == null){
+                throw new IllegalArgumentException("Existing category provided doesn't exist");
             }
         }
-        throw new IllegalArgumentException("Existing category provided doesn't exist");
+        return current;
     }
 
-    private Category traverse(Category category, List<String> subCategoryNames){
-        for(Category subCategory: category.subCategories){
-            if(subCategory.getName().equals(subCategoryNames.get(0))){
-                if(subCategoryNames.size() > 1){
-                    return traverse(subCategory, subCategoryNames.subList(1, subCategoryNames.size()));
-                }else {
-                    return subCategory;
-                }
-            }
+    /**
+     * Returns this category with at most depth levels of sub categories below it. Only the nodes above the
+     * cut are copied, so the cost follows the size of the result. A tree that is no deeper is returned as is.
+     */
+    public Category withDepth(int depth){
+        if(depth < 0) throw new IllegalArgumentException("Depth must not be negative");
+        if(isWithinDepth(depth)) return this;
+        List<Category> truncated = depth == 0
+                ? List.of()
+                : subCategories.stream().map(subCategory -> subCategory.withDepth(depth - 1)).toList();
+        Category copy = new Category(name, truncated);
+        copy.setId(id);
+        return copy;
+    }
+
+    private boolean isWithinDepth(int depth){
+        if(subCategories == null || subCategories.isEmpty()) return true;
+        if(depth == 0) return false;
+        for(Category subCategory: subCategories){
+            if(!subCategory.isWithinDepth(depth - 1)) return false;
         }
-        throw new IllegalArgumentException("Existing category provided doesn't exist");
+        return true;
     }
 }
@@ -0,0 +1,47 @@
+package com.hevlar.productgraphql.model;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index over a set of top level {@link Category} trees by top category name.
+ * Hierarchy lookups walk the per node name maps without allocating.
+ */
+public final class CategoryIndex {
+
+    private final Map<String, Category> topCategories;
+
+    private CategoryIndex(Map<String, Category> topCategories){
+        this.topCategories = topCategories;
+    }
+
+    public static CategoryIndex of(List<Category> categories){
+        Map<String, Category> topCategories = new HashMap<>();
+        for(Category category: categories){
+            topCategories.putIfAbsent(category.getName(), category);
+        }
+        return new CategoryIndex(Collections.unmodifiableMap(topCategories));
+    }
+
+    public Category getTopCategory(String name){
+        return topCategories.get(name);
+    }
+
+    /**
+     * Finds the category at the end of the hierarchy, or null when any level is missing.
+     */
+    public Category find(List<String> categoryHierarchy){
+        if(categoryHierarchy == null || categoryHierarchy.isEmpty()) return null;
+        Category current = topCategories.get(categoryHierarchy.get(0));
+        for(int i = 1; current != null && i < categoryHierarchy.size(); i++){
+            current = current.getSubCategory(categoryHierarchy.get(i));
+        }
+        return current;
+    }
+
+    public boolean contains(List<String> categoryHierarchy){
+        return find(categoryHierarchy) != null;
+    }
+}
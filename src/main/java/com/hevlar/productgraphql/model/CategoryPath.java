@@ -0,0 +1,40 @@
+package com.hevlar.productgraphql.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds the string key used to address a category by its full hierarchy, e.g. "Furniture/Living Room".
+ * The separator is the ASCII unit separator so that category names can contain any printable character.
+ */
+public final class CategoryPath {
+
+    public static final char SEPARATOR = '\u001F';
+
+    private CategoryPath(){
+    }
+
+    public static String of(List<String> categoryHierarchy){
+        return String.join(String.valueOf(SEPARATOR), categoryHierarchy);
+    }
+
+    public static String child(String parentPath, String name){
+        return parentPath + SEPARATOR + name;
+    }
+
+    /**
+     * Returns the path of every level of the hierarchy, from the top category down to the hierarchy itself.
+     * A product stores these so that a subtree query is a single equality match.
+     */
+    public static List<String> ancestors(List<String> categoryHierarchy){
+        if(categoryHierarchy == null || categoryHierarchy.isEmpty()) return List.of();
+        List<String> ancestors = new ArrayList<>(categoryHierarchy.size());
+        String path = categoryHierarchy.get(0);
+        ancestors.add(path);
+        for(int i = 1; i < categoryHierarchy.size(); i++){
+            path = child(path, categoryHierarchy.get(i));
+            ancestors.add(path);
+        }
+        return List.copyOf(ancestors);
+    }
+}
@@ -0,0 +1,18 @@
+package com.hevlar.productgraphql.model;
+
+import java.util.List;
+
+/**
+ * Running totals of a streamed import, emitted after every batch and once more when the import is done.
+ */
+public record ImportProgress(
+        long received,
+        long imported,
+        long failed,
+        List<ImportError> errors,
+        boolean done,
+        long elapsedMillis
+) {
+    public record ImportError(long line, String error) {
+    }
+}
@@ -0,0 +1,44 @@
+package com.hevlar.productgraphql.model;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Position of every element of a list of a model by its key, the first element wins when keys repeat.
+ * Built on the first lookup and rebuilt once the model holds another list or more elements than were indexed,
+ * so the models keep plain list fields that are mapped and set like any other.
+ */
+final class LazyIndex<K, E> {
+
+    private final Function<E, K> key;
+    private volatile Positions<K, E> positions;
+
+    LazyIndex(Function<E, K> key){
+        this.key = key;
+    }
+
+    /**
+     * Returns the position of the first element of the list with the given key, or null when there is none.
+     */
+    Integer position(List<E> elements, K k){
+        List<E> current = elements != null ? elements : List.of();
+        Positions<K, E> index = positions;
+        if(index == null || index.source() != current || index.size() != current.size()){
+            index = Positions.of(current, key);
+            positions = index;
+        }
+        return index.byKey().get(k);
+    }
+
+    private record Positions<K, E>(List<E> source, int size, Map<K, Integer> byKey) {
+        static <K, E> Positions<K, E> of(List<E> elements, Function<E, K> key){
+            Map<K, Integer> byKey = new HashMap<>();
+            for(int i = 0; i < elements.size(); i++){
+                byKey.putIfAbsent(key.apply(elements.get(i)), i);
+            }
+            return new Positions<>(elements, elements.size(), byKey);
+        }
+    }
+}
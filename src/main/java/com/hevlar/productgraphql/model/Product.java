@@ -1,36 +1,57 @@
 package com.hevlar.productgraphql.model;
 
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
 import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
 import org.springframework.data.annotation.Id;
-import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.annotation.Transient;
 import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.TextScore;
 
 import java.util.List;
 
+// indexes are declared in MongoIndexes and built by IndexManager
 @Document
 @Data
 @NoArgsConstructor
 public class Product{
     @Id
     String id;
-    @Indexed
     String name;
     String description;
     List<String> imageUrls;
-    @Indexed
     List<String> category;
-    @Indexed
     List<String> tags;
     List<Variant> variants;
     ProductStatus status;
+    /** Materialized {@link CategoryPath} of {@link #category}, only ever set from it. */
+    @Setter(AccessLevel.NONE)
+    String categoryPath;
+    /** Materialized {@link CategoryPath} of every level of {@link #category}, only ever set from it. */
+    @Setter(AccessLevel.NONE)
+    List<String> categoryAncestors;
+    /** Relevance to the text of a search, only read on search results. */
+    @TextScore
+    @EqualsAndHashCode.Exclude
+    Double score;
+
+    @Transient
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private final LazyIndex<String, Variant> variantIndex = new LazyIndex<>(Variant::name);
 
     public Product(String id, String name, String description, List<String> imageUrls, List<String> category, List<String> tags, List<Variant> variants, ProductStatus status){
         this.id = id;
         this.name = name;
         this.description = description;
         this.imageUrls = imageUrls == null ? List.of() : imageUrls;
-        this.category = category;
+        setCategory(category);
         this.tags = tags == null ? List.of() : tags;
         this.variants = variants == null ? List.of() : variants;
         this.status = status;
@@ -40,13 +61,36 @@ public class Product{
         this.name = name;
         this.description = description;
         this.imageUrls = imageUrls == null ? List.of() : imageUrls;
-        this.category = category;
+        setCategory(category);
         this.tags = tags == null ? List.of() : tags;
         this.variants = variants == null ? List.of() : variants;
         this.status = status;
     }
 
+    public void setCategory(List<String> category){
+        this.category = category;
+        this.categoryPath = category == null ? null : CategoryPath.of(category);
+        this.categoryAncestors = category == null ? null : CategoryPath.ancestors(category);
+    }
+
     public boolean hasVariantOfName(String name){
-        return variants.stream().anyMatch(variant -> variant.name().equals(name));
+        return variantIndex.position(variants, name) != null;
+    }
+
+    /**
+     * Returns the variants following the variant named after, or from the first variant when after is null,
+     * at most first of them when first is given. The page is empty when there is no variant named after.
+     * Reading it again from a list already sliced to start at the after variant gives the same page.
+     */
+    public List<Variant> variantsAfter(String after, Integer first){
+        if(variants == null) return null;
+        int from = 0;
+        if(after != null){
+            Integer position = variantIndex.position(variants, after);
+            if(position == null) return List.of();
+            from = position + 1;
+        }
+        int to = first == null ? variants.size() : Math.min(variants.size(), from + first);
+        return from >= to ? List.of() : variants.subList(from, to);
     }
 }
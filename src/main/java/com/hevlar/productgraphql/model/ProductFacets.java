@@ -0,0 +1,18 @@
+package com.hevlar.productgraphql.model;
+
+import java.util.List;
+
+/**
+ * Number of products per tag, per status and per child category, most common first.
+ */
+public record ProductFacets(
+        long total,
+        List<FacetCount> tags,
+        List<FacetCount> statuses,
+        List<FacetCount> subCategories
+) {
+    public static final ProductFacets EMPTY = new ProductFacets(0, List.of(), List.of(), List.of());
+
+    public record FacetCount(String value, long count) {
+    }
+}
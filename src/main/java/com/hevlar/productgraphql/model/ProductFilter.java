@@ -0,0 +1,23 @@
+package com.hevlar.productgraphql.model;
+
+import java.util.List;
+
+/**
+ * Optional conditions on products, all of which have to hold. Null or empty fields don't filter.
+ * A category hierarchy matches the products of that category, or of its whole subtree when
+ * includeDescendants is set.
+ */
+public record ProductFilter(
+        List<String> categoryHierarchy,
+        Boolean includeDescendants,
+        List<ProductStatus> status,
+        List<String> tagsAny,
+        List<String> tagsAll,
+        String namePrefix
+) {
+    public static final ProductFilter NONE = new ProductFilter(null, null, null, null, null, null);
+
+    public boolean isIncludeDescendants(){
+        return Boolean.TRUE.equals(includeDescendants);
+    }
+}
@@ -0,0 +1,9 @@
+package com.hevlar.productgraphql.model;
+
+import java.util.List;
+
+public record ProductPage(
+        List<Product> products,
+        boolean hasNextPage
+) {
+}
@@ -0,0 +1,69 @@
+package com.hevlar.productgraphql.model;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * The {@link Product} properties a read needs, as dotted property paths such as "name" or "variants.name".
+ * The id is always read. {@link #ALL} reads the whole document.
+ * A variant slice reads only the part of the variants list a page of variants needs.
+ */
+public record ProductProjection(Set<String> fields, VariantSlice variantSlice) {
+
+    public static final ProductProjection ALL = new ProductProjection(null, null);
+
+    public ProductProjection {
+        fields = fields == null ? null : Set.copyOf(fields);
+    }
+
+    public ProductProjection(Set<String> fields){
+        this(fields, null);
+    }
+
+    public static ProductProjection of(Collection<String> fields){
+        Set<String> projected = new HashSet<>(fields);
+        projected.add("id");
+        return new ProductProjection(projected);
+    }
+
+    public boolean isAll(){
+        return fields == null;
+    }
+
+    public ProductProjection withVariantSlice(VariantSlice variantSlice){
+        return isAll() ? this : new ProductProjection(fields, variantSlice);
+    }
+
+    public ProductProjection union(ProductProjection other){
+        if(isAll() || other.isAll()) return ALL;
+        Set<String> union = new HashSet<>(fields);
+        union.addAll(other.fields);
+        VariantSlice slice;
+        if(!other.selectsVariants()) slice = variantSlice;
+        else if(!selectsVariants()) slice = other.variantSlice;
+        else slice = Objects.equals(variantSlice, other.variantSlice) ? variantSlice : null;
+        if(slice == null && (variantSlice != null || other.variantSlice != null)){
+            // different pages of variants are each sliced from the whole list
+            union.removeIf(ProductProjection::isVariantField);
+            union.add("variants");
+        }
+        return new ProductProjection(union, slice);
+    }
+
+    public boolean selectsVariants(){
+        return isAll() || fields.stream().anyMatch(ProductProjection::isVariantField);
+    }
+
+    public static boolean isVariantField(String field){
+        return field.equals("variants") || field.startsWith("variants.");
+    }
+
+    /**
+     * The variants following the variant named after, or from the first variant when after is null, at most first of them.
+     * The read keeps the after variant itself, so the page can be found again in what was read.
+     */
+    public record VariantSlice(int first, String after) {
+    }
+}
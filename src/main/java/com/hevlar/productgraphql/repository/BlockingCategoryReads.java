@@ -0,0 +1,33 @@
+package com.hevlar.productgraphql.repository;
+
+import com.hevlar.productgraphql.model.Category;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+/**
+ * The category reads of the blocking execution mode, sent through the synchronous driver on an execution thread,
+ * as {@link BlockingProductReads} does for products.
+ */
+public class BlockingCategoryReads {
+
+    private final MongoTemplate mongoTemplate;
+    private final Scheduler scheduler;
+
+    public BlockingCategoryReads(MongoTemplate mongoTemplate, Scheduler scheduler){
+        this.mongoTemplate = mongoTemplate;
+        this.scheduler = scheduler;
+    }
+
+    public Mono<Category> findByName(String name){
+        return Mono.fromCallable(() -> mongoTemplate.findOne(CategoryRepositoryCustomImpl.nameQuery(name), Category.class))
+                .subscribeOn(scheduler);
+    }
+
+    public Flux<Category> findAll(){
+        return Flux.fromStream(() -> mongoTemplate.stream(new Query(), Category.class))
+                .subscribeOn(scheduler);
+    }
+}
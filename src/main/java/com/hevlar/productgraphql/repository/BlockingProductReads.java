@@ -0,0 +1,96 @@
+package com.hevlar.productgraphql.repository;
+
+import com.hevlar.productgraphql.model.Attribute;
+import com.hevlar.productgraphql.model.Product;
+import com.hevlar.productgraphql.model.ProductFacets;
+import com.hevlar.productgraphql.model.ProductFilter;
+import com.hevlar.productgraphql.model.ProductProjection;
+import com.hevlar.productgraphql.model.Variant;
+import org.bson.Document;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * The product reads of the blocking execution mode, sent through the synchronous driver.
+ * Each read runs on an execution thread, which blocks on the socket while Mongo answers and reads a cursor
+ * a batch at a time as the subscriber asks for more. The queries and aggregations are the ones
+ * {@link ProductRepositoryCustomImpl} sends through the reactive driver.
+ */
+public class BlockingProductReads {
+
+    private final MongoTemplate mongoTemplate;
+    private final Scheduler scheduler;
+
+    public BlockingProductReads(MongoTemplate mongoTemplate, Scheduler scheduler){
+        this.mongoTemplate = mongoTemplate;
+        this.scheduler = scheduler;
+    }
+
+    public Mono<Product> findById(String productId){
+        return one(() -> mongoTemplate.findById(productId, Product.class));
+    }
+
+    public Mono<Boolean> existsById(String productId){
+        return one(() -> mongoTemplate.exists(ProductRepositoryCustomImpl.idQuery(productId), Product.class));
+    }
+
+    public Mono<Variant> findVariant(String productId, String name){
+        return one(() -> mongoTemplate.findOne(ProductRepositoryCustomImpl.variantQuery(productId, name), Product.class))
+                .mapNotNull(ProductRepositoryCustomImpl::onlyVariant);
+    }
+
+    public Flux<Product> findProjectedByCategory(List<String> categoryHierarchy, boolean includeDescendants, String afterId, int limit, ProductProjection projection){
+        return stream(ProductRepositoryCustomImpl.categoryQuery(categoryHierarchy, includeDescendants, afterId, limit, projection));
+    }
+
+    public Flux<Product> findProjectedByFilter(ProductFilter filter, String afterId, int limit, ProductProjection projection){
+        return stream(ProductRepositoryCustomImpl.project(ProductRepositoryCustomImpl.filterQuery(filter, afterId, limit), projection));
+    }
+
+    public Flux<Product> findProjectedByVariantAttributes(List<Attribute> attributes, List<String> categoryHierarchy, boolean includeDescendants,
+                                                          String afterId, int limit, boolean matchingVariantOnly, ProductProjection projection){
+        Criteria criteria = ProductRepositoryCustomImpl.variantAttributesCriteria(attributes, categoryHierarchy, includeDescendants, afterId);
+        if(!matchingVariantOnly) return stream(ProductRepositoryCustomImpl.variantAttributesQuery(criteria, limit, projection));
+        return stream(() -> mongoTemplate.aggregateStream(
+                ProductRepositoryCustomImpl.matchingVariantsAggregation(criteria, attributes, limit, projection), Product.class));
+    }
+
+    public Flux<Product> findProjectedByIds(Collection<String> productIds, ProductProjection projection){
+        return stream(ProductRepositoryCustomImpl.idsQuery(productIds, projection));
+    }
+
+    public Flux<Product> searchProducts(String text, String categoryPath, Double afterScore, String afterId, int limit, ProductProjection projection){
+        return stream(() -> mongoTemplate.aggregateStream(
+                ProductRepositoryCustomImpl.searchAggregation(text, categoryPath, afterScore, afterId, limit, projection), Product.class));
+    }
+
+    public Mono<ProductFacets> findFacets(List<String> categoryHierarchy, ProductFilter filter, int tagLimit){
+        return one(() -> mongoTemplate.aggregate(ProductRepositoryCustomImpl.facetsAggregation(categoryHierarchy, filter, tagLimit),
+                        Product.class, Document.class).getUniqueMappedResult())
+                .map(ProductRepositoryCustomImpl::toFacets)
+                .defaultIfEmpty(ProductFacets.EMPTY);
+    }
+
+    private Flux<Product> stream(Query query){
+        return stream(() -> mongoTemplate.stream(query, Product.class));
+    }
+
+    private Flux<Product> stream(Supplier<Stream<Product>> cursor){
+        // the stream closes its cursor when the flux completes or is cancelled
+        return Flux.fromStream(cursor).subscribeOn(scheduler);
+    }
+
+    private <T> Mono<T> one(Callable<T> read){
+        return Mono.fromCallable(read).subscribeOn(scheduler);
+    }
+}
@@ -3,9 +3,7 @@ package com.hevlar.productgraphql.repository;
 import com.hevlar.productgraphql.model.Category;
 import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
 import org.springframework.stereotype.Repository;
-import reactor.core.publisher.Mono;
 
 @Repository
-public interface CategoryRepository extends ReactiveMongoRepository<Category, String> {
-    Mono<Category> findByName(String name);
+public interface CategoryRepository extends ReactiveMongoRepository<Category, String>, CategoryRepositoryCustom {
 }
@@ -0,0 +1,27 @@
+package com.hevlar.productgraphql.repository;
+
+import com.hevlar.productgraphql.model.Category;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+public interface CategoryRepositoryCustom {
+
+    /**
+     * Reads the top level category with the name, by the name index.
+     */
+    Mono<Category> findByName(String name);
+
+    /**
+     * Reads every top level category, as the base repository does, so that the read follows the execution mode.
+     */
+    Flux<Category> findAll();
+
+    /**
+     * Appends the new category under the existing hierarchy with one positional $push, unless a
+     * sub category of that name is already there. Emits the updated top level category, or nothing
+     * when the hierarchy doesn't exist or the name is taken.
+     */
+    Mono<Category> pushSubCategory(List<String> existingCategory, Category newCategory);
+}
@@ -0,0 +1,75 @@
+package com.hevlar.productgraphql.repository;
+
+import com.hevlar.productgraphql.model.Category;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+public class CategoryRepositoryCustomImpl implements CategoryRepositoryCustom {
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+    private final BlockingCategoryReads blockingReads;
+
+    public CategoryRepositoryCustomImpl(ReactiveMongoTemplate reactiveMongoTemplate){
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+        this.blockingReads = null;
+    }
+
+    /**
+     * In the blocking execution mode the reads go through {@link BlockingCategoryReads}, writes stay on the reactive driver.
+     */
+    @Autowired
+    public CategoryRepositoryCustomImpl(ReactiveMongoTemplate reactiveMongoTemplate, ObjectProvider<BlockingCategoryReads> blockingReads){
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+        this.blockingReads = blockingReads.getIfAvailable();
+    }
+
+    @Override
+    public Mono<Category> findByName(String name){
+        if(blockingReads != null) return blockingReads.findByName(name);
+        return reactiveMongoTemplate.findOne(nameQuery(name), Category.class);
+    }
+
+    static Query nameQuery(String name){
+        return Query.query(Criteria.where("name").is(name));
+    }
+
+    @Override
+    public Flux<Category> findAll(){
+        if(blockingReads != null) return blockingReads.findAll();
+        return reactiveMongoTemplate.findAll(Category.class);
+    }
+
+    @Override
+    public Mono<Category> pushSubCategory(List<String> existingCategory, Category newCategory){
+        // the filter matches the whole path and guards against a duplicate name at the target,
+        // e.g. {name: "Furniture", subCategories: {$elemMatch: {name: "Living Room", "subCategories.name": {$ne: "Sofa"}}}}
+        int last = existingCategory.size() - 1;
+        Criteria filter = Criteria.where("name").is(existingCategory.get(last)).and("subCategories.name").ne(newCategory.getName());
+        for(int level = last - 1; level >= 0; level--){
+            filter = Criteria.where("name").is(existingCategory.get(level)).and("subCategories").elemMatch(filter);
+        }
+
+        // the update walks down the path with one array filter per level,
+        // e.g. $push {"subCategories.$[l1].subCategories": newCategory} with arrayFilters [{"l1.name": "Living Room"}]
+        StringBuilder field = new StringBuilder();
+        Update update = new Update();
+        for(int level = 1; level < existingCategory.size(); level++){
+            String identifier = "l" + level;
+            field.append("subCategories.$[").append(identifier).append("].");
+            update.filterArray(Criteria.where(identifier + ".name").is(existingCategory.get(level)));
+        }
+        field.append("subCategories");
+        update.push(field.toString(), newCategory);
+
+        return reactiveMongoTemplate.findAndModify(Query.query(filter), update, FindAndModifyOptions.options().returnNew(true), Category.class);
+    }
+}
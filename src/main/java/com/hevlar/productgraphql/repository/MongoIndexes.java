@@ -0,0 +1,69 @@
+package com.hevlar.productgraphql.repository;
+
+import com.hevlar.productgraphql.model.Category;
+import com.hevlar.productgraphql.model.Product;
+import org.bson.Document;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.index.CompoundIndexDefinition;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.TextIndexDefinition;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Every index of every collection, by the entity stored in it. Nothing else creates indexes:
+ * auto index creation is off and the IndexManager builds these in the background and reports any drift.
+ * Every index is named, the name is what an existing index is matched by.
+ */
+public final class MongoIndexes {
+
+    static final List<IndexDefinition> PRODUCT = List.of(
+            // a name prefix is a range of names, so pages read from here are in name order and have to be sorted by id.
+            // The planner only picks it for a selective prefix; a broad prefix walks the _id index and fetches every product
+            // until a page of matches is found. A {name, _id} index would not help: the range on name still breaks the id order
+            new Index("name", Sort.Direction.ASC).named("name"),
+            TextIndexDefinition.builder()
+                    .named("Product_TextIndex")
+                    .onField("name", 10F)
+                    .onField("tags", 5F)
+                    .onField("description", 1F)
+                    .build(),
+            // equality fields first and _id last, so filtered pages are read in id order straight from the index
+            // the scalar path bounds the whole hierarchy, a multikey index on the category array only bounds one element of it
+            compound("categoryPath_id", "{'categoryPath': 1, '_id': 1}"),
+            compound("categoryAncestors_id", "{'categoryAncestors': 1, '_id': 1}"),
+            compound("categoryPath_status_id", "{'categoryPath': 1, 'status': 1, '_id': 1}"),
+            compound("categoryAncestors_status_id", "{'categoryAncestors': 1, 'status': 1, '_id': 1}"),
+            compound("tags_id", "{'tags': 1, '_id': 1}"),
+            compound("tags_status_id", "{'tags': 1, 'status': 1, '_id': 1}"),
+            compound("status_id", "{'status': 1, '_id': 1}"),
+            // multikey over both arrays, an $elemMatch on one attribute bounds the key and the value together
+            compound("variants_attributeList", "{'variants.attributeList.key': 1, 'variants.attributeList.value': 1}")
+    );
+
+    static final List<IndexDefinition> CATEGORY = List.of(
+            // top categories are looked up by name
+            new Index("name", Sort.Direction.ASC).named("name")
+    );
+
+    private MongoIndexes(){
+    }
+
+    public static Map<Class<?>, List<IndexDefinition>> declared(){
+        Map<Class<?>, List<IndexDefinition>> declared = new LinkedHashMap<>();
+        declared.put(Product.class, PRODUCT);
+        declared.put(Category.class, CATEGORY);
+        return declared;
+    }
+
+    public static String name(IndexDefinition index){
+        return index.getIndexOptions().getString("name");
+    }
+
+    private static IndexDefinition compound(String name, String keys){
+        return new CompoundIndexDefinition(Document.parse(keys)).named(name);
+    }
+}
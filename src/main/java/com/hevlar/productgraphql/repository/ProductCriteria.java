@@ -0,0 +1,74 @@
+package com.hevlar.productgraphql.repository;
+
+import com.hevlar.productgraphql.model.Attribute;
+import com.hevlar.productgraphql.model.CategoryPath;
+import com.hevlar.productgraphql.model.ProductFilter;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.util.CollectionUtils;
+
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Builds the criteria shared by the product reads, so a filter means the same thing to every query.
+ */
+public final class ProductCriteria {
+
+    private static final Pattern REGEX_SPECIAL = Pattern.compile("[\\\\^$.|?*+()\\[\\]{}]");
+
+    private ProductCriteria(){
+    }
+
+    /**
+     * Matches the products of the category, or of its whole subtree when includeDescendants is set.
+     */
+    public static Criteria inCategory(List<String> categoryHierarchy, boolean includeDescendants){
+        String categoryPath = CategoryPath.of(categoryHierarchy);
+        return includeDescendants
+                ? Criteria.where("categoryAncestors").is(categoryPath)
+                : Criteria.where("categoryPath").is(categoryPath);
+    }
+
+    /**
+     * Matches the products with at least one variant that has every one of the attributes.
+     * Each attribute is an $elemMatch on the key and value together, so they match within one attribute.
+     */
+    public static Criteria withVariantAttributes(Criteria criteria, List<Attribute> attributes){
+        Criteria[] conditions = attributes.stream()
+                .map(attribute -> Criteria.where("attributeList").elemMatch(Criteria.where("key").is(attribute.key()).and("value").is(attribute.value())))
+                .toArray(Criteria[]::new);
+        Criteria variant = conditions.length == 1 ? conditions[0] : new Criteria().andOperator(conditions);
+        return criteria.and("variants").elemMatch(variant);
+    }
+
+    /**
+     * Matches the products satisfying every condition of the filter, its category included.
+     */
+    public static Criteria of(ProductFilter filter){
+        Criteria criteria = filter == null || CollectionUtils.isEmpty(filter.categoryHierarchy())
+                ? new Criteria()
+                : inCategory(filter.categoryHierarchy(), filter.isIncludeDescendants());
+        return withFilter(criteria, filter);
+    }
+
+    /**
+     * Adds the conditions of the filter, other than its category, to the criteria. A name prefix is matched with an anchored,
+     * case sensitive regex so a selective prefix can still be answered from the name index.
+     */
+    public static Criteria withFilter(Criteria criteria, ProductFilter filter){
+        if(filter == null) return criteria;
+        if(!CollectionUtils.isEmpty(filter.status())) criteria = criteria.and("status").in(filter.status());
+        if(!CollectionUtils.isEmpty(filter.tagsAny()) && !CollectionUtils.isEmpty(filter.tagsAll())){
+            // both conditions are on tags, so they can't share one field document
+            criteria = criteria.andOperator(Criteria.where("tags").in(filter.tagsAny()), Criteria.where("tags").all(filter.tagsAll()));
+        }else if(!CollectionUtils.isEmpty(filter.tagsAny())){
+            criteria = criteria.and("tags").in(filter.tagsAny());
+        }else if(!CollectionUtils.isEmpty(filter.tagsAll())){
+            criteria = criteria.and("tags").all(filter.tagsAll());
+        }
+        if(filter.namePrefix() != null && !filter.namePrefix().isEmpty()){
+            criteria = criteria.and("name").regex("^" + REGEX_SPECIAL.matcher(filter.namePrefix()).replaceAll("\\\\$0"));
+        }
+        return criteria;
+    }
+}
@@ -8,6 +8,6 @@ import reactor.core.publisher.Flux;
 import java.util.List;
 
 @Repository
-public interface ProductRepository extends ReactiveMongoRepository<Product, String> {
+public interface ProductRepository extends ReactiveMongoRepository<Product, String>, ProductRepositoryCustom {
     Flux<Product> findAllByCategory(List<String> category);
 }
@@ -0,0 +1,97 @@
+package com.hevlar.productgraphql.repository;
+
+import com.hevlar.productgraphql.model.Attribute;
+import com.hevlar.productgraphql.model.Product;
+import com.hevlar.productgraphql.model.ProductFacets;
+import com.hevlar.productgraphql.model.ProductFilter;
+import com.hevlar.productgraphql.model.ProductProjection;
+import com.hevlar.productgraphql.model.Variant;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+public interface ProductRepositoryCustom {
+
+    /**
+     * Inserts the products with one unordered bulk write. Products without an id are given one.
+     * Emits the error message of every product that failed, keyed by its position in the list.
+     */
+    Mono<Map<Integer, String>> insertUnordered(List<Product> products);
+
+    /**
+     * Appends the variant in one atomic findAndModify, unless the product already has a variant with that name.
+     * Emits the updated product, or nothing when the product is missing or the name is taken.
+     */
+    Mono<Product> pushVariant(String productId, Variant variant);
+
+    /**
+     * Appends the variant like {@link #pushVariant}, with an update that doesn't read the product back.
+     * Emits whether the variant was appended.
+     */
+    Mono<Boolean> appendVariant(String productId, Variant variant);
+
+    /**
+     * Reads the product with the id, as the base repository does, so that the read follows the execution mode.
+     */
+    Mono<Product> findById(String productId);
+
+    /**
+     * Whether there is a product with the id, as the base repository tells, so that the read follows the execution mode.
+     */
+    Mono<Boolean> existsById(String productId);
+
+    /**
+     * Reads the variant of the product with the name through an $elemMatch projection, so no other variant is read.
+     * Emits nothing when the product or the variant is missing.
+     */
+    Mono<Variant> findVariant(String productId, String name);
+
+    /**
+     * Sets the category path and ancestors of the products stored without them, in unordered bulk updates of those fields alone,
+     * each only applied while the product is still missing one of them and has the same category. Emits the number of products updated.
+     */
+    Mono<Long> backfillCategoryPaths();
+
+    /**
+     * Reads the products of the category, or of its whole subtree when includeDescendants is set, ordered by id
+     * and starting after afterId when it is given. Only the projected fields are read. A limit of 0 reads them all.
+     */
+    Flux<Product> findProjectedByCategory(List<String> categoryHierarchy, boolean includeDescendants, String afterId, int limit, ProductProjection projection);
+
+    /**
+     * Reads the products matching every condition of the filter with a single query, ordered by id and starting
+     * after afterId when it is given. Only the projected fields are read. A limit of 0 reads them all.
+     */
+    Flux<Product> findProjectedByFilter(ProductFilter filter, String afterId, int limit, ProductProjection projection);
+
+    /**
+     * Reads the products with a variant that has every one of the attributes, in the category or its subtree when
+     * a hierarchy is given, ordered by id and starting after afterId when it is given. Only the projected fields are read.
+     * With matchingVariantOnly the page is read with an aggregation that filters the variants down to every matching one,
+     * read whole, instead of the whole list.
+     */
+    Flux<Product> findProjectedByVariantAttributes(List<Attribute> attributes, List<String> categoryHierarchy, boolean includeDescendants,
+                                                   String afterId, int limit, boolean matchingVariantOnly, ProductProjection projection);
+
+    /**
+     * Reads the products with the given ids in a single $in query. Only the projected fields are read.
+     */
+    Flux<Product> findProjectedByIds(Collection<String> productIds, ProductProjection projection);
+
+    /**
+     * Reads the products matching the text, most relevant first and then by id, starting after the given score and id
+     * when they are given. The relevance is weighted by the text index and set as the product score.
+     * A category path restricts the search to that category subtree.
+     */
+    Flux<Product> searchProducts(String text, String categoryPath, Double afterScore, String afterId, int limit, ProductProjection projection);
+
+    /**
+     * Counts the products of the category subtree that match the filter, per tag, per status and per child category,
+     * most common first, in a single $facet aggregation. Only the tagLimit most common tags are counted.
+     * The category of the filter narrows the products counted within the given category subtree.
+     */
+    Mono<ProductFacets> findFacets(List<String> categoryHierarchy, ProductFilter filter, int tagLimit);
+}
@@ -0,0 +1,371 @@
+package com.hevlar.productgraphql.repository;
+
+import com.hevlar.productgraphql.model.Attribute;
+import com.hevlar.productgraphql.model.CategoryPath;
+import com.hevlar.productgraphql.model.Product;
+import com.hevlar.productgraphql.model.ProductFacets;
+import com.hevlar.productgraphql.model.ProductFilter;
+import com.hevlar.productgraphql.model.ProductProjection;
+import com.hevlar.productgraphql.model.Variant;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveBulkOperations;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.aggregation.ArrayOperators;
+import org.springframework.data.mongodb.core.aggregation.TypedAggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.TextCriteria;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.util.CollectionUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class ProductRepositoryCustomImpl implements ProductRepositoryCustom {
+
+    private static final int BACKFILL_BATCH_SIZE = 500;
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+    private final BlockingProductReads blockingReads;
+
+    public ProductRepositoryCustomImpl(ReactiveMongoTemplate reactiveMongoTemplate){
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+        this.blockingReads = null;
+    }
+
+    /**
+     * In the blocking execution mode the reads go through {@link BlockingProductReads}, writes stay on the reactive driver.
+     */
+    @Autowired
+    public ProductRepositoryCustomImpl(ReactiveMongoTemplate reactiveMongoTemplate, ObjectProvider<BlockingProductReads> blockingReads){
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+        this.blockingReads = blockingReads.getIfAvailable();
+    }
+
+    @Override
+    public Mono<Map<Integer, String>> insertUnordered(List<Product> products){
+        if(products.isEmpty()) return Mono.just(Map.of());
+        // ids are assigned up front so the caller gets them back without reading the documents
+        products.forEach(product -> {
+            if(product.getId() == null) product.setId(new ObjectId().toHexString());
+        });
+        return reactiveMongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Product.class)
+                .insert(products)
+                .execute()
+                .map(result -> Map.<Integer, String>of())
+                .onErrorResume(ex -> bulkWriteErrors(ex) != null, ex -> Mono.just(toErrorMap(bulkWriteErrors(ex))));
+    }
+
+    @Override
+    public Mono<Long> backfillCategoryPaths(){
+        Query missing = Query.query(missingCategoryPaths());
+        missing.fields().include("category");
+        return reactiveMongoTemplate.find(missing, Product.class)
+                .filter(product -> product.getCategory() != null)
+                .buffer(BACKFILL_BATCH_SIZE)
+                .concatMap(products -> {
+                    ReactiveBulkOperations bulk = reactiveMongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Product.class);
+                    for(Product product: products){
+                        bulk.updateOne(Query.query(new Criteria().andOperator(
+                                        Criteria.where("id").is(product.getId()).and("category").is(product.getCategory()),
+                                        missingCategoryPaths())),
+                                // read by field, so the paths weren't derived when the product was mapped
+                                new Update().set("categoryPath", CategoryPath.of(product.getCategory()))
+                                        .set("categoryAncestors", CategoryPath.ancestors(product.getCategory())));
+                    }
+                    return bulk.execute().map(result -> (long) result.getModifiedCount());
+                })
+                .reduce(0L, Long::sum);
+    }
+
+    private static Criteria missingCategoryPaths(){
+        return new Criteria().orOperator(Criteria.where("categoryPath").is(null), Criteria.where("categoryAncestors").is(null));
+    }
+
+    @Override
+    public Mono<Product> pushVariant(String productId, Variant variant){
+        return reactiveMongoTemplate.findAndModify(newVariantQuery(productId, variant), new Update().push("variants", variant),
+                FindAndModifyOptions.options().returnNew(true), Product.class);
+    }
+
+    @Override
+    public Mono<Boolean> appendVariant(String productId, Variant variant){
+        return reactiveMongoTemplate.updateFirst(newVariantQuery(productId, variant), new Update().push("variants", variant), Product.class)
+                .map(result -> result.getModifiedCount() == 1);
+    }
+
+    private static Query newVariantQuery(String productId, Variant variant){
+        return Query.query(Criteria.where("id").is(productId).and("variants.name").ne(variant.name()));
+    }
+
+    @Override
+    public Mono<Product> findById(String productId){
+        if(blockingReads != null) return blockingReads.findById(productId);
+        return reactiveMongoTemplate.findById(productId, Product.class);
+    }
+
+    @Override
+    public Mono<Boolean> existsById(String productId){
+        if(blockingReads != null) return blockingReads.existsById(productId);
+        return reactiveMongoTemplate.exists(idQuery(productId), Product.class);
+    }
+
+    static Query idQuery(String productId){
+        return Query.query(Criteria.where("id").is(productId));
+    }
+
+    @Override
+    public Mono<Variant> findVariant(String productId, String name){
+        if(blockingReads != null) return blockingReads.findVariant(productId, name);
+        return reactiveMongoTemplate.findOne(variantQuery(productId, name), Product.class).mapNotNull(ProductRepositoryCustomImpl::onlyVariant);
+    }
+
+    static Query variantQuery(String productId, String name){
+        Query query = idQuery(productId);
+        query.fields().elemMatch("variants", Criteria.where("name").is(name));
+        return query;
+    }
+
+    static Variant onlyVariant(Product product){
+        // a product without the variant is read without the variants field
+        return CollectionUtils.isEmpty(product.getVariants()) ? null : product.getVariants().get(0);
+    }
+
+    @Override
+    public Flux<Product> findProjectedByCategory(List<String> categoryHierarchy, boolean includeDescendants, String afterId, int limit, ProductProjection projection){
+        if(blockingReads != null) return blockingReads.findProjectedByCategory(categoryHierarchy, includeDescendants, afterId, limit, projection);
+        return reactiveMongoTemplate.find(categoryQuery(categoryHierarchy, includeDescendants, afterId, limit, projection), Product.class);
+    }
+
+    static Query categoryQuery(List<String> categoryHierarchy, boolean includeDescendants, String afterId, int limit, ProductProjection projection){
+        Criteria criteria = ProductCriteria.inCategory(categoryHierarchy, includeDescendants);
+        if(afterId != null) criteria = criteria.and("id").gt(afterId);
+        return project(Query.query(criteria).with(Sort.by("id")).limit(limit), projection);
+    }
+
+    @Override
+    public Flux<Product> findProjectedByFilter(ProductFilter filter, String afterId, int limit, ProductProjection projection){
+        if(blockingReads != null) return blockingReads.findProjectedByFilter(filter, afterId, limit, projection);
+        return reactiveMongoTemplate.find(project(filterQuery(filter, afterId, limit), projection), Product.class);
+    }
+
+    static Query filterQuery(ProductFilter filter, String afterId, int limit){
+        Criteria criteria = ProductCriteria.of(filter);
+        if(afterId != null) criteria = criteria.and("id").gt(afterId);
+        return Query.query(criteria).with(Sort.by("id")).limit(limit);
+    }
+
+    @Override
+    public Flux<Product> findProjectedByVariantAttributes(List<Attribute> attributes, List<String> categoryHierarchy, boolean includeDescendants,
+                                                          String afterId, int limit, boolean matchingVariantOnly, ProductProjection projection){
+        if(blockingReads != null) return blockingReads.findProjectedByVariantAttributes(
+                attributes, categoryHierarchy, includeDescendants, afterId, limit, matchingVariantOnly, projection);
+        Criteria criteria = variantAttributesCriteria(attributes, categoryHierarchy, includeDescendants, afterId);
+        if(!matchingVariantOnly) return reactiveMongoTemplate.find(variantAttributesQuery(criteria, limit, projection), Product.class);
+        return reactiveMongoTemplate.aggregate(matchingVariantsAggregation(criteria, attributes, limit, projection), Product.class);
+    }
+
+    static Criteria variantAttributesCriteria(List<Attribute> attributes, List<String> categoryHierarchy, boolean includeDescendants, String afterId){
+        Criteria criteria = CollectionUtils.isEmpty(categoryHierarchy)
+                ? new Criteria()
+                : ProductCriteria.inCategory(categoryHierarchy, includeDescendants);
+        criteria = ProductCriteria.withVariantAttributes(criteria, attributes);
+        if(afterId != null) criteria = criteria.and("id").gt(afterId);
+        return criteria;
+    }
+
+    static Query variantAttributesQuery(Criteria criteria, int limit, ProductProjection projection){
+        return project(Query.query(criteria).with(Sort.by("id")).limit(limit), projection);
+    }
+
+    static TypedAggregation<Product> matchingVariantsAggregation(Criteria criteria, List<Attribute> attributes, int limit, ProductProjection projection){
+        // the page is found as by the find, then its variants are filtered down to the matching ones, read whole
+        Document variants = new Document("variants", matchingVariants(attributes));
+        Document stage;
+        if(projection.isAll()){
+            stage = new Document("$addFields", variants);
+        }else{
+            Document fields = new Document();
+            projection.fields().stream()
+                    .filter(field -> !ProductProjection.isVariantField(field))
+                    .forEach(field -> fields.append("id".equals(field) ? "_id" : field, 1));
+            fields.putAll(variants);
+            stage = new Document("$project", fields);
+        }
+        List<AggregationOperation> stages = List.of(
+                Aggregation.match(criteria),
+                Aggregation.sort(Sort.by("id")),
+                Aggregation.limit(limit),
+                context -> stage);
+        return Aggregation.newAggregation(Product.class, stages);
+    }
+
+    /**
+     * The $filter expression keeping the variants that have every one of the attributes, each matched on its key and value together.
+     */
+    static Document matchingVariants(List<Attribute> attributes){
+        List<Document> conditions = attributes.stream()
+                .map(attribute -> new Document("$gt", List.of(new Document("$size", new Document("$filter", new Document()
+                        .append("input", new Document("$ifNull", List.of("$$variant.attributeList", List.of())))
+                        .append("as", "attribute")
+                        .append("cond", new Document("$and", List.of(
+                                new Document("$eq", List.of("$$attribute.key", attribute.key())),
+                                new Document("$eq", List.of("$$attribute.value", attribute.value())))))))), 0)))
+                .toList();
+        return new Document("$filter", new Document()
+                .append("input", new Document("$ifNull", List.of("$variants", List.of())))
+                .append("as", "variant")
+                .append("cond", new Document("$and", conditions)));
+    }
+
+    @Override
+    public Flux<Product> findProjectedByIds(Collection<String> productIds, ProductProjection projection){
+        if(blockingReads != null) return blockingReads.findProjectedByIds(productIds, projection);
+        return reactiveMongoTemplate.find(idsQuery(productIds, projection), Product.class);
+    }
+
+    static Query idsQuery(Collection<String> productIds, ProductProjection projection){
+        return project(Query.query(Criteria.where("id").in(productIds)), projection);
+    }
+
+    @Override
+    public Flux<Product> searchProducts(String text, String categoryPath, Double afterScore, String afterId, int limit, ProductProjection projection){
+        if(blockingReads != null) return blockingReads.searchProducts(text, categoryPath, afterScore, afterId, limit, projection);
+        return reactiveMongoTemplate.aggregate(searchAggregation(text, categoryPath, afterScore, afterId, limit, projection), Product.class);
+    }
+
+    static TypedAggregation<Product> searchAggregation(String text, String categoryPath, Double afterScore, String afterId, int limit,
+                                                       ProductProjection projection){
+        List<AggregationOperation> stages = new ArrayList<>();
+        // $text has to be in the first stage, the optimizer merges the category match into it
+        stages.add(Aggregation.match(TextCriteria.forDefaultLanguage().matching(text)));
+        if(categoryPath != null) stages.add(Aggregation.match(Criteria.where("categoryAncestors").is(categoryPath)));
+        stages.add(context -> new Document("$addFields", new Document("score", new Document("$meta", "textScore"))));
+        if(afterId != null){
+            stages.add(Aggregation.match(new Criteria().orOperator(
+                    Criteria.where("score").lt(afterScore),
+                    Criteria.where("score").is(afterScore).and("id").gt(afterId))));
+        }
+        stages.add(Aggregation.sort(Sort.by(Sort.Order.desc("score"), Sort.Order.asc("id"))));
+        stages.add(Aggregation.limit(limit));
+        if(!projection.isAll()){
+            Document fields = new Document("score", 1);
+            ProductProjection.VariantSlice slice = projection.variantSlice();
+            projection.fields().stream()
+                    .filter(field -> slice == null || !ProductProjection.isVariantField(field))
+                    .forEach(field -> fields.append("id".equals(field) ? "_id" : field, 1));
+            if(slice != null) fields.append("variants", variantSlice(slice));
+            stages.add(context -> new Document("$project", fields));
+        }
+        return Aggregation.newAggregation(Product.class, stages);
+    }
+
+    @Override
+    public Mono<ProductFacets> findFacets(List<String> categoryHierarchy, ProductFilter filter, int tagLimit){
+        if(blockingReads != null) return blockingReads.findFacets(categoryHierarchy, filter, tagLimit);
+        return reactiveMongoTemplate.aggregate(facetsAggregation(categoryHierarchy, filter, tagLimit), Product.class, Document.class)
+                .next()
+                .map(ProductRepositoryCustomImpl::toFacets)
+                .defaultIfEmpty(ProductFacets.EMPTY);
+    }
+
+    static Aggregation facetsAggregation(List<String> categoryHierarchy, ProductFilter filter, int tagLimit){
+        Criteria criteria = ProductCriteria.withFilter(facetCategory(categoryHierarchy, filter), filter);
+        // every facet reads the one stream of matched products, which is found with the category index
+        return Aggregation.newAggregation(
+                Aggregation.match(criteria),
+                Aggregation.facet(Aggregation.unwind("tags"), Aggregation.sortByCount("tags"), Aggregation.limit(tagLimit)).as("tags")
+                        .and(Aggregation.sortByCount("status")).as("statuses")
+                        .and(Aggregation.project().and(ArrayOperators.ArrayElemAt.arrayOf("category").elementAt(categoryHierarchy.size())).as("child"),
+                                Aggregation.match(Criteria.where("child").exists(true)),
+                                Aggregation.sortByCount("child")).as("subCategories")
+                        .and(Aggregation.count().as("total")).as("total"));
+    }
+
+    /**
+     * Matches the category subtree counted, narrowed to the category of the filter when it has one, as searchProducts does.
+     */
+    static Criteria facetCategory(List<String> categoryHierarchy, ProductFilter filter){
+        String categoryPath = CategoryPath.of(categoryHierarchy);
+        if(filter == null || CollectionUtils.isEmpty(filter.categoryHierarchy())) return Criteria.where("categoryAncestors").is(categoryPath);
+        String filterPath = CategoryPath.of(filter.categoryHierarchy());
+        // both subtrees are on the ancestors, so they are matched with one $all
+        if(filter.isIncludeDescendants()) return Criteria.where("categoryAncestors").all(categoryPath, filterPath);
+        return Criteria.where("categoryAncestors").is(categoryPath).and("categoryPath").is(filterPath);
+    }
+
+    static ProductFacets toFacets(Document facets){
+        return new ProductFacets(
+                facets.getList("total", Document.class).stream().findFirst().map(total -> count(total, "total")).orElse(0L),
+                facetCounts(facets, "tags"),
+                facetCounts(facets, "statuses"),
+                facetCounts(facets, "subCategories"));
+    }
+
+    private static List<ProductFacets.FacetCount> facetCounts(Document facets, String facet){
+        return facets.getList(facet, Document.class).stream()
+                .map(bucket -> new ProductFacets.FacetCount(String.valueOf(bucket.get("_id")), count(bucket, "count")))
+                .toList();
+    }
+
+    private static long count(Document document, String field){
+        // counts come back as int32 until they outgrow it
+        return document.get(field, Number.class).longValue();
+    }
+
+    static Query project(Query query, ProductProjection projection){
+        if(projection.isAll()) return query;
+        ProductProjection.VariantSlice slice = projection.variantSlice();
+        // property paths are mapped to field names by the template, so "id" is read as "_id"
+        projection.fields().stream()
+                .filter(field -> slice == null || !ProductProjection.isVariantField(field))
+                .forEach(field -> query.fields().include(field));
+        if(slice != null){
+            Document expression = variantSlice(slice);
+            query.fields().project(() -> expression).as("variants");
+        }
+        return query;
+    }
+
+    /**
+     * The $slice expression reading a page of variants. It starts at the after variant itself, or at the first variant
+     * when there is no variant of that name, so that {@link Product#variantsAfter} finds the same page in what is read.
+     */
+    static Document variantSlice(ProductProjection.VariantSlice slice){
+        if(slice.after() == null) return new Document("$slice", List.of("$variants", slice.first()));
+        Document position = new Document("$max", List.of(new Document("$indexOfArray", List.of("$variants.name", slice.after())), 0));
+        return new Document("$slice", List.of("$variants", position, slice.first() + 1));
+    }
+
+    private static List<BulkWriteError> bulkWriteErrors(Throwable ex){
+        for(Throwable cause = ex; cause != null; cause = cause.getCause()){
+            if(cause instanceof MongoBulkWriteException bulkWriteException) return bulkWriteException.getWriteErrors();
+            if(cause instanceof BulkOperationException bulkOperationException) return bulkOperationException.getErrors();
+        }
+        return null;
+    }
+
+    private static Map<Integer, String> toErrorMap(List<BulkWriteError> errors){
+        Map<Integer, String> errorMap = new HashMap<>();
+        for(BulkWriteError error: errors){
+            errorMap.put(error.getIndex(), error.getCode() == 11000 ? "Product already exists" : error.getMessage());
+        }
+        return errorMap;
+    }
+}
@@ -0,0 +1,46 @@
+package com.hevlar.productgraphql.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Watches the category collection so that writes made by other instances refresh the category snapshot.
+ * Requires Mongo to run as a replica set.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "productgraphql.category.change-stream.enabled", havingValue = "true")
+public class CategoryChangeListener {
+
+    private final ChangeFeed changeFeed;
+    private final CategoryService categoryService;
+    private Disposable subscription;
+
+    public CategoryChangeListener(ChangeFeed changeFeed, CategoryService categoryService){
+        this.changeFeed = changeFeed;
+        this.categoryService = categoryService;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start(){
+        subscription = changeFeed.categoryChanges()
+                // a burst of changes only needs the latest reload
+                .onBackpressureLatest()
+                .concatMap(category -> categoryService.refreshSnapshot(), 1)
+                .subscribe(
+                        refreshed -> log.debug("Category snapshot refreshed to version {}", refreshed.getVersion()),
+                        error -> log.error("Category change stream stopped", error)
+                );
+    }
+
+    @PreDestroy
+    public void stop(){
+        if(subscription != null) subscription.dispose();
+    }
+}
@@ -2,25 +2,86 @@ package com.hevlar.productgraphql.service;
 
 import com.hevlar.productgraphql.model.Category;
 import com.hevlar.productgraphql.repository.CategoryRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 import org.springframework.util.CollectionUtils;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
-import java.util.ArrayList;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
+@Slf4j
 @Service
 public class CategoryService {
 
     private final CategoryRepository categoryRepository;
-
-    public CategoryService(CategoryRepository categoryRepository){
+    private final AtomicReference<CategorySnapshot> snapshot = new AtomicReference<>();
+    private final AtomicReference<Mono<CategorySnapshot>> inFlightRefresh = new AtomicReference<>();
+    private final Timer snapshotRebuildTimer;
+    private final long missReloadIntervalNanos;
+    private final AtomicLong lastMissReload;
+
+    public CategoryService(CategoryRepository categoryRepository, MeterRegistry meterRegistry,
+                           @Value("${productgraphql.category.miss-reload-interval:5s}") Duration missReloadInterval){
         this.categoryRepository = categoryRepository;
+        this.missReloadIntervalNanos = missReloadInterval.toNanos();
+        // the first miss may reload straight away
+        this.lastMissReload = new AtomicLong(System.nanoTime() - missReloadIntervalNanos);
+        this.snapshotRebuildTimer = Timer.builder("category.snapshot.rebuild")
+                .description("Time taken to load and build the category snapshot")
+                .register(meterRegistry);
+        Gauge.builder("category.snapshot.version", snapshot, ref -> ref.get() == null ? Double.NaN : ref.get().getVersion())
+                .description("Version of the category snapshot currently served")
+                .register(meterRegistry);
+        Gauge.builder("category.snapshot.age", snapshot, ref -> ref.get() == null
+                        ? Double.NaN
+                        : Duration.between(ref.get().getCreatedAt(), Instant.now()).toMillis() / 1000.0)
+                .description("Age of the category snapshot currently served")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadSnapshotOnStartup(){
+        refreshSnapshot().subscribe(
+                loaded -> log.info("Loaded category snapshot version {} with {} top categories", loaded.getVersion(), loaded.getCategories().size()),
+                error -> log.warn("Unable to load category snapshot on startup", error)
+        );
     }
 
     public Flux<Category> getCategories(){
-        return categoryRepository.findAll();
+        return currentSnapshot().flatMapIterable(CategorySnapshot::getCategories);
+    }
+
+    /**
+     * Returns the top categories with at most depth levels of sub categories, or whole when depth is null.
+     */
+    public Flux<Category> getCategories(Integer depth){
+        if(depth == null) return getCategories();
+        if(depth < 0) return Flux.error(new IllegalArgumentException("Depth must not be negative"));
+        return getCategories().map(category -> category.withDepth(depth));
+    }
+
+    /**
+     * Returns the category at the end of the path from the snapshot, with at most depth levels of
+     * sub categories, or the whole subtree when depth is null.
+     */
+    public Mono<Category> getCategory(List<String> path, Integer depth){
+        if(depth != null && depth < 0) return Mono.error(new IllegalArgumentException("Depth must not be negative"));
+        return validateCategoryHierarchy(path)
+                .map(category -> depth == null ? category : category.withDepth(depth));
     }
 
     public Mono<Category> addTopCategory(Category category){
@@ -29,7 +90,8 @@ public class CategoryService {
         }
         return categoryRepository.findByName(category.getName())
                 .flatMap(existingCategory -> Mono.<Category>error(new IllegalArgumentException("A category with this name already exists")))
-                .switchIfEmpty(Mono.defer(() -> categoryRepository.save(category)));
+                .switchIfEmpty(Mono.defer(() -> categoryRepository.save(category)))
+                .doOnNext(this::publishTopCategory);
     }
 
     public Mono<Category> getTopCategory(String categoryName){
@@ -39,25 +101,44 @@ public class CategoryService {
         return categoryRepository.findByName(categoryName);
     }
 
+    /**
+     * Validates the hierarchy against the category snapshot, so a hit costs no round trip to Mongo.
+     * A miss reloads the snapshot in case the category was written by another instance, but at most once
+     * per miss reload interval, so unknown hierarchies can't turn every lookup into a read of the whole tree.
+     * Between reloads a category written elsewhere is found through the change stream, when it is enabled.
+     */
     public Mono<Category> validateCategoryHierarchy(List<String> categoryHierarchy){
         if(CollectionUtils.isEmpty(categoryHierarchy))
             return Mono.error(new IllegalArgumentException("Category hierarchy is missing"));
 
-        return getTopCategory(categoryHierarchy.get(0))
-                .switchIfEmpty(Mono.error(new IllegalArgumentException("Category not found")))
-                .map(category -> {
-                    if(categoryHierarchy.size() > 1){
-                        return category.traverse(categoryHierarchy.subList(1, categoryHierarchy.size()));
-                    }else{
-                        return category;
-                    }
+        return currentSnapshot()
+                .flatMap(current -> current.find(categoryHierarchy) != null || !claimMissReload()
+                        ? Mono.just(current)
+                        : refreshSnapshot())
+                .flatMap(current -> {
+                    Category found = current.find(categoryHierarchy);
+                    if(found != null) return Mono.just(found);
+                    if(current.getTopCategory(categoryHierarchy.get(0)) == null)
+                        return Mono.error(new IllegalArgumentException("Category not found"));
+                    return Mono.error(new IllegalArgumentException("Existing category provided doesn't exist"));
                 });
     }
 
+    /**
+     * Pushes the new category straight into the stored tree, so only the new node is sent to Mongo
+     * and concurrent inserts into other branches can't overwrite each other.
+     * When nothing was pushed the tree is read back to tell the caller why.
+     */
     public Mono<Category> addCategoryToExisting(Category newCategory, List<String> existingCategory){
         if(newCategory == null) return Mono.error(new IllegalArgumentException("New category is null"));
         if(existingCategory == null || existingCategory.size() == 0) return addTopCategory(newCategory);
 
+        return categoryRepository.pushSubCategory(existingCategory, newCategory)
+                .switchIfEmpty(Mono.defer(() -> explainFailedInsert(newCategory, existingCategory)))
+                .doOnNext(this::publishTopCategory);
+    }
+
+    private Mono<Category> explainFailedInsert(Category newCategory, List<String> existingCategory){
         return categoryRepository.findByName(existingCategory.get(0))
                 .switchIfEmpty(Mono.error(() -> new IllegalArgumentException("Existing category not found")))
                 .flatMap(category -> {
@@ -65,13 +146,59 @@ public class CategoryService {
                     if(target.hasSubCategory(newCategory.getName())){
                         return Mono.error(new IllegalArgumentException("New category already exists"));
                     }
-                    List<Category> updatedSubCategoryList = new ArrayList<>(target.getSubCategories());
-                    updatedSubCategoryList.add(newCategory);
-                    target.setSubCategories(updatedSubCategoryList);
-                    return categoryRepository.save(category);
+                    // the tree changed between the push and the read
+                    return Mono.error(new IllegalArgumentException("Category was modified concurrently, please retry"));
                 });
     }
 
+    private boolean claimMissReload(){
+        long now = System.nanoTime();
+        long last = lastMissReload.get();
+        return now - last >= missReloadIntervalNanos && lastMissReload.compareAndSet(last, now);
+    }
 
+    /**
+     * Reloads every top level category from Mongo and swaps the snapshot in.
+     * Concurrent callers share the same reload.
+     */
+    public Mono<CategorySnapshot> refreshSnapshot(){
+        return Mono.defer(() -> {
+            Mono<CategorySnapshot> refresh = inFlightRefresh.get();
+            if(refresh != null) return refresh;
+            Mono<CategorySnapshot> created = loadSnapshot()
+                    .doFinally(signal -> inFlightRefresh.set(null))
+                    .cache();
+            return inFlightRefresh.compareAndSet(null, created)
+                    ? created
+                    : Objects.requireNonNullElse(inFlightRefresh.get(), created);
+        });
+    }
+
+    private Mono<CategorySnapshot> currentSnapshot(){
+        return Mono.defer(() -> {
+            CategorySnapshot current = snapshot.get();
+            return current != null ? Mono.just(current) : refreshSnapshot();
+        });
+    }
+
+    private Mono<CategorySnapshot> loadSnapshot(){
+        return Mono.defer(() -> {
+            CategorySnapshot base = snapshot.get();
+            long start = System.nanoTime();
+            return categoryRepository.findAll()
+                    .collectList()
+                    .flatMap(categories -> {
+                        CategorySnapshot loaded = CategorySnapshot.of(categories, base == null ? 1 : base.getVersion() + 1);
+                        // a write swapped the snapshot while we were loading, load again so it isn't lost
+                        if(!snapshot.compareAndSet(base, loaded)) return Mono.empty();
+                        snapshotRebuildTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                        return Mono.just(loaded);
+                    });
+        }).switchIfEmpty(Mono.defer(this::loadSnapshot));
+    }
+
+    private void publishTopCategory(Category category){
+        snapshot.updateAndGet(current -> current == null ? null : current.withTopCategory(category));
+    }
 
 }
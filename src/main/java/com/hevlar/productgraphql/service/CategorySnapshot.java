@@ -0,0 +1,74 @@
+package com.hevlar.productgraphql.service;
+
+import com.hevlar.productgraphql.model.Category;
+import com.hevlar.productgraphql.model.CategoryIndex;
+import lombok.Getter;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable, in-memory copy of every top level {@link Category} tree.
+ * A new snapshot is built for every change and swapped in by {@link CategoryService}.
+ */
+@Getter
+public final class CategorySnapshot {
+
+    private final long version;
+    private final Instant createdAt;
+    private final List<Category> categories;
+    private final CategoryIndex index;
+
+    private CategorySnapshot(long version, List<Category> categories){
+        this.version = version;
+        this.createdAt = Instant.now();
+        Map<String, Category> byName = new LinkedHashMap<>();
+        for(Category category: categories){
+            byName.put(category.getName(), freeze(category));
+        }
+        this.categories = List.copyOf(byName.values());
+        this.index = CategoryIndex.of(this.categories);
+    }
+
+    public static CategorySnapshot of(List<Category> categories, long version){
+        return new CategorySnapshot(version, categories);
+    }
+
+    public CategorySnapshot withTopCategory(Category category){
+        List<Category> updated = new ArrayList<>(categories.size() + 1);
+        boolean replaced = false;
+        for(Category existing: categories){
+            if(existing.getName().equals(category.getName())){
+                updated.add(category);
+                replaced = true;
+            }else{
+                updated.add(existing);
+            }
+        }
+        if(!replaced) updated.add(category);
+        return new CategorySnapshot(version + 1, updated);
+    }
+
+    public Category getTopCategory(String name){
+        return index.getTopCategory(name);
+    }
+
+    /**
+     * Finds the category at the end of the hierarchy, or null when any level is missing.
+     */
+    public Category find(List<String> categoryHierarchy){
+        return index.find(categoryHierarchy);
+    }
+
+    private static Category freeze(Category category){
+        List<Category> subCategories = category.getSubCategories() == null
+                ? List.of()
+                : category.getSubCategories().stream().map(CategorySnapshot::freeze).toList();
+        Category copy = new Category(category.getName(), subCategories);
+        copy.setId(category.getId());
+        return copy;
+    }
+}
@@ -0,0 +1,92 @@
+package com.hevlar.productgraphql.service;
+
+import com.hevlar.productgraphql.model.Category;
+import com.hevlar.productgraphql.model.CategoryPath;
+import com.hevlar.productgraphql.model.Product;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.ChangeStreamEvent;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Fans Mongo change streams out to any number of subscribers.
+ * There is a single change stream cursor per collection, opened with the first subscriber and closed
+ * with the last. Every subscriber gets its own bounded buffer which drops the oldest change when a
+ * slow subscriber falls behind, so it can never hold up the cursor or the other subscribers.
+ * Change streams need Mongo to run as a replica set.
+ */
+@Slf4j
+@Component
+public class ChangeFeed {
+
+    private final Flux<Product> productChanges;
+    private final Flux<Category> categoryChanges;
+    private final int subscriberBufferSize;
+
+    @Autowired
+    public ChangeFeed(ReactiveMongoTemplate reactiveMongoTemplate,
+                      @Value("${productgraphql.subscriptions.buffer-size:256}") int subscriberBufferSize){
+        this(watch(reactiveMongoTemplate, Product.class), watch(reactiveMongoTemplate, Category.class), subscriberBufferSize);
+    }
+
+    private ChangeFeed(Flux<Product> productChanges, Flux<Category> categoryChanges, int subscriberBufferSize){
+        this.productChanges = productChanges;
+        this.categoryChanges = categoryChanges;
+        this.subscriberBufferSize = subscriberBufferSize;
+    }
+
+    /**
+     * A feed without change streams, whose subscribers never receive a change.
+     */
+    public static ChangeFeed disabled(){
+        return new ChangeFeed(Flux.never(), Flux.never(), 1);
+    }
+
+    private static <T> Flux<T> watch(ReactiveMongoTemplate reactiveMongoTemplate, Class<T> type){
+        return reactiveMongoTemplate.changeStream(type)
+                .withOptions(options -> options.returnFullDocumentOnUpdate())
+                .watchCollection(type)
+                .listen()
+                // deletes carry no document
+                .mapNotNull(ChangeStreamEvent::getBody)
+                .doOnError(error -> log.warn("{} change stream failed, reconnecting", type.getSimpleName(), error))
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1)).maxBackoff(Duration.ofMinutes(1)))
+                .publish()
+                .refCount();
+    }
+
+    public Flux<Product> productChanges(){
+        return buffered(productChanges);
+    }
+
+    public Flux<Product> productChanges(String productId){
+        return productId == null
+                ? productChanges()
+                : buffered(productChanges.filter(product -> productId.equals(product.getId())));
+    }
+
+    public Flux<Product> productChangesInCategory(List<String> categoryHierarchy, boolean includeDescendants){
+        String categoryPath = CategoryPath.of(categoryHierarchy);
+        return buffered(productChanges.filter(product -> includeDescendants
+                ? product.getCategoryAncestors() != null && product.getCategoryAncestors().contains(categoryPath)
+                : categoryHierarchy.equals(product.getCategory())));
+    }
+
+    public Flux<Category> categoryChanges(){
+        return buffered(categoryChanges);
+    }
+
+    private <T> Flux<T> buffered(Flux<T> changes){
+        return changes.onBackpressureBuffer(subscriberBufferSize,
+                dropped -> log.debug("Subscriber too slow, dropped change {}", dropped),
+                BufferOverflowStrategy.DROP_OLDEST);
+    }
+}
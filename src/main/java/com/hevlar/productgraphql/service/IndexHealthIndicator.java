@@ -0,0 +1,37 @@
+package com.hevlar.productgraphql.service;
+
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Reports the last index check of the {@link IndexManager}: UNKNOWN until the first check is done, UP when the indexes
+ * match the declared ones, and DRIFT, with the indexes that differ, when they don't. Drift doesn't take the
+ * service down, the queries only get slower, so DRIFT is ordered between OUT_OF_SERVICE and UP and answered with a 200.
+ */
+@Component
+@ConditionalOnProperty(name = "productgraphql.indexes.enabled", havingValue = "true", matchIfMissing = true)
+public class IndexHealthIndicator implements HealthIndicator {
+
+    static final Status DRIFT = new Status("DRIFT", "Indexes differ from the declared ones");
+
+    private final IndexManager indexManager;
+
+    public IndexHealthIndicator(IndexManager indexManager){
+        this.indexManager = indexManager;
+    }
+
+    @Override
+    public Health health(){
+        IndexManager.IndexState state = indexManager.getState();
+        if(!state.isChecked()) return Health.unknown().withDetail("reason", "Indexes not checked yet").build();
+        return (state.inSync() ? Health.up() : Health.status(DRIFT))
+                .withDetail("checkedAt", state.checkedAt())
+                .withDetail("missing", state.missing())
+                .withDetail("mismatched", state.mismatched())
+                .withDetail("stale", state.stale())
+                .build();
+    }
+}
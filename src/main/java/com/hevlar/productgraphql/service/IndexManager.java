@@ -0,0 +1,261 @@
+package com.hevlar.productgraphql.service;
+
+import com.hevlar.productgraphql.repository.MongoIndexes;
+import com.mongodb.reactivestreams.client.MongoCollection;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.ReactiveIndexOperations;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+/**
+ * Keeps the indexes of every collection in line with {@link MongoIndexes}.
+ * The first check runs once the application is ready, so startup never waits for an index build, and then
+ * every check interval. A check builds the declared indexes that are missing, one at a time, and reports
+ * the ones that exist with another definition and the ones that aren't declared. Those are only dropped,
+ * and the mismatched ones rebuilt, when productgraphql.indexes.drop-stale is set.
+ * Drift is reported by the index health indicator and the mongodb.indexes.drift gauges.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "productgraphql.indexes.enabled", havingValue = "true", matchIfMissing = true)
+public class IndexManager {
+
+    private static final String ID_INDEX = "_id_";
+    /** The options that change what an index holds, the others don't make a difference to the queries. */
+    private static final List<String> COMPARED_OPTIONS = List.of("unique", "sparse", "partialFilterExpression", "expireAfterSeconds");
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+    private final Map<Class<?>, List<IndexDefinition>> declared;
+    private final boolean dropStale;
+    private final Duration checkInterval;
+    private volatile IndexState state = IndexState.UNCHECKED;
+    private Disposable subscription;
+
+    @Autowired
+    public IndexManager(ReactiveMongoTemplate reactiveMongoTemplate,
+                        MeterRegistry meterRegistry,
+                        @Value("${productgraphql.indexes.drop-stale:false}") boolean dropStale,
+                        @Value("${productgraphql.indexes.check-interval:10m}") Duration checkInterval){
+        this(reactiveMongoTemplate, meterRegistry, MongoIndexes.declared(), dropStale, checkInterval);
+    }
+
+    IndexManager(ReactiveMongoTemplate reactiveMongoTemplate, MeterRegistry meterRegistry, Map<Class<?>, List<IndexDefinition>> declared,
+                 boolean dropStale, Duration checkInterval){
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+        this.declared = declared;
+        this.dropStale = dropStale;
+        this.checkInterval = checkInterval;
+        gauge(meterRegistry, "missing", IndexState::missing);
+        gauge(meterRegistry, "mismatched", IndexState::mismatched);
+        gauge(meterRegistry, "stale", IndexState::stale);
+    }
+
+    private void gauge(MeterRegistry meterRegistry, String kind, Function<IndexState, List<String>> indexes){
+        Gauge.builder("mongodb.indexes.drift", this, manager -> indexes.apply(manager.state).size())
+                .description("Indexes that differ from the declared ones")
+                .tag("kind", kind)
+                .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start(){
+        Flux<Long> checks = checkInterval.isZero()
+                ? Flux.just(0L)
+                : Flux.interval(Duration.ZERO, checkInterval).onBackpressureDrop();
+        subscription = checks
+                .concatMap(check -> reconcile()
+                        .onErrorResume(error -> {
+                            log.warn("Index check failed", error);
+                            return Mono.empty();
+                        }), 1)
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void stop(){
+        if(subscription != null) subscription.dispose();
+    }
+
+    /**
+     * The outcome of the last check.
+     */
+    public IndexState getState(){
+        return state;
+    }
+
+    /**
+     * Checks every collection now, building what is missing, and emits the outcome once the builds are done.
+     */
+    public Mono<IndexState> reconcile(){
+        return Flux.fromIterable(declared.entrySet())
+                .concatMap(entry -> reconcile(reactiveMongoTemplate.getCollectionName(entry.getKey()), entry.getValue()))
+                .reduce(IndexState.UNCHECKED, IndexState::plus)
+                .map(checked -> checked.checkedAt(Instant.now()))
+                .doOnNext(checked -> {
+                    state = checked;
+                    if(!checked.inSync()) log.warn("Indexes differ from the declared ones: {}", checked);
+                });
+    }
+
+    private Mono<IndexState> reconcile(String collection, List<IndexDefinition> indexes){
+        ReactiveIndexOperations indexOperations = reactiveMongoTemplate.indexOps(collection);
+        return reactiveMongoTemplate.getCollection(collection)
+                .flatMapMany(MongoCollection::listIndexes)
+                .collectMap(index -> index.getString("name"))
+                .flatMap(existing -> {
+                    List<IndexDefinition> toBuild = new ArrayList<>();
+                    List<String> toDrop = new ArrayList<>();
+                    List<String> mismatched = new ArrayList<>();
+                    List<String> stale = new ArrayList<>();
+                    Set<String> declaredNames = new HashSet<>();
+                    for(IndexDefinition index: indexes){
+                        String name = MongoIndexes.name(index);
+                        declaredNames.add(name);
+                        Document current = existing.get(name);
+                        if(current == null){
+                            toBuild.add(index);
+                        }else if(!matches(index, current)){
+                            if(dropStale){
+                                toDrop.add(name);
+                                toBuild.add(index);
+                            }else{
+                                mismatched.add(collection + "." + name);
+                            }
+                        }
+                    }
+                    for(String name: existing.keySet()){
+                        if(name.equals(ID_INDEX) || declaredNames.contains(name)) continue;
+                        if(dropStale) toDrop.add(name);
+                        else stale.add(collection + "." + name);
+                    }
+
+                    // an index that fails to drop or build is reported, and tried again on the next check
+                    Flux<String> dropFailures = Flux.fromIterable(toDrop)
+                            .concatMap(name -> indexOperations.dropIndex(name)
+                                    .doOnSuccess(dropped -> log.info("Dropped index {}.{}", collection, name))
+                                    .then(Mono.<String>empty())
+                                    .onErrorResume(error -> {
+                                        log.warn("Dropping index {}.{} failed", collection, name, error);
+                                        return Mono.just(collection + "." + name);
+                                    }));
+                    Flux<String> buildFailures = Flux.fromIterable(toBuild)
+                            .concatMap(index -> indexOperations.ensureIndex(index)
+                                    .doOnNext(name -> log.info("Built index {}.{}", collection, name))
+                                    .then(Mono.<String>empty())
+                                    .onErrorResume(error -> {
+                                        log.warn("Building index {}.{} failed", collection, MongoIndexes.name(index), error);
+                                        return Mono.just(collection + "." + MongoIndexes.name(index));
+                                    }));
+                    return Mono.zip(dropFailures.collectList(), buildFailures.collectList())
+                            .map(failures -> {
+                                stale.addAll(failures.getT1());
+                                return new IndexState(failures.getT2(), mismatched, stale, null);
+                            });
+                });
+    }
+
+    /**
+     * Whether the existing index has the declared keys, or weights for a text index, and options.
+     */
+    static boolean matches(IndexDefinition declared, Document existing){
+        Document keys = declared.getIndexKeys();
+        Document options = declared.getIndexOptions();
+        boolean text = keys.containsValue("text");
+        // a text index is stored with its own keys, the indexed fields are its weights
+        if(text ? !sameValues(textWeights(keys, options), existing.get("weights"), false)
+                : !sameValues(keys, existing.get("key"), true)) return false;
+        for(String option: COMPARED_OPTIONS){
+            if(!sameValues(options.get(option), existing.get(option), false)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * The weight of every field of a text index. The definition leaves out the fields of the default weight 1,
+     * the server lists them all.
+     */
+    private static Document textWeights(Document keys, Document options){
+        Document declared = options.get("weights", new Document());
+        Document weights = new Document();
+        keys.forEach((field, type) -> {
+            if("text".equals(type)) weights.append(field, declared.getOrDefault(field, 1));
+        });
+        return weights;
+    }
+
+    private static boolean sameValues(Object declared, Object existing, boolean ordered){
+        return Objects.equals(normalize(declared, ordered), normalize(existing, ordered));
+    }
+
+    private static Object normalize(Object value, boolean ordered){
+        // numbers come back as the server stores them, a weight of 10F as the int 10
+        if(value instanceof Number number) return number.doubleValue();
+        if(Boolean.FALSE.equals(value)) return null;
+        if(value instanceof Document document){
+            if(ordered){
+                List<Object> entries = new ArrayList<>();
+                document.forEach((key, field) -> entries.add(Map.entry(key, String.valueOf(normalize(field, true)))));
+                return entries;
+            }
+            Map<String, Object> fields = new TreeMap<>();
+            document.forEach((key, field) -> fields.put(key, String.valueOf(normalize(field, false))));
+            return fields;
+        }
+        return value;
+    }
+
+    /**
+     * The qualified names, collection.index, of the declared indexes that are missing or exist with another
+     * definition, and of the existing indexes that aren't declared. The time is null until the first check is done.
+     */
+    public record IndexState(List<String> missing, List<String> mismatched, List<String> stale, Instant checkedAt) {
+
+        static final IndexState UNCHECKED = new IndexState(List.of(), List.of(), List.of(), null);
+
+        public boolean isChecked(){
+            return checkedAt != null;
+        }
+
+        public boolean inSync(){
+            return missing.isEmpty() && mismatched.isEmpty() && stale.isEmpty();
+        }
+
+        IndexState plus(IndexState other){
+            return new IndexState(concat(missing, other.missing), concat(mismatched, other.mismatched), concat(stale, other.stale), checkedAt);
+        }
+
+        IndexState checkedAt(Instant checkedAt){
+            return new IndexState(missing, mismatched, stale, checkedAt);
+        }
+
+        private static List<String> concat(List<String> first, List<String> second){
+            List<String> all = new ArrayList<>(first);
+            all.addAll(second);
+            return List.copyOf(all);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.hevlar.productgraphql.service;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.hevlar.productgraphql.model.Product;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Read-through cache of whole product documents by id, bounded by size and by time since the
+ * product was read. Caffeine keeps the most frequently read products when it has to evict.
+ * Concurrent misses of a product share one read, missing products aren't cached, and invalidating
+ * a product also discards a read of it that is still in flight, so that read can't put back the
+ * version from before the write. Hits, misses and evictions are reported as products cache metrics.
+ * The cached products are shared between requests and must not be modified.
+ */
+@Component
+public class ProductCache {
+
+    private final AsyncCache<String, Product> products;
+
+    @Autowired
+    public ProductCache(@Value("${productgraphql.product-cache.enabled:true}") boolean enabled,
+                        @Value("${productgraphql.product-cache.max-size:10000}") long maxSize,
+                        @Value("${productgraphql.product-cache.ttl:5m}") Duration ttl,
+                        MeterRegistry meterRegistry){
+        if(enabled){
+            this.products = Caffeine.newBuilder()
+                    .maximumSize(maxSize)
+                    .expireAfterWrite(ttl)
+                    .recordStats()
+                    .buildAsync();
+            CaffeineCacheMetrics.monitor(meterRegistry, products.synchronous(), "products");
+        }else{
+            this.products = null;
+        }
+    }
+
+    private ProductCache(){
+        this.products = null;
+    }
+
+    /**
+     * A cache that never holds anything, every read goes to the loader.
+     */
+    public static ProductCache disabled(){
+        return new ProductCache();
+    }
+
+    public boolean isEnabled(){
+        return products != null;
+    }
+
+    public Mono<Product> get(String productId, Function<String, Mono<Product>> loader){
+        if(products == null) return loader.apply(productId);
+        // a cancelled request mustn't cancel the read other requests share
+        return Mono.fromFuture(() -> products.get(productId, (id, executor) -> loader.apply(id).toFuture()), true);
+    }
+
+    /**
+     * Returns the cached products and loads the rest with a single call of the loader. Missing ids are absent from the map.
+     */
+    public Mono<Map<String, Product>> getAll(Collection<String> productIds, Function<Set<String>, Mono<Map<String, Product>>> loader){
+        if(products == null) return loader.apply(Set.copyOf(productIds));
+        return Mono.fromFuture(() -> products.getAll(productIds, (ids, executor) -> loader.apply(Set.copyOf(ids)).toFuture()), true);
+    }
+
+    public void invalidate(String productId){
+        if(products != null && productId != null) products.synchronous().invalidate(productId);
+    }
+}
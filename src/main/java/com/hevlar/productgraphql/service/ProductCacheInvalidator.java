@@ -0,0 +1,44 @@
+package com.hevlar.productgraphql.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Watches the product collection so that writes made by other instances evict the product from this
+ * instance's cache. A change dropped by a slow feed leaves the product cached until its ttl runs out.
+ * Requires Mongo to run as a replica set.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "productgraphql.product-cache.change-stream.enabled", havingValue = "true")
+public class ProductCacheInvalidator {
+
+    private final ChangeFeed changeFeed;
+    private final ProductCache productCache;
+    private Disposable subscription;
+
+    public ProductCacheInvalidator(ChangeFeed changeFeed, ProductCache productCache){
+        this.changeFeed = changeFeed;
+        this.productCache = productCache;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start(){
+        subscription = changeFeed.productChanges()
+                .subscribe(
+                        product -> productCache.invalidate(product.getId()),
+                        error -> log.error("Product change stream stopped", error)
+                );
+    }
+
+    @PreDestroy
+    public void stop(){
+        if(subscription != null) subscription.dispose();
+    }
+}
@@ -0,0 +1,72 @@
+package com.hevlar.productgraphql.service;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.hevlar.productgraphql.model.ProductFacets;
+import com.hevlar.productgraphql.model.ProductFilter;
+import com.hevlar.productgraphql.repository.ProductRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.CollectionUtils;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Counts the products of a category subtree per tag, status and child category.
+ * The counts of a category and filter are cached for a short time, as a listing page asks for the
+ * same facets on every visit and a few seconds of staleness doesn't matter to them. A ttl of 0 turns
+ * the cache off.
+ */
+@Service
+public class ProductFacetService {
+
+    private final ProductRepository productRepository;
+    private final CategoryService categoryService;
+    private final int tagLimit;
+    private final AsyncCache<FacetKey, ProductFacets> facets;
+
+    public ProductFacetService(ProductRepository productRepository,
+                               CategoryService categoryService,
+                               @Value("${productgraphql.facets.tag-limit:50}") int tagLimit,
+                               @Value("${productgraphql.facets.cache.ttl:30s}") Duration ttl,
+                               @Value("${productgraphql.facets.cache.max-size:1000}") long maxSize,
+                               MeterRegistry meterRegistry){
+        if(tagLimit < 1) throw new IllegalArgumentException("Facet tag limit must be positive");
+        this.productRepository = productRepository;
+        this.categoryService = categoryService;
+        this.tagLimit = tagLimit;
+        if(ttl.isZero()){
+            this.facets = null;
+        }else{
+            this.facets = Caffeine.newBuilder()
+                    .expireAfterWrite(ttl)
+                    .maximumSize(maxSize)
+                    .recordStats()
+                    .buildAsync();
+            CaffeineCacheMetrics.monitor(meterRegistry, facets.synchronous(), "product.facets");
+        }
+    }
+
+    private record FacetKey(List<String> categoryHierarchy, ProductFilter filter) {
+    }
+
+    public Mono<ProductFacets> getProductFacets(List<String> categoryHierarchy, ProductFilter filter){
+        if(CollectionUtils.isEmpty(categoryHierarchy))
+            return Mono.error(new IllegalArgumentException("Category hierarchy is empty"));
+
+        if(facets == null) return load(categoryHierarchy, filter);
+        // concurrent requests for the same facets share one aggregation, failures aren't cached
+        return Mono.fromFuture(() -> facets.get(new FacetKey(List.copyOf(categoryHierarchy), filter),
+                (key, executor) -> load(key.categoryHierarchy(), key.filter()).toFuture()), true);
+    }
+
+    private Mono<ProductFacets> load(List<String> categoryHierarchy, ProductFilter filter){
+        return categoryService.validateCategoryHierarchy(categoryHierarchy)
+                .switchIfEmpty(Mono.error(new IllegalArgumentException("Category not found")))
+                .flatMap(found -> productRepository.findFacets(categoryHierarchy, filter, tagLimit));
+    }
+}
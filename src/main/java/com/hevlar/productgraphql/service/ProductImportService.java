@@ -0,0 +1,196 @@
+package com.hevlar.productgraphql.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hevlar.productgraphql.model.AddProductResult;
+import com.hevlar.productgraphql.model.ImportProgress;
+import com.hevlar.productgraphql.model.Product;
+import com.hevlar.productgraphql.repository.ProductRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.CollectionUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Adds products in bulk: every distinct category hierarchy is validated once per batch and
+ * the products are written with unordered bulk inserts of a configurable chunk size.
+ */
+@Service
+public class ProductImportService {
+
+    private final ProductRepository productRepository;
+    private final CategoryService categoryService;
+    private final ObjectMapper objectMapper;
+    private final int chunkSize;
+
+    public ProductImportService(ProductRepository productRepository,
+                                CategoryService categoryService,
+                                ObjectMapper objectMapper,
+                                @Value("${productgraphql.import.chunk-size:1000}") int chunkSize){
+        if(chunkSize < 1) throw new IllegalArgumentException("Import chunk size must be positive");
+        this.productRepository = productRepository;
+        this.categoryService = categoryService;
+        this.objectMapper = objectMapper;
+        this.chunkSize = chunkSize;
+    }
+
+    public Mono<List<AddProductResult>> addProducts(List<Product> products){
+        if(products == null) return Mono.error(new IllegalArgumentException("Products is null"));
+        if(products.isEmpty()) return Mono.just(List.of());
+
+        AddProductResult[] results = new AddProductResult[products.size()];
+        Set<List<String>> hierarchies = new HashSet<>();
+        for(int i = 0; i < products.size(); i++){
+            Product product = products.get(i);
+            if(product == null){
+                results[i] = AddProductResult.failure(i, "Product is null");
+            }else if(CollectionUtils.isEmpty(product.getCategory())){
+                results[i] = AddProductResult.failure(i, "Product category is null");
+            }else{
+                hierarchies.add(product.getCategory());
+            }
+        }
+
+        return validateHierarchies(hierarchies)
+                .flatMap(hierarchyErrors -> {
+                    List<Integer> indexes = new ArrayList<>();
+                    List<Product> valid = new ArrayList<>();
+                    for(int i = 0; i < products.size(); i++){
+                        if(results[i] != null) continue;
+                        Product product = products.get(i);
+                        Optional<String> hierarchyError = hierarchyErrors.get(product.getCategory());
+                        if(hierarchyError.isPresent()){
+                            results[i] = AddProductResult.failure(i, hierarchyError.get());
+                        }else{
+                            indexes.add(i);
+                            valid.add(product);
+                        }
+                    }
+                    return insertInChunks(valid, indexes, results);
+                })
+                .then(Mono.fromSupplier(() -> Arrays.asList(results)));
+    }
+
+    /**
+     * Imports a stream of products in batches of the chunk size. A batch is only requested from the
+     * source once the previous one is written, so memory stays bounded whatever the stream length.
+     * Emits the running totals, with the errors of that batch, after every batch and a final summary.
+     */
+    public Flux<ImportProgress> importProducts(Flux<Product> products){
+        return importLines(products.index().map(line -> ImportLine.parsed(line.getT1() + 1, line.getT2())));
+    }
+
+    /**
+     * Imports newline delimited JSON, one product per line. A line that isn't a product is reported as
+     * an error of its line and skipped, the rest of the stream is still imported. Blank lines are ignored.
+     */
+    public Flux<ImportProgress> importJsonLines(Flux<String> lines){
+        return importLines(lines.index()
+                .filter(line -> !line.getT2().isBlank())
+                .map(line -> parse(line.getT1() + 1, line.getT2())));
+    }
+
+    private Flux<ImportProgress> importLines(Flux<ImportLine> lines){
+        return Flux.defer(() -> {
+            long start = System.nanoTime();
+            AtomicLong received = new AtomicLong();
+            AtomicLong imported = new AtomicLong();
+            AtomicLong failed = new AtomicLong();
+            return lines
+                    .buffer(chunkSize)
+                    .concatMap(batch -> {
+                        received.addAndGet(batch.size());
+                        List<ImportProgress.ImportError> errors = new ArrayList<>();
+                        List<ImportLine> parsed = new ArrayList<>();
+                        for(ImportLine line: batch){
+                            if(line.error() == null){
+                                parsed.add(line);
+                            }else{
+                                failed.incrementAndGet();
+                                errors.add(new ImportProgress.ImportError(line.line(), line.error()));
+                            }
+                        }
+                        return addProducts(parsed.stream().map(ImportLine::product).toList()).map(results -> {
+                            for(AddProductResult result: results){
+                                if(result.error() == null){
+                                    imported.incrementAndGet();
+                                }else{
+                                    failed.incrementAndGet();
+                                    errors.add(new ImportProgress.ImportError(parsed.get(result.index()).line(), result.error()));
+                                }
+                            }
+                            errors.sort(Comparator.comparingLong(ImportProgress.ImportError::line));
+                            return new ImportProgress(received.get(), imported.get(), failed.get(), errors, false, elapsedMillis(start));
+                        });
+                    }, 1)
+                    .concatWith(Mono.fromSupplier(() ->
+                            new ImportProgress(received.get(), imported.get(), failed.get(), List.of(), true, elapsedMillis(start))));
+        });
+    }
+
+    private ImportLine parse(long line, String json){
+        try{
+            return ImportLine.parsed(line, objectMapper.readValue(json, Product.class));
+        }catch(JsonProcessingException ex){
+            return new ImportLine(line, null, "Malformed product: " + ex.getOriginalMessage());
+        }
+    }
+
+    /**
+     * A line of the import, numbered from 1, with either its product or the reason it couldn't be read.
+     */
+    private record ImportLine(long line, Product product, String error) {
+        static ImportLine parsed(long line, Product product){
+            return new ImportLine(line, product, null);
+        }
+    }
+
+    private static long elapsedMillis(long start){
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+
+    /**
+     * Validates each distinct hierarchy once, mapping it to its validation error if it has one.
+     */
+    Mono<Map<List<String>, Optional<String>>> validateHierarchies(Set<List<String>> hierarchies){
+        return Flux.fromIterable(hierarchies)
+                .flatMap(hierarchy -> categoryService.validateCategoryHierarchy(hierarchy)
+                        .map(category -> Optional.<String>empty())
+                        .defaultIfEmpty(Optional.of("Category not found"))
+                        .onErrorResume(IllegalArgumentException.class, ex -> Mono.just(Optional.of(ex.getMessage())))
+                        .map(error -> Map.entry(hierarchy, error)))
+                .collectMap(Map.Entry::getKey, Map.Entry::getValue);
+    }
+
+    private Mono<Void> insertInChunks(List<Product> products, List<Integer> indexes, AddProductResult[] results){
+        int chunks = (products.size() + chunkSize - 1) / chunkSize;
+        return Flux.range(0, chunks)
+                .concatMap(chunk -> {
+                    int from = chunk * chunkSize;
+                    int to = Math.min(from + chunkSize, products.size());
+                    List<Product> batch = products.subList(from, to);
+                    return productRepository.insertUnordered(batch)
+                            .doOnNext(errors -> {
+                                for(int i = 0; i < batch.size(); i++){
+                                    int index = indexes.get(from + i);
+                                    String error = errors.get(i);
+                                    results[index] = error == null
+                                            ? AddProductResult.success(index, batch.get(i))
+                                            : AddProductResult.failure(index, error);
+                                }
+                            });
+                })
+                .then();
+    }
+}
@@ -1,32 +1,184 @@
 package com.hevlar.productgraphql.service;
 
+import com.hevlar.productgraphql.model.Attribute;
+import com.hevlar.productgraphql.model.CategoryPath;
 import com.hevlar.productgraphql.model.Product;
+import com.hevlar.productgraphql.model.ProductFilter;
+import com.hevlar.productgraphql.model.ProductPage;
+import com.hevlar.productgraphql.model.ProductProjection;
 import com.hevlar.productgraphql.model.Variant;
 import com.hevlar.productgraphql.repository.ProductRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 import org.springframework.util.CollectionUtils;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
-import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
+@Slf4j
 @Service
 public class ProductService {
 
+    public static final int MAX_PAGE_SIZE = 100;
+    public static final int STREAM_BATCH_SIZE = 100;
+
     private final ProductRepository productRepository;
     private final CategoryService categoryService;
+    private final ProductCache productCache;
 
-    public ProductService(ProductRepository productRepository, CategoryService categoryService){
+    public ProductService(ProductRepository productRepository, CategoryService categoryService, ProductCache productCache){
         this.productRepository = productRepository;
         this.categoryService = categoryService;
+        this.productCache = productCache;
     }
 
     public Flux<Product> getProductsByCategoryHierarchy(List<String> categoryHierarchy){
+        return getProductsByCategoryHierarchy(categoryHierarchy, false);
+    }
+
+    public Flux<Product> getProductsByCategoryHierarchy(List<String> categoryHierarchy, boolean includeDescendants){
+        return getProductsByCategoryHierarchy(categoryHierarchy, includeDescendants, ProductProjection.ALL);
+    }
+
+    /**
+     * Returns the products of the category, or of the whole category subtree when includeDescendants is set.
+     * The subtree is matched with a single indexed equality on the materialized category ancestors.
+     * Only the projected fields are read from Mongo.
+     */
+    public Flux<Product> getProductsByCategoryHierarchy(List<String> categoryHierarchy, boolean includeDescendants, ProductProjection projection){
         if(CollectionUtils.isEmpty(categoryHierarchy))
             return Flux.error(new IllegalArgumentException("Category hierarchy is empty"));
         return categoryService.validateCategoryHierarchy(categoryHierarchy)
-                .flatMapMany(found -> productRepository.findAllByCategory(categoryHierarchy));
+                .flatMapMany(found -> productRepository.findProjectedByCategory(categoryHierarchy, includeDescendants, null, 0, projection));
+    }
+
+    /**
+     * Streams the products of the category, or of its whole subtree, in id order as the cursor returns them.
+     * Products are only requested from Mongo as the subscriber asks for them, at most STREAM_BATCH_SIZE at a time,
+     * so a slow subscriber holds the cursor back instead of having products buffered for it.
+     */
+    public Flux<Product> streamProductsByCategoryHierarchy(List<String> categoryHierarchy, boolean includeDescendants, ProductProjection projection){
+        return getProductsByCategoryHierarchy(categoryHierarchy, includeDescendants, projection)
+                .limitRate(STREAM_BATCH_SIZE);
+    }
+
+    public Mono<ProductPage> getProductsByCategoryHierarchy(List<String> categoryHierarchy, boolean includeDescendants, int first, String afterId){
+        return getProductsByCategoryHierarchy(categoryHierarchy, includeDescendants, first, afterId, ProductProjection.ALL);
+    }
+
+    /**
+     * Returns one page of products ordered by id. Pages are read with a keyset on the id so
+     * fetching a deep page costs the same as fetching the first one.
+     */
+    public Mono<ProductPage> getProductsByCategoryHierarchy(List<String> categoryHierarchy, boolean includeDescendants, int first, String afterId,
+                                                            ProductProjection projection){
+        if(CollectionUtils.isEmpty(categoryHierarchy))
+            return Mono.error(new IllegalArgumentException("Category hierarchy is empty"));
+        if(first < 1 || first > MAX_PAGE_SIZE)
+            return Mono.error(new IllegalArgumentException("First must be between 1 and " + MAX_PAGE_SIZE));
+
+        // one extra product tells whether there is a next page
+        return categoryService.validateCategoryHierarchy(categoryHierarchy)
+                .flatMapMany(found -> productRepository.findProjectedByCategory(categoryHierarchy, includeDescendants, afterId, first + 1, projection))
+                .collectList()
+                .map(products -> toPage(products, first));
+    }
+
+    /**
+     * Returns one page of the products matching the filter, ordered by id and read with a keyset on the id.
+     * The category of the filter, when it has one, has to exist.
+     */
+    public Mono<ProductPage> findProducts(ProductFilter filter, int first, String afterId, ProductProjection projection){
+        if(first < 1 || first > MAX_PAGE_SIZE)
+            return Mono.error(new IllegalArgumentException("First must be between 1 and " + MAX_PAGE_SIZE));
+
+        ProductFilter productFilter = filter != null ? filter : ProductFilter.NONE;
+        Flux<Product> products = CollectionUtils.isEmpty(productFilter.categoryHierarchy())
+                ? productRepository.findProjectedByFilter(productFilter, afterId, first + 1, projection)
+                : categoryService.validateCategoryHierarchy(productFilter.categoryHierarchy())
+                        .flatMapMany(found -> productRepository.findProjectedByFilter(productFilter, afterId, first + 1, projection));
+        return products.collectList().map(page -> toPage(page, first));
+    }
+
+    /**
+     * Returns one page of the products with a variant that has every one of the attributes, ordered by id and read
+     * with a keyset on the id. A category hierarchy restricts them to that category, or its subtree with
+     * includeDescendants. With matchingVariantOnly each product comes with only its matching variants.
+     */
+    public Mono<ProductPage> findProductsByVariantAttributes(List<Attribute> attributes, List<String> categoryHierarchy, boolean includeDescendants,
+                                                             int first, String afterId, boolean matchingVariantOnly, ProductProjection projection){
+        if(CollectionUtils.isEmpty(attributes))
+            return Mono.error(new IllegalArgumentException("Attributes are empty"));
+        if(first < 1 || first > MAX_PAGE_SIZE)
+            return Mono.error(new IllegalArgumentException("First must be between 1 and " + MAX_PAGE_SIZE));
+
+        Flux<Product> products = CollectionUtils.isEmpty(categoryHierarchy)
+                ? productRepository.findProjectedByVariantAttributes(attributes, null, false, afterId, first + 1, matchingVariantOnly, projection)
+                : categoryService.validateCategoryHierarchy(categoryHierarchy)
+                        .flatMapMany(found -> productRepository.findProjectedByVariantAttributes(
+                                attributes, categoryHierarchy, includeDescendants, afterId, first + 1, matchingVariantOnly, projection));
+        return products.collectList().map(page -> toPage(page, first));
+    }
+
+    /**
+     * Returns one page of the products matching the text, ordered by relevance. Name matches weigh the most, then tags,
+     * then the description. Pages are read with a keyset on the relevance score and the id, given as a
+     * {@link #searchPosition(Product)}. A category hierarchy restricts the search to that category subtree.
+     */
+    public Mono<ProductPage> searchProducts(String text, List<String> categoryHierarchy, int first, String afterPosition,
+                                            ProductProjection projection){
+        if(text == null || text.isBlank())
+            return Mono.error(new IllegalArgumentException("Search text is empty"));
+        if(first < 1 || first > MAX_PAGE_SIZE)
+            return Mono.error(new IllegalArgumentException("First must be between 1 and " + MAX_PAGE_SIZE));
+
+        SearchPosition after;
+        try{
+            after = SearchPosition.parse(afterPosition);
+        }catch(IllegalArgumentException ex){
+            return Mono.error(ex);
+        }
+
+        Flux<Product> products = CollectionUtils.isEmpty(categoryHierarchy)
+                ? productRepository.searchProducts(text, null, after.score(), after.id(), first + 1, projection)
+                : categoryService.validateCategoryHierarchy(categoryHierarchy)
+                        .flatMapMany(found -> productRepository.searchProducts(
+                                text, CategoryPath.of(categoryHierarchy), after.score(), after.id(), first + 1, projection));
+        return products.collectList().map(page -> toPage(page, first));
+    }
+
+    /**
+     * Keyset position of a search result, its relevance score and id.
+     */
+    public static String searchPosition(Product product){
+        return product.getScore() + ":" + product.getId();
+    }
+
+    private record SearchPosition(Double score, String id) {
+
+        private static final SearchPosition START = new SearchPosition(null, null);
+
+        static SearchPosition parse(String position){
+            if(position == null) return START;
+            int separator = position.indexOf(':');
+            try{
+                return new SearchPosition(Double.valueOf(position.substring(0, Math.max(separator, 0))), position.substring(separator + 1));
+            }catch(NumberFormatException ex){
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+        }
+    }
+
+    private static ProductPage toPage(List<Product> products, int first){
+        if(products.size() > first){
+            return new ProductPage(products.subList(0, first), true);
+        }
+        return new ProductPage(products, false);
     }
 
     public Mono<Product> addProduct(Product product){
@@ -35,27 +187,87 @@ public class ProductService {
 
         return categoryService.validateCategoryHierarchy(product.getCategory())
                 .switchIfEmpty(Mono.error(new IllegalArgumentException("Category not found")))
-                .flatMap(category -> productRepository.save(product));
+                .flatMap(category -> productRepository.save(product))
+                // a product given an existing id replaces that product
+                .doOnNext(saved -> productCache.invalidate(saved.getId()));
+    }
+
+    /**
+     * Fills in the category path and ancestors of products stored before they were materialized.
+     * Only those fields are written, so variants pushed in the meantime are kept.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillCategoryPaths(){
+        productRepository.backfillCategoryPaths()
+                .subscribe(
+                        count -> { if(count > 0) log.info("Backfilled category paths of {} products", count); },
+                        error -> log.warn("Unable to backfill category paths", error)
+                );
     }
 
     public Mono<Product> getProduct(String productId){
-        return productRepository.findById(productId);
+        return productCache.get(productId, productRepository::findById);
+    }
+
+    public Mono<Map<String, Product>> getProductsByIds(Collection<String> productIds){
+        return getProductsByIds(productIds, ProductProjection.ALL, true);
+    }
+
+    /**
+     * Fetches all products in a single $in query, keyed by id. Missing ids are absent from the map.
+     * Cached reads are served from the product cache, which holds whole products, so its misses read
+     * the whole product whatever the projection. Uncached reads go to Mongo and only read the projected fields.
+     */
+    public Mono<Map<String, Product>> getProductsByIds(Collection<String> productIds, ProductProjection projection, boolean cached){
+        if(CollectionUtils.isEmpty(productIds)) return Mono.just(Map.of());
+        if(cached && productCache.isEnabled()){
+            return productCache.getAll(productIds, missing -> productRepository.findProjectedByIds(missing, ProductProjection.ALL)
+                    .collectMap(Product::getId));
+        }
+        return productRepository.findProjectedByIds(productIds, projection)
+                .collectMap(Product::getId);
     }
 
     public Mono<Product> addVariant(String productId, Variant variant){
         if(productId == null) return Mono.error(new IllegalArgumentException("ProductId is null"));
         if(variant == null) return Mono.error(new IllegalArgumentException("Variant is null"));
 
-        return getProduct(productId)
-                .switchIfEmpty(Mono.error(new IllegalArgumentException("Product not found")))
-                .flatMap(product -> {
-                    if(product.hasVariantOfName(variant.name()))
-                        return Mono.error(new IllegalArgumentException("Variant name already exists"));
-                    List<Variant> updatedVariantList = new ArrayList<>(product.getVariants());
-                    updatedVariantList.add(variant);
-                    product.setVariants(updatedVariantList);
-                    return productRepository.save(product);
+        return productRepository.pushVariant(productId, variant)
+                .doOnNext(updated -> productCache.invalidate(productId))
+                .switchIfEmpty(variantNotAdded(productId));
+    }
+
+    /**
+     * Adds the variant like {@link #addVariant}, but with an update that returns no document,
+     * so neither the product nor its other variants are read back.
+     */
+    public Mono<Variant> appendVariant(String productId, Variant variant){
+        if(productId == null) return Mono.error(new IllegalArgumentException("ProductId is null"));
+        if(variant == null) return Mono.error(new IllegalArgumentException("Variant is null"));
+
+        return productRepository.appendVariant(productId, variant)
+                .flatMap(appended -> {
+                    if(!appended) return this.<Variant>variantNotAdded(productId);
+                    productCache.invalidate(productId);
+                    return Mono.just(variant);
                 });
     }
 
+    private <T> Mono<T> variantNotAdded(String productId){
+        // only a failed push pays for the extra read that tells the two failures apart
+        return Mono.defer(() -> productRepository.existsById(productId)
+                .flatMap(exists -> Mono.<T>error(new IllegalArgumentException(exists
+                        ? "Variant name already exists"
+                        : "Product not found"))));
+    }
+
+    /**
+     * Reads the one variant of the product with the name, without the rest of the product or its other variants.
+     */
+    public Mono<Variant> getVariant(String productId, String name){
+        if(productId == null) return Mono.error(new IllegalArgumentException("ProductId is null"));
+        if(name == null) return Mono.error(new IllegalArgumentException("Variant name is null"));
+        return productRepository.findVariant(productId, name);
+    }
+
 }
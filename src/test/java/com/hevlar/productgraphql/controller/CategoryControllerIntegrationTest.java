@@ -244,4 +244,58 @@ public class CategoryControllerIntegrationTest {
         assertThat(sofa.getName()).isEqualTo("Sofa");
     }
 
+    @Test
+    @Order(7)
+    public void whenGetCategoryWithDepth_shouldOnlyReturnRequestedLevels() {
+        Category livingRoom = this.httpGraphQlTester.document(
+                """
+                query {
+                    getCategory(path: ["Furniture", "Living Room"], depth: 1) {
+                        name
+                        subCategories {
+                            name
+                            subCategories {
+                                name
+                            }
+                        }
+                    }
+                }
+                """
+        ).execute()
+                .errors()
+                .verify()
+                .path("getCategory")
+                .entity(Category.class)
+                .get();
+        assertThat(livingRoom.getName()).isEqualTo("Living Room");
+        assertThat(livingRoom.getSubCategories()).hasSize(1);
+        assertThat(livingRoom.getSubCategories().get(0).getSubCategories()).isEmpty();
+    }
+
+    @Test
+    @Order(8)
+    public void whenSubCategoriesWithDepth_shouldOnlyReturnRequestedLevels() {
+        Category furniture = this.httpGraphQlTester.document(
+                """
+                query {
+                    getCategories {
+                        name
+                        subCategories(depth: 1) {
+                            name
+                            subCategories {
+                                name
+                            }
+                        }
+                    }
+                }
+                """
+        ).execute()
+                .errors()
+                .verify()
+                .path("getCategories[0]")
+                .entity(Category.class)
+                .get();
+        assertThat(furniture.getSubCategories()).hasSize(2);
+        assertThat(furniture.getSubCategories()).allMatch(subCategory -> subCategory.getSubCategories().isEmpty());
+    }
 }
@@ -7,11 +7,14 @@ import com.hevlar.productgraphql.model.ProductStatus;
 import com.hevlar.productgraphql.model.Variant;
 import com.hevlar.productgraphql.repository.CategoryRepository;
 import com.hevlar.productgraphql.repository.ProductRepository;
+import com.hevlar.productgraphql.service.CategoryService;
+import com.hevlar.productgraphql.service.IndexManager;
 import org.junit.jupiter.api.*;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.graphql.tester.AutoConfigureHttpGraphQlTester;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.graphql.test.tester.GraphQlTester;
 import org.springframework.graphql.test.tester.HttpGraphQlTester;
 import org.springframework.test.context.ContextConfiguration;
 import org.testcontainers.junit.jupiter.Testcontainers;
@@ -38,6 +41,12 @@ public class ProductControllerIntegrationTest {
     @Autowired
     ProductRepository productRepository;
 
+    @Autowired
+    IndexManager indexManager;
+
+    @Autowired
+    CategoryService categoryService;
+
     Category livingRoom = new Category("Living Room", List.of());
     Category kitchen = new Category("Kitchen", List.of());
     Category furniture = new Category("Furniture", List.of(livingRoom, kitchen));
@@ -60,7 +69,10 @@ public class ProductControllerIntegrationTest {
 
     @BeforeAll
     void setup(){
+        // the text search needs its index, don't race the background build
+        indexManager.reconcile().block();
         furniture = categoryRepository.save(furniture).block();
+        categoryService.refreshSnapshot().block();
         List<Product> savedProductList = productRepository.saveAll(List.of(sofa1, sofa2)).collectList().block();
         assert savedProductList != null;
         sofa1 = savedProductList.get(0);
@@ -97,6 +109,54 @@ public class ProductControllerIntegrationTest {
         assertThat(productList.size()).isEqualTo(2);
     }
 
+    @Test
+    void whenProductsByCategory_thenPageThroughProducts(){
+        String firstPageQuery = """
+                query {
+                    productsByCategory(categoryHierarchy: ["Furniture", "Living Room"], first: 1){
+                        edges {
+                            cursor
+                            node {
+                                id
+                            }
+                        }
+                        pageInfo {
+                            hasNextPage
+                            endCursor
+                        }
+                    }
+                }
+                """;
+        GraphQlTester.Response firstPage = this.httpGraphQlTester.document(firstPageQuery)
+                .execute()
+                .errors()
+                .verify();
+        firstPage.path("productsByCategory.edges").entityList(Object.class).hasSize(1);
+        firstPage.path("productsByCategory.pageInfo.hasNextPage").entity(Boolean.class).isEqualTo(true);
+        String firstId = firstPage.path("productsByCategory.edges[0].node.id").entity(String.class).get();
+        String endCursor = firstPage.path("productsByCategory.pageInfo.endCursor").entity(String.class).get();
+
+        String secondPageQuery = String.format("""
+                query {
+                    productsByCategory(categoryHierarchy: ["Furniture", "Living Room"], first: 1, after: "%s"){
+                        edges {
+                            node {
+                                id
+                            }
+                        }
+                    }
+                }
+                """, endCursor);
+        String secondId = this.httpGraphQlTester.document(secondPageQuery)
+                .execute()
+                .errors()
+                .verify()
+                .path("productsByCategory.edges[0].node.id")
+                .entity(String.class)
+                .get();
+        assertThat(secondId).isNotEqualTo(firstId);
+    }
+
     @Test
     void whenAddProduct_thenReturnProductAdded(){
         Product product = this.httpGraphQlTester
@@ -169,6 +229,188 @@ public class ProductControllerIntegrationTest {
         assertThat(product).isEqualTo(sofa1);
     }
 
+    @Test
+    void whenGetProducts_thenReturnProductsInRequestedOrder(){
+        String query = String.format("""
+                query {
+                    getProducts(ids: ["%s", "missing", "%s"]){
+                        id
+                        name
+                    }
+                    alias: getProduct(productId: "%s"){
+                        id
+                    }
+                }
+                """, sofa2.getId(), sofa1.getId(), sofa1.getId());
+
+        GraphQlTester.Response response = this.httpGraphQlTester
+                .document(query)
+                .execute()
+                .errors()
+                .verify();
+        response.path("getProducts[0].id").entity(String.class).isEqualTo(sofa2.getId());
+        response.path("getProducts[1]").valueIsNull();
+        response.path("getProducts[2].id").entity(String.class).isEqualTo(sofa1.getId());
+        response.path("alias.id").entity(String.class).isEqualTo(sofa1.getId());
+    }
+
+    @Test
+    void whenSameProductIsSelectedWithDifferentFields_thenEachSelectionIsComplete(){
+        String query = String.format("""
+                query {
+                    narrow: getProduct(productId: "%s"){
+                        name
+                    }
+                    wide: getProduct(productId: "%s"){
+                        name
+                        description
+                        status
+                    }
+                }
+                """, sofa1.getId(), sofa1.getId());
+
+        GraphQlTester.Response response = this.httpGraphQlTester
+                .document(query)
+                .execute()
+                .errors()
+                .verify();
+        response.path("narrow.name").entity(String.class).isEqualTo(sofa1.getName());
+        response.path("wide.description").entity(String.class).isEqualTo(sofa1.getDescription());
+        response.path("wide.status").entity(String.class).isEqualTo(sofa1.getStatus().name());
+    }
+
+    @Test
+    void whenSearchProducts_thenPageThroughMatches(){
+        String firstPageQuery = """
+                query {
+                    searchProducts(text: "seater", categoryHierarchy: ["Furniture"], first: 1){
+                        edges {
+                            node {
+                                id
+                                name
+                            }
+                        }
+                        pageInfo {
+                            hasNextPage
+                            endCursor
+                        }
+                    }
+                }
+                """;
+        GraphQlTester.Response firstPage = this.httpGraphQlTester.document(firstPageQuery)
+                .execute()
+                .errors()
+                .verify();
+        firstPage.path("searchProducts.pageInfo.hasNextPage").entity(Boolean.class).isEqualTo(true);
+        String firstId = firstPage.path("searchProducts.edges[0].node.id").entity(String.class).get();
+        String endCursor = firstPage.path("searchProducts.pageInfo.endCursor").entity(String.class).get();
+
+        String secondPageQuery = String.format("""
+                query {
+                    searchProducts(text: "seater", categoryHierarchy: ["Furniture"], first: 1, after: "%s"){
+                        edges {
+                            node {
+                                id
+                            }
+                        }
+                        pageInfo {
+                            hasNextPage
+                        }
+                    }
+                }
+                """, endCursor);
+        GraphQlTester.Response secondPage = this.httpGraphQlTester.document(secondPageQuery)
+                .execute()
+                .errors()
+                .verify();
+        secondPage.path("searchProducts.pageInfo.hasNextPage").entity(Boolean.class).isEqualTo(false);
+        String secondId = secondPage.path("searchProducts.edges[0].node.id").entity(String.class).get();
+        assertThat(List.of(firstId, secondId)).containsExactlyInAnyOrder(sofa1.getId(), sofa2.getId());
+    }
+
+    @Test
+    void whenFindProducts_thenReturnProductsMatchingFilter(){
+        GraphQlTester.Response response = this.httpGraphQlTester.document("""
+                query {
+                    findProducts(filter: {categoryHierarchy: ["Furniture"], includeDescendants: true, status: [AVAILABLE], tagsAll: ["luxury"], namePrefix: "Sofa 2"}){
+                        edges {
+                            node {
+                                id
+                                name
+                            }
+                        }
+                        pageInfo {
+                            hasNextPage
+                        }
+                    }
+                }
+                """)
+                .execute()
+                .errors()
+                .verify();
+        response.path("findProducts.edges").entityList(Object.class).hasSize(1);
+        response.path("findProducts.edges[0].node.id").entity(String.class).isEqualTo(sofa2.getId());
+        response.path("findProducts.pageInfo.hasNextPage").entity(Boolean.class).isEqualTo(false);
+    }
+
+    @Test
+    void whenProductFacets_thenReturnCountsOfCategorySubtree(){
+        GraphQlTester.Response response = this.httpGraphQlTester.document("""
+                query {
+                    productFacets(categoryHierarchy: ["Furniture"], filter: {status: AVAILABLE, namePrefix: "Sofa"}){
+                        total
+                        tags { value count }
+                        statuses { value count }
+                        subCategories { value count }
+                    }
+                }
+                """)
+                .execute()
+                .errors()
+                .verify();
+        response.path("productFacets.statuses[0].value").entity(String.class).isEqualTo("AVAILABLE");
+        response.path("productFacets.subCategories[0].value").entity(String.class).isEqualTo("Living Room");
+        response.path("productFacets.tags").entityList(Object.class).hasSizeGreaterThan(1);
+    }
+
+    @Test
+    void whenAddVariantToCachedProduct_thenNextReadSeesVariant(){
+        String query = String.format("""
+                query {
+                    getProduct(productId: "%s"){
+                        variants {
+                            name
+                        }
+                    }
+                    uncached: getProduct(productId: "%s", cached: false){
+                        name
+                    }
+                }
+                """, sofa2.getId(), sofa2.getId());
+        GraphQlTester.Response before = this.httpGraphQlTester.document(query).execute().errors().verify();
+        before.path("uncached.name").entity(String.class).isEqualTo(sofa2.getName());
+        List<Object> variantsBefore = before.path("getProduct.variants").entityList(Object.class).get();
+
+        this.httpGraphQlTester.document(String.format("""
+                mutation {
+                    addVariant(productId: "%s", variant: {name: "cached check", attributeList: []}){
+                        productId
+                    }
+                }
+                """, sofa2.getId()))
+                .execute()
+                .errors()
+                .verify();
+
+        this.httpGraphQlTester.document(query)
+                .execute()
+                .errors()
+                .verify()
+                .path("getProduct.variants")
+                .entityList(Object.class)
+                .hasSize(variantsBefore.size() + 1);
+    }
+
     @Test
     void whenAddVariant_thenReturnProductWithVariant(){
         String mutation = String.format("""
@@ -185,20 +427,22 @@ public class ProductControllerIntegrationTest {
                             ]
                         }
                     ){
-                        id
-                        name
-                        description
-                        imageUrls
-                        category
-                        tags
-                        variants {
+                        product {
+                            id
                             name
-                            attributeList {
-                                key
-                                value
+                            description
+                            imageUrls
+                            category
+                            tags
+                            variants {
+                                name
+                                attributeList {
+                                    key
+                                    value
+                                }
                             }
+                            status
                         }
-                        status
                     }
                 }
                 """, sofa2.getId());
@@ -207,7 +451,7 @@ public class ProductControllerIntegrationTest {
                 .execute()
                 .errors()
                 .verify()
-                .path("addVariant")
+                .path("addVariant.product")
                 .entity(Product.class)
                 .get();
         assertThat(product.getName()).isEqualTo(sofa2.getName());
@@ -222,4 +466,96 @@ public class ProductControllerIntegrationTest {
         });
     }
 
+    @Test
+    void whenAddVariantWithoutProduct_thenPageThroughVariantsAndGetOne(){
+        for(String colour: List.of("red", "green", "blue")){
+            this.httpGraphQlTester.document(String.format("""
+                    mutation {
+                        addVariant(productId: "%s", variant: {name: "%s", attributeList: [{key: "colour", value: "%s"}]}, returnProduct: false){
+                            productId
+                            variant {
+                                name
+                            }
+                        }
+                    }
+                    """, sofa1.getId(), colour, colour))
+                    .execute()
+                    .errors()
+                    .verify()
+                    .path("addVariant.variant.name")
+                    .entity(String.class)
+                    .isEqualTo(colour);
+        }
+
+        String query = String.format("""
+                query {
+                    cached: getProduct(productId: "%s"){
+                        variants(first: 1, after: "red"){
+                            name
+                        }
+                    }
+                    uncached: getProduct(productId: "%s", cached: false){
+                        variants(first: 2, after: "red"){
+                            name
+                        }
+                    }
+                    getVariant(productId: "%s", name: "blue"){
+                        name
+                        attributeList {
+                            value
+                        }
+                    }
+                }
+                """, sofa1.getId(), sofa1.getId(), sofa1.getId());
+        GraphQlTester.Response response = this.httpGraphQlTester.document(query).execute().errors().verify();
+        response.path("cached.variants[*].name").entityList(String.class).containsExactly("green");
+        response.path("uncached.variants[*].name").entityList(String.class).containsExactly("green", "blue");
+        response.path("getVariant.attributeList[0].value").entity(String.class).isEqualTo("blue");
+
+        this.httpGraphQlTester.document(String.format("""
+                mutation {
+                    addVariant(productId: "%s", variant: {name: "red", attributeList: []}, returnProduct: false){
+                        productId
+                    }
+                }
+                """, sofa1.getId()))
+                .execute()
+                .errors()
+                .expect(error -> "Variant name already exists".equals(error.getMessage()))
+                .verify();
+    }
+
+    @Test
+    void whenAddVariantWithoutProduct_thenProductFieldsAreNullNotPartial(){
+        GraphQlTester.Response response = this.httpGraphQlTester.document(String.format("""
+                mutation {
+                    addVariant(productId: "%s", variant: {name: "grey", attributeList: []}, returnProduct: false){
+                        productId
+                        variant { name }
+                        product { name status }
+                    }
+                }
+                """, sofa2.getId()))
+                .execute()
+                .errors()
+                .verify();
+        response.path("addVariant.productId").entity(String.class).isEqualTo(sofa2.getId());
+        response.path("addVariant.variant.name").entity(String.class).isEqualTo("grey");
+        response.path("addVariant.product").valueIsNull();
+
+        response = this.httpGraphQlTester.document(String.format("""
+                mutation {
+                    addVariant(productId: "%s", variant: {name: "white", attributeList: []}){
+                        variant { name }
+                        product { name status }
+                    }
+                }
+                """, sofa2.getId()))
+                .execute()
+                .errors()
+                .verify();
+        response.path("addVariant.variant.name").entity(String.class).isEqualTo("white");
+        response.path("addVariant.product.name").entity(String.class).isEqualTo(sofa2.getName());
+        response.path("addVariant.product.status").entity(String.class).isEqualTo(sofa2.getStatus().name());
+    }
 }
@@ -0,0 +1,113 @@
+package com.hevlar.productgraphql.controller;
+
+import com.hevlar.productgraphql.MongoDBTestContainerConfig;
+import com.hevlar.productgraphql.model.Category;
+import com.hevlar.productgraphql.model.ImportProgress;
+import com.hevlar.productgraphql.repository.CategoryRepository;
+import com.hevlar.productgraphql.repository.ProductRepository;
+import com.hevlar.productgraphql.service.CategoryService;
+import org.junit.jupiter.api.*;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@AutoConfigureWebTestClient
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+@Testcontainers
+@ContextConfiguration(classes = MongoDBTestContainerConfig.class)
+public class ProductImportControllerIntegrationTest {
+
+    @Autowired
+    WebTestClient webTestClient;
+
+    @Autowired
+    CategoryRepository categoryRepository;
+
+    @Autowired
+    ProductRepository productRepository;
+
+    @Autowired
+    CategoryService categoryService;
+
+    @BeforeAll
+    void setup(){
+        categoryRepository.save(new Category("Garden", List.of(new Category("Tools", List.of())))).block();
+        categoryService.refreshSnapshot().block();
+    }
+
+    @AfterAll
+    public void tearDown() {
+        categoryRepository.deleteAll().block();
+        productRepository.deleteAll().block();
+    }
+
+    @Test
+    void whenImportProducts_thenStreamProgressAndSummary(){
+        String body = """
+                {"name": "Rake", "category": ["Garden", "Tools"], "status": "AVAILABLE"}
+                {"name": "Spade", "category": ["Garden", "Tools"], "status": "AVAILABLE"}
+                {"name": "Lawn mower", "category": ["Garden", "Machines"], "status": "AVAILABLE"}
+                """;
+
+        List<ImportProgress> progress = webTestClient.post()
+                .uri("/import/products")
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .accept(MediaType.APPLICATION_NDJSON)
+                .bodyValue(body)
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(ImportProgress.class)
+                .getResponseBody()
+                .collectList()
+                .block();
+
+        assertThat(progress).isNotEmpty();
+        ImportProgress summary = progress.get(progress.size() - 1);
+        assertThat(summary.done()).isTrue();
+        assertThat(summary.received()).isEqualTo(3);
+        assertThat(summary.imported()).isEqualTo(2);
+        assertThat(summary.failed()).isEqualTo(1);
+        assertThat(progress).flatExtracting(ImportProgress::errors)
+                .containsExactly(new ImportProgress.ImportError(3, "Existing category provided doesn't exist"));
+    }
+
+    @Test
+    void givenMalformedLine_whenImportProducts_thenReportItsLineAndImportTheRest(){
+        String body = """
+                {"name": "Hoe", "category": ["Garden", "Tools"], "status": "AVAILABLE"}
+                {"name": "Trowel", "category": ["Garden", "Tools"]
+                {"name": "Shears", "category": ["Garden", "Tools"], "status": "AVAILABLE"}
+                """;
+
+        List<ImportProgress> progress = webTestClient.post()
+                .uri("/import/products")
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .accept(MediaType.APPLICATION_NDJSON)
+                .bodyValue(body)
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(ImportProgress.class)
+                .getResponseBody()
+                .collectList()
+                .block();
+
+        assertThat(progress).isNotEmpty();
+        ImportProgress summary = progress.get(progress.size() - 1);
+        assertThat(summary.done()).isTrue();
+        assertThat(summary.received()).isEqualTo(3);
+        assertThat(summary.imported()).isEqualTo(2);
+        assertThat(summary.failed()).isEqualTo(1);
+        assertThat(progress).flatExtracting(ImportProgress::errors)
+                .extracting(ImportProgress.ImportError::line)
+                .containsExactly(2L);
+    }
+}
@@ -0,0 +1,133 @@
+package com.hevlar.productgraphql.controller;
+
+import com.hevlar.productgraphql.MongoDBTestContainerConfig;
+import com.hevlar.productgraphql.model.Category;
+import com.hevlar.productgraphql.model.Product;
+import com.hevlar.productgraphql.model.ProductStatus;
+import com.hevlar.productgraphql.repository.CategoryRepository;
+import com.hevlar.productgraphql.repository.ProductRepository;
+import com.hevlar.productgraphql.service.CategoryService;
+import org.junit.jupiter.api.*;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.graphql.ExecutionGraphQlService;
+import org.springframework.graphql.test.tester.ExecutionGraphQlServiceTester;
+import org.springframework.test.context.ContextConfiguration;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+
+@SpringBootTest
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+@Testcontainers
+@ContextConfiguration(classes = MongoDBTestContainerConfig.class)
+public class SubscriptionIntegrationTest {
+
+    @Autowired
+    ExecutionGraphQlService executionGraphQlService;
+
+    @Autowired
+    CategoryService categoryService;
+
+    @Autowired
+    CategoryRepository categoryRepository;
+
+    @Autowired
+    ProductRepository productRepository;
+
+    ExecutionGraphQlServiceTester graphQlTester;
+
+    @BeforeAll
+    void setup(){
+        graphQlTester = ExecutionGraphQlServiceTester.create(executionGraphQlService);
+        categoryService.addTopCategory(new Category("Outdoor", List.of(new Category("Chairs", List.of())))).block();
+    }
+
+    @AfterAll
+    public void tearDown() {
+        categoryRepository.deleteAll().block();
+        productRepository.deleteAll().block();
+    }
+
+    @Test
+    void whenProductSavedInCategorySubtree_thenSubscriberIsNotified(){
+        Flux<Product> changes = graphQlTester.document("""
+                        subscription {
+                            productsInCategoryChanged(categoryHierarchy: ["Outdoor"], includeDescendants: true){
+                                name
+                                category
+                            }
+                        }
+                        """)
+                .executeSubscription()
+                .toFlux("productsInCategoryChanged", Product.class);
+
+        Product deckChair = new Product("Deck chair", "Folding deck chair", List.of(),
+                List.of("Outdoor", "Chairs"), List.of(), List.of(), ProductStatus.AVAILABLE);
+        Product sofa = new Product("Sofa", "Not outdoor", List.of(),
+                List.of("Furniture"), List.of(), List.of(), ProductStatus.AVAILABLE);
+
+        StepVerifier.create(changes)
+                // give the change stream cursor time to open before writing
+                .then(() -> Mono.delay(Duration.ofSeconds(1))
+                        .then(productRepository.save(sofa))
+                        .then(productRepository.save(deckChair))
+                        .block())
+                .expectNextMatches(product -> product.getName().equals("Deck chair"))
+                .thenCancel()
+                .verify(Duration.ofSeconds(30));
+    }
+
+    @Test
+    void whenCategoryAdded_thenCategoryTreeSubscriberIsNotified(){
+        Flux<Category> changes = graphQlTester.document("""
+                        subscription {
+                            categoryTreeChanged {
+                                name
+                            }
+                        }
+                        """)
+                .executeSubscription()
+                .toFlux("categoryTreeChanged", Category.class);
+
+        StepVerifier.create(changes)
+                .then(() -> Mono.delay(Duration.ofSeconds(1))
+                        .then(categoryService.addTopCategory(new Category("Garden", List.of())))
+                        .block())
+                .expectNextMatches(category -> category.getName().equals("Garden"))
+                .thenCancel()
+                .verify(Duration.ofSeconds(30));
+    }
+
+    @Test
+    void whenProductsByCategoryStream_thenProductsAreStreamedInIdOrder(){
+        List<Product> saved = productRepository.saveAll(List.of(
+                        new Product("Bench", "Garden bench", List.of(), List.of("Outdoor", "Chairs"), List.of(), List.of(), ProductStatus.AVAILABLE),
+                        new Product("Stool", "Garden stool", List.of(), List.of("Outdoor", "Chairs"), List.of(), List.of(), ProductStatus.AVAILABLE)))
+                .collectList()
+                .block();
+        assert saved != null;
+        List<String> ids = saved.stream().map(Product::getId).sorted().toList();
+
+        Flux<Product> products = graphQlTester.document("""
+                        subscription {
+                            productsByCategoryStream(categoryHierarchy: ["Outdoor", "Chairs"]){
+                                id
+                                name
+                            }
+                        }
+                        """)
+                .executeSubscription()
+                .toFlux("productsByCategoryStream", Product.class);
+
+        // other tests may have saved products in the category too
+        StepVerifier.create(products.map(Product::getId).filter(ids::contains))
+                .expectNext(ids.get(0), ids.get(1))
+                .expectComplete()
+                .verify(Duration.ofSeconds(30));
+    }
+}
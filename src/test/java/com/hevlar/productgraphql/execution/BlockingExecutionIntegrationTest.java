@@ -0,0 +1,118 @@
+package com.hevlar.productgraphql.execution;
+
+import com.hevlar.productgraphql.MongoDBTestContainerConfig;
+import com.hevlar.productgraphql.model.Category;
+import com.hevlar.productgraphql.model.Product;
+import com.hevlar.productgraphql.model.ProductFilter;
+import com.hevlar.productgraphql.model.ProductProjection;
+import com.hevlar.productgraphql.model.ProductStatus;
+import com.hevlar.productgraphql.model.Variant;
+import com.hevlar.productgraphql.repository.CategoryRepository;
+import com.hevlar.productgraphql.repository.ProductRepository;
+import com.hevlar.productgraphql.service.CategoryService;
+import org.junit.jupiter.api.*;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.graphql.tester.AutoConfigureHttpGraphQlTester;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.graphql.test.tester.GraphQlTester;
+import org.springframework.graphql.test.tester.HttpGraphQlTester;
+import org.springframework.test.context.ContextConfiguration;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import reactor.test.StepVerifier;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = "productgraphql.execution.mode=blocking")
+@AutoConfigureWebTestClient
+@AutoConfigureHttpGraphQlTester
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+@Testcontainers
+@ContextConfiguration(classes = MongoDBTestContainerConfig.class)
+class BlockingExecutionIntegrationTest {
+
+    @Autowired
+    HttpGraphQlTester httpGraphQlTester;
+
+    @Autowired
+    CategoryRepository categoryRepository;
+
+    @Autowired
+    ProductRepository productRepository;
+
+    @Autowired
+    CategoryService categoryService;
+
+    @Autowired
+    ExecutorService graphQlExecutor;
+
+    Product book;
+
+    @BeforeAll
+    void setup(){
+        categoryRepository.save(new Category("Books", List.of())).block();
+        categoryService.refreshSnapshot().block();
+        book = productRepository.save(new Product("Book", "A book", List.of(), List.of("Books"), List.of(),
+                List.of(new Variant("hardcover", List.of()), new Variant("paperback", List.of())), ProductStatus.AVAILABLE)).block();
+    }
+
+    @AfterAll
+    public void tearDown() {
+        categoryRepository.deleteAll().block();
+        productRepository.deleteAll().block();
+    }
+
+    @Test
+    void whenBlockingMode_thenQueriesAndBatchLoadsResolve(){
+        assertThat(graphQlExecutor.isShutdown()).isFalse();
+
+        GraphQlTester.Response response = this.httpGraphQlTester.document(String.format("""
+                query {
+                    getCategories { name }
+                    getProduct(productId: "%s", cached: false){
+                        name
+                        variants(first: 1){ name }
+                    }
+                    productsByCategory(categoryHierarchy: ["Books"]){
+                        edges { node { name } }
+                    }
+                }
+                """, book.getId()))
+                .execute()
+                .errors()
+                .verify();
+        response.path("getCategories[0].name").entity(String.class).isEqualTo("Books");
+        response.path("getProduct.variants[*].name").entityList(String.class).containsExactly("hardcover");
+        response.path("productsByCategory.edges[0].node.name").entity(String.class).isEqualTo("Book");
+    }
+
+    @Test
+    void whenBlockingMode_thenReadsRunOnExecutionThreads(){
+        StepVerifier.create(productRepository.findProjectedByCategory(List.of("Books"), false, null, 0, ProductProjection.ALL)
+                        .map(product -> Thread.currentThread()))
+                .assertNext(thread -> assertThat(isExecutionThread(thread)).as(thread.toString()).isTrue())
+                .verifyComplete();
+        StepVerifier.create(productRepository.findProjectedByIds(List.of(book.getId()), ProductProjection.ALL)
+                        .map(product -> Thread.currentThread()))
+                .assertNext(thread -> assertThat(isExecutionThread(thread)).as(thread.toString()).isTrue())
+                .verifyComplete();
+        StepVerifier.create(productRepository.findById(book.getId()).map(product -> Thread.currentThread()))
+                .assertNext(thread -> assertThat(isExecutionThread(thread)).as(thread.toString()).isTrue())
+                .verifyComplete();
+        StepVerifier.create(productRepository.findProjectedByFilter(ProductFilter.NONE, null, 10, ProductProjection.ALL)
+                        .map(product -> Thread.currentThread()))
+                .assertNext(thread -> assertThat(isExecutionThread(thread)).as(thread.toString()).isTrue())
+                .verifyComplete();
+        StepVerifier.create(categoryRepository.findAll().map(category -> Thread.currentThread()))
+                .assertNext(thread -> assertThat(isExecutionThread(thread)).as(thread.toString()).isTrue())
+                .verifyComplete();
+    }
+
+    private static boolean isExecutionThread(Thread thread){
+        // virtual threads are unnamed, the reactive driver would emit on its own threads
+        return thread.getName().startsWith(ExecutionThreads.THREAD_NAME_PREFIX) || thread.toString().startsWith("VirtualThread");
+    }
+}
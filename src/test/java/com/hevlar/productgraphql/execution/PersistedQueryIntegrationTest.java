@@ -0,0 +1,137 @@
+package com.hevlar.productgraphql.execution;
+
+import com.hevlar.productgraphql.MongoDBTestContainerConfig;
+import com.hevlar.productgraphql.model.Category;
+import com.hevlar.productgraphql.repository.CategoryRepository;
+import com.hevlar.productgraphql.service.CategoryService;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.*;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.graphql.server.webflux.GraphQlHttpHandler;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@AutoConfigureWebTestClient
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+@Testcontainers
+@ContextConfiguration(classes = MongoDBTestContainerConfig.class)
+class PersistedQueryIntegrationTest {
+
+    static final String QUERY = "query PersistedCategories { getCategories { name } }";
+
+    @Autowired
+    WebTestClient webTestClient;
+
+    @Autowired
+    CategoryRepository categoryRepository;
+
+    @Autowired
+    CategoryService categoryService;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Autowired
+    GraphQlHttpHandler graphQlHttpHandler;
+
+    @BeforeAll
+    void setup(){
+        categoryRepository.save(new Category("Books", List.of())).block();
+        categoryService.refreshSnapshot().block();
+    }
+
+    @AfterAll
+    public void tearDown() {
+        categoryRepository.deleteAll().block();
+    }
+
+    private WebTestClient.BodyContentSpec post(Map<String, Object> body){
+        return webTestClient.post()
+                .uri("/graphql")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(body)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody();
+    }
+
+    private static Map<String, Object> persistedQuery(String hash){
+        return Map.of("persistedQuery", Map.of("version", 1, "sha256Hash", hash));
+    }
+
+    @Test
+    void whenPersistedQueriesAreEnabled_thenHashOnlyRequestsAreDetectedOnTheDecodedBody(){
+        assertThat(graphQlHttpHandler).isInstanceOf(PersistedQueryHttpHandler.class);
+    }
+
+    @Test
+    void whenHashIsUnknown_thenPersistedQueryNotFound_andQueryIsRegisteredWithFullRequest(){
+        String hash = PersistedQueryInterceptor.sha256(QUERY);
+
+        post(Map.of("extensions", persistedQuery(hash)))
+                .jsonPath("$.errors[0].message").isEqualTo("PersistedQueryNotFound")
+                .jsonPath("$.errors[0].extensions.code").isEqualTo("PERSISTED_QUERY_NOT_FOUND");
+
+        post(Map.of("query", QUERY, "extensions", persistedQuery(hash)))
+                .jsonPath("$.errors").doesNotExist()
+                .jsonPath("$.data.getCategories[0].name").isEqualTo("Books");
+
+        post(Map.of("extensions", persistedQuery(hash)))
+                .jsonPath("$.errors").doesNotExist()
+                .jsonPath("$.data.getCategories[0].name").isEqualTo("Books");
+    }
+
+    @Test
+    void whenHashDoesNotMatchQuery_thenReject(){
+        post(Map.of("query", QUERY, "extensions", persistedQuery(PersistedQueryInterceptor.sha256("{ getCategories { name } }"))))
+                .jsonPath("$.errors[0].message").isEqualTo("Provided sha does not match query")
+                .jsonPath("$.data").doesNotExist();
+    }
+
+    @Test
+    void whenQueryTextIsThePlaceholder_thenItIsNotSwapped(){
+        String query = "# persisted query";
+        post(Map.of("query", query, "extensions", persistedQuery(PersistedQueryInterceptor.sha256(query))))
+                .jsonPath("$.errors[0].message").value(message -> assertThat(message).isNotEqualTo("PersistedQueryNotFound"))
+                .jsonPath("$.data").doesNotExist();
+    }
+
+    @Test
+    void whenBodyIsOverTheMaxRequestSize_thenPayloadTooLarge(){
+        webTestClient.post()
+                .uri("/graphql")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(Map.of("query", "{ getCategories { name } }", "variables", Map.of("padding", "x".repeat(300 * 1024))))
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.PAYLOAD_TOO_LARGE);
+    }
+
+    @Test
+    void whenSameQueryIsRepeated_thenParsedDocumentIsServedFromCache(){
+        String query = "{ cached: getCategories { name } }";
+        post(Map.of("query", query)).jsonPath("$.data.cached[0].name").isEqualTo("Books");
+        double hits = documentCacheHits();
+
+        post(Map.of("query", query)).jsonPath("$.data.cached[0].name").isEqualTo("Books");
+        assertThat(documentCacheHits()).isGreaterThan(hits);
+    }
+
+    private double documentCacheHits(){
+        return meterRegistry.get("cache.gets")
+                .tag("cache", "graphql.documents")
+                .tag("result", "hit")
+                .functionCounter()
+                .count();
+    }
+}
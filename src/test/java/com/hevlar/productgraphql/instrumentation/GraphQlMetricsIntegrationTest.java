@@ -0,0 +1,94 @@
+package com.hevlar.productgraphql.instrumentation;
+
+import com.hevlar.productgraphql.MongoDBTestContainerConfig;
+import com.hevlar.productgraphql.repository.CategoryRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.*;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.autoconfigure.graphql.tester.AutoConfigureHttpGraphQlTester;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.graphql.test.tester.HttpGraphQlTester;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@AutoConfigureWebTestClient
+@AutoConfigureHttpGraphQlTester
+@AutoConfigureObservability
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+@Testcontainers
+@ContextConfiguration(classes = MongoDBTestContainerConfig.class)
+class GraphQlMetricsIntegrationTest {
+
+    @Autowired
+    HttpGraphQlTester httpGraphQlTester;
+
+    @Autowired
+    WebTestClient webTestClient;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Autowired
+    CategoryRepository categoryRepository;
+
+    @AfterAll
+    public void tearDown() {
+        categoryRepository.deleteAll().block();
+    }
+
+    @Test
+    void whenQueryIsExecuted_thenOperationAndFetcherAreTimedOnce(){
+        this.httpGraphQlTester.document("query Categories { getCategories { name } }")
+                .operationName("Categories")
+                .execute()
+                .errors()
+                .verify();
+
+        assertThat(meterRegistry.get("graphql.request").tag("graphql.operation", "Categories").tag("graphql.outcome", "SUCCESS").timer().count())
+                .isPositive();
+        assertThat(meterRegistry.get("graphql.datafetcher").tag("graphql.parent.type", "Query").tag("graphql.field.name", "getCategories")
+                .timer().count()).isPositive();
+        assertThat(meterRegistry.get("graphql.parse").timer().count()).isPositive();
+        assertThat(meterRegistry.get("graphql.response.size").summary().count()).isPositive();
+        assertThat(meterRegistry.find("graphql.datafetcher").tag("graphql.parent.type", "Category").timer()).isNull();
+        // the observations are the only request and fetcher timers
+        assertThat(meterRegistry.find("graphql.operation").timer()).isNull();
+        assertThat(meterRegistry.find("graphql.fetcher").timer()).isNull();
+    }
+
+    @Test
+    void whenQueryFails_thenErrorIsCountedByType(){
+        this.httpGraphQlTester.document("mutation { addTopCategory(category: { name: \" \" }) { name } }")
+                .execute()
+                .errors()
+                .expect(error -> error.getMessage().equals("Invalid category"));
+
+        assertThat(meterRegistry.get("graphql.errors").tag("errorType", "BAD_REQUEST").counter().count()).isPositive();
+        assertThat(meterRegistry.get("graphql.datafetcher").tag("graphql.parent.type", "Mutation").tag("graphql.field.name", "addTopCategory")
+                .tag("graphql.outcome", "ERROR").timer().count()).isPositive();
+    }
+
+    @Test
+    void prometheusEndpointExportsGraphQlMetrics(){
+        this.httpGraphQlTester.document("query Categories { getCategories { name } }")
+                .execute()
+                .errors()
+                .verify();
+
+        webTestClient.get()
+                .uri("/actuator/prometheus")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class)
+                .value(body -> assertThat(body)
+                        .contains("graphql_request_seconds")
+                        .contains("graphql_datafetcher_seconds")
+                        .contains("graphql_response_size_bytes_bucket"));
+    }
+}
@@ -0,0 +1,144 @@
+package com.hevlar.productgraphql.instrumentation;
+
+import com.hevlar.productgraphql.MongoDBTestContainerConfig;
+import com.hevlar.productgraphql.model.Category;
+import com.hevlar.productgraphql.repository.CategoryRepository;
+import com.hevlar.productgraphql.service.CategoryService;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.*;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.graphql.tester.AutoConfigureHttpGraphQlTester;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.graphql.execution.ErrorType;
+import org.springframework.graphql.test.tester.HttpGraphQlTester;
+import org.springframework.test.context.ContextConfiguration;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = {
+        "productgraphql.graphql.complexity.max-depth=4",
+        "productgraphql.graphql.complexity.max-cost=200",
+        "productgraphql.graphql.complexity.default-list-size=10",
+        "productgraphql.graphql.complexity.unbounded-list-size=1000"
+})
+@AutoConfigureWebTestClient
+@AutoConfigureHttpGraphQlTester
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+@Testcontainers
+@ContextConfiguration(classes = MongoDBTestContainerConfig.class)
+class QueryComplexityIntegrationTest {
+
+    @Autowired
+    HttpGraphQlTester httpGraphQlTester;
+
+    @Autowired
+    CategoryRepository categoryRepository;
+
+    @Autowired
+    CategoryService categoryService;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @BeforeAll
+    void setup(){
+        categoryRepository.save(new Category("Furniture", List.of(new Category("Living Room", List.of())))).block();
+        categoryService.refreshSnapshot().block();
+    }
+
+    @AfterAll
+    public void tearDown() {
+        categoryRepository.deleteAll().block();
+    }
+
+    @Test
+    void whenQueryIsWithinLimits_thenExecute(){
+        this.httpGraphQlTester.document("""
+                        query {
+                            getCategories {
+                                name
+                                subCategories { name }
+                            }
+                        }
+                        """)
+                .execute()
+                .errors()
+                .verify()
+                .path("getCategories[0].subCategories[0].name")
+                .entity(String.class)
+                .isEqualTo("Living Room");
+        assertThat(meterRegistry.get("graphql.operation.cost").summary().count()).isPositive();
+    }
+
+    @Test
+    void whenQueryIsTooDeep_thenReject(){
+        this.httpGraphQlTester.document("""
+                        query {
+                            getCategories {
+                                subCategories {
+                                    subCategories {
+                                        subCategories {
+                                            subCategories { name }
+                                        }
+                                    }
+                                }
+                            }
+                        }
+                        """)
+                .execute()
+                .errors()
+                .satisfy(errors -> {
+                    assertThat(errors).hasSize(1);
+                    assertThat(errors.get(0).getMessage()).isEqualTo("Query depth 6 exceeds the maximum of 4");
+                    assertThat(errors.get(0).getErrorType()).isEqualTo(ErrorType.BAD_REQUEST);
+                    assertThat(errors.get(0).getPath()).isEqualTo("getCategories");
+                });
+    }
+
+    @Test
+    void whenQueryCostsTooMuch_thenReject(){
+        // 10 for the root field, 10 expected categories with a name and sub categories, 100 expected sub categories with a name
+        this.httpGraphQlTester.document("""
+                        query {
+                            getCategories {
+                                name
+                                subCategories { name }
+                            }
+                            other: getCategories {
+                                name
+                                subCategories { name }
+                            }
+                        }
+                        """)
+                .execute()
+                .errors()
+                .satisfy(errors -> {
+                    assertThat(errors).hasSize(2);
+                    assertThat(errors.get(0).getMessage()).isEqualTo("Query cost 260 exceeds the maximum of 200");
+                    assertThat(errors.get(0).getExtensions()).containsEntry("maxCost", 200);
+                });
+    }
+
+    @Test
+    void whenUnpaginatedProductListCostsTooMuch_thenReject(){
+        // 10 for the root field, 1000 expected products with variants, 10 expected variants each with a name
+        this.httpGraphQlTester.document("""
+                        query {
+                            getProductsByCategory(categoryHierarchy: ["Furniture"]) {
+                                variants { name }
+                            }
+                        }
+                        """)
+                .execute()
+                .errors()
+                .satisfy(errors -> {
+                    assertThat(errors).hasSize(1);
+                    assertThat(errors.get(0).getMessage()).isEqualTo("Query cost 11010 exceeds the maximum of 200");
+                    assertThat(errors.get(0).getPath()).isEqualTo("getProductsByCategory");
+                });
+    }
+}
@@ -0,0 +1,51 @@
+package com.hevlar.productgraphql.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+class CategoryIndexTest {
+
+    Category sofa2Seater = new Category("2 Seater Sofa", List.of());
+    Category sofa = new Category("Sofa", List.of(sofa2Seater));
+    Category coffeeTable = new Category("Coffee Table", List.of());
+    Category livingRoom = new Category("Living Room", List.of(sofa, coffeeTable));
+    Category kitchen = new Category("Kitchen", List.of());
+    Category furniture = new Category("Furniture", List.of(livingRoom, kitchen));
+    Category electronics = new Category("Electronics", List.of());
+
+    CategoryIndex index = CategoryIndex.of(List.of(furniture, electronics));
+
+    @Test
+    void whenFind_thenReturnCategoryAtEndOfHierarchy(){
+        assertThat(index.find(List.of("Furniture")), is(furniture));
+        assertThat(index.find(List.of("Furniture", "Living Room", "Sofa", "2 Seater Sofa")), is(sofa2Seater));
+        assertThat(index.find(List.of("Electronics")), is(electronics));
+    }
+
+    @Test
+    void givenMissingLevel_whenFind_thenReturnNull(){
+        assertThat(index.find(List.of("Garden")), is(nullValue()));
+        assertThat(index.find(List.of("Furniture", "Garage")), is(nullValue()));
+        assertThat(index.find(List.of("Furniture", "Kitchen", "Sofa")), is(nullValue()));
+        assertThat(index.find(List.of()), is(nullValue()));
+        assertThat(index.find(null), is(nullValue()));
+    }
+
+    @Test
+    void givenDuplicateTopCategory_whenFind_thenFirstOneWins(){
+        Category otherFurniture = new Category("Furniture", List.of());
+        CategoryIndex duplicated = CategoryIndex.of(List.of(furniture, otherFurniture));
+        assertThat(duplicated.getTopCategory("Furniture"), is(furniture));
+    }
+
+    @Test
+    void whenContains_thenMatchFind(){
+        assertThat(index.contains(List.of("Furniture", "Kitchen")), is(true));
+        assertThat(index.contains(List.of("Furniture", "Bedroom")), is(false));
+    }
+}
@@ -0,0 +1,32 @@
+package com.hevlar.productgraphql.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.is;
+
+class CategoryPathTest {
+
+    @Test
+    void whenOf_thenJoinWithSeparator(){
+        assertThat(CategoryPath.of(List.of("Furniture", "Living Room")), is("Furniture\u001FLiving Room"));
+        assertThat(CategoryPath.of(List.of("Furniture")), is("Furniture"));
+    }
+
+    @Test
+    void whenAncestors_thenReturnPathOfEveryLevel(){
+        assertThat(CategoryPath.ancestors(List.of("Furniture", "Living Room", "Sofa")), is(List.of(
+                "Furniture",
+                "Furniture\u001FLiving Room",
+                "Furniture\u001FLiving Room\u001FSofa"
+        )));
+    }
+
+    @Test
+    void givenHierarchyIsEmpty_whenAncestors_thenReturnEmptyList(){
+        assertThat(CategoryPath.ancestors(List.of()), is(List.of()));
+        assertThat(CategoryPath.ancestors(null), is(List.of()));
+    }
+}
@@ -2,10 +2,12 @@ package com.hevlar.productgraphql.model;
 
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import static org.hamcrest.MatcherAssert.*;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
 class CategoryTest {
@@ -79,4 +81,46 @@ class CategoryTest {
                 "Existing category provided doesn't exist"
         );
     }
+
+    @Test
+    void whenGetSubCategory_thenReturnDirectChildOrNull(){
+        assertThat(livingRoom.getSubCategory("Sofa"), is(sofa));
+        assertThat(livingRoom.getSubCategory("2 Seater Sofa"), is(nullValue()));
+    }
+
+    @Test
+    void givenSubCategoriesUpdated_whenHasSubCategory_thenSeeUpdatedList(){
+        Category bedroom = new Category("Bedroom", new ArrayList<>());
+        assertThat(bedroom.hasSubCategory("Bed"), is(false));
+
+        bedroom.getSubCategories().add(new Category("Bed", List.of()));
+        assertThat(bedroom.hasSubCategory("Bed"), is(true));
+
+        bedroom.setSubCategories(List.of(new Category("Wardrobe", List.of())));
+        assertThat(bedroom.hasSubCategory("Bed"), is(false));
+        assertThat(bedroom.hasSubCategory("Wardrobe"), is(true));
+    }
+
+    @Test
+    void whenWithDepth_thenCutTreeBelowDepth(){
+        Category oneLevel = furniture.withDepth(1);
+        assertThat(oneLevel.getName(), is("Furniture"));
+        assertThat(oneLevel.getSubCategories().stream().map(Category::getName).toList(), is(List.of("Living Room", "Kitchen")));
+        assertThat(oneLevel.getSubCategory("Living Room").getSubCategories(), is(List.of()));
+        assertThat(furniture.withDepth(0).getSubCategories(), is(List.of()));
+        assertThat(furniture.getSubCategory("Living Room").getSubCategories().size(), is(2));
+    }
+
+    @Test
+    void givenTreeNoDeeperThanDepth_whenWithDepth_thenReturnSameCategory(){
+        assertThat(furniture.withDepth(3) == furniture, is(true));
+        // the kitchen has no sub categories, so the copy keeps it rather than copying it
+        assertThat(furniture.withDepth(2).getSubCategory("Kitchen") == kitchen, is(true));
+        assertThat(furniture.withDepth(2).getSubCategory("Living Room").getSubCategory("Sofa").getSubCategories(), is(List.of()));
+    }
+
+    @Test
+    void givenNegativeDepth_whenWithDepth_thenThrow(){
+        assertThrows(IllegalArgumentException.class, () -> furniture.withDepth(-1));
+    }
 }
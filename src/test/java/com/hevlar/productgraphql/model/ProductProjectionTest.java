@@ -0,0 +1,64 @@
+package com.hevlar.productgraphql.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+class ProductProjectionTest {
+
+    @Test
+    void of_alwaysIncludesId(){
+        assertThat(ProductProjection.of(List.of("name")).fields(), is(Set.of("id", "name")));
+        assertThat(ProductProjection.of(List.of()).fields(), is(Set.of("id")));
+    }
+
+    @Test
+    void union_combinesFields(){
+        ProductProjection union = ProductProjection.of(List.of("name")).union(ProductProjection.of(List.of("variants.name")));
+        assertThat(union.fields(), is(Set.of("id", "name", "variants.name")));
+    }
+
+    @Test
+    void union_withAll_isAll(){
+        assertThat(ProductProjection.of(List.of("name")).union(ProductProjection.ALL).isAll(), is(true));
+        assertThat(ProductProjection.ALL.union(ProductProjection.of(List.of("name"))).isAll(), is(true));
+    }
+
+    @Test
+    void equalFieldsAreEqual(){
+        assertThat(ProductProjection.of(List.of("name", "tags")).equals(ProductProjection.of(List.of("tags", "name"))), is(true));
+    }
+
+    @Test
+    void union_keepsTheVariantSliceOfTheSideSelectingVariants(){
+        ProductProjection.VariantSlice slice = new ProductProjection.VariantSlice(2, "blue");
+        ProductProjection union = ProductProjection.of(List.of("name"))
+                .union(ProductProjection.of(List.of("variants.name")).withVariantSlice(slice));
+        assertThat(union.fields(), is(Set.of("id", "name", "variants.name")));
+        assertThat(union.variantSlice(), is(slice));
+    }
+
+    @Test
+    void union_ofDifferentVariantSlices_readsAllVariants(){
+        ProductProjection union = ProductProjection.of(List.of("variants.name"))
+                .withVariantSlice(new ProductProjection.VariantSlice(2, null))
+                .union(ProductProjection.of(List.of("variants.attributeList.key"))
+                        .withVariantSlice(new ProductProjection.VariantSlice(2, "blue")));
+        assertThat(union.fields(), is(Set.of("id", "variants")));
+        assertThat(union.variantSlice(), is(nullValue()));
+    }
+
+    @Test
+    void union_ofSlicedAndWholeVariants_readsAllVariants(){
+        ProductProjection union = ProductProjection.of(List.of("variants.name"))
+                .withVariantSlice(new ProductProjection.VariantSlice(2, null))
+                .union(ProductProjection.of(List.of("variants.name")));
+        assertThat(union.fields(), is(Set.of("id", "variants")));
+        assertThat(union.variantSlice(), is(nullValue()));
+    }
+}
@@ -2,6 +2,7 @@ package com.hevlar.productgraphql.model;
 
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import static org.hamcrest.MatcherAssert.*;
@@ -25,4 +26,59 @@ class ProductTest {
         assertThat(product.hasVariantOfName("Variant 1"), is(true));
         assertThat(product.hasVariantOfName("Something"), is(false));
     }
+
+    @Test
+    void variantsAfter() {
+        Variant variant1 = new Variant("Variant 1", List.of());
+        Variant variant2 = new Variant("Variant 2", List.of());
+        Variant variant3 = new Variant("Variant 3", List.of());
+        Product product = new Product();
+        product.setVariants(List.of(variant1, variant2, variant3));
+
+        assertThat(product.variantsAfter(null, null), is(List.of(variant1, variant2, variant3)));
+        assertThat(product.variantsAfter(null, 2), is(List.of(variant1, variant2)));
+        assertThat(product.variantsAfter("Variant 1", 1), is(List.of(variant2)));
+        assertThat(product.variantsAfter("Variant 3", 5), is(List.of()));
+        assertThat(product.variantsAfter("Something", 5), is(List.of()));
+    }
+
+    @Test
+    void givenVariantsSlicedFromAfterVariant_whenVariantsAfter_thenSamePage() {
+        Variant variant2 = new Variant("Variant 2", List.of());
+        Variant variant3 = new Variant("Variant 3", List.of());
+        Product product = new Product();
+        product.setVariants(List.of(variant2, variant3));
+
+        assertThat(product.variantsAfter("Variant 2", 1), is(List.of(variant3)));
+        assertThat(product.variantsAfter(product.variantsAfter(null, 2).get(0).name(), 1), is(List.of(variant3)));
+    }
+
+    @Test
+    void givenVariantsChanged_whenHasVariantOfName_thenSeesChange() {
+        Product product = new Product();
+        List<Variant> variants = new ArrayList<>(List.of(new Variant("Variant 1", List.of())));
+        product.setVariants(variants);
+        assertThat(product.hasVariantOfName("Variant 2"), is(false));
+
+        variants.add(new Variant("Variant 2", List.of()));
+        assertThat(product.hasVariantOfName("Variant 2"), is(true));
+
+        product.setVariants(List.of(new Variant("Variant 3", List.of())));
+        assertThat(product.hasVariantOfName("Variant 2"), is(false));
+        assertThat(product.hasVariantOfName("Variant 3"), is(true));
+    }
+
+    @Test
+    void setCategory_derivesCategoryPaths() {
+        Product product = new Product();
+        product.setCategory(List.of("Furniture", "Living Room"));
+        assertThat(product.getCategoryPath(), is(CategoryPath.of(List.of("Furniture", "Living Room"))));
+        assertThat(product.getCategoryAncestors(), is(List.of(
+                CategoryPath.of(List.of("Furniture")),
+                CategoryPath.of(List.of("Furniture", "Living Room")))));
+
+        product.setCategory(List.of("Kitchen"));
+        assertThat(product.getCategoryPath(), is("Kitchen"));
+        assertThat(product.getCategoryAncestors(), is(List.of("Kitchen")));
+    }
 }
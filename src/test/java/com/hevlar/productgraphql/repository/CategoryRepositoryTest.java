@@ -8,10 +8,16 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
 import org.springframework.test.context.ContextConfiguration;
 import org.testcontainers.junit.jupiter.Testcontainers;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
 import reactor.test.StepVerifier;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
 
 @DataMongoTest
 @Testcontainers
@@ -40,4 +46,58 @@ class CategoryRepositoryTest {
                 .expectNextMatches(category -> category.getName().equals("Electronics"))
                 .verifyComplete();
     }
+
+    @Test
+    void pushSubCategory_toTopCategory() {
+        StepVerifier.create(categoryRepository.pushSubCategory(List.of("Furniture"), new Category("Living Room", List.of())))
+                .expectNextMatches(category -> category.hasSubCategory("Living Room"))
+                .verifyComplete();
+    }
+
+    @Test
+    void pushSubCategory_toNestedCategory() {
+        categoryRepository.pushSubCategory(List.of("Furniture"), new Category("Living Room", List.of())).block();
+        categoryRepository.pushSubCategory(List.of("Furniture"), new Category("Bedroom", List.of())).block();
+
+        StepVerifier.create(categoryRepository.pushSubCategory(List.of("Furniture", "Living Room"), new Category("Sofa", List.of())))
+                .expectNextMatches(category -> category.traverse(List.of("Living Room")).hasSubCategory("Sofa")
+                        && category.traverse(List.of("Bedroom")).getSubCategories().isEmpty())
+                .verifyComplete();
+    }
+
+    @Test
+    void pushSubCategory_whenNameExists_thenEmpty() {
+        categoryRepository.pushSubCategory(List.of("Furniture"), new Category("Living Room", List.of())).block();
+
+        StepVerifier.create(categoryRepository.pushSubCategory(List.of("Furniture"), new Category("Living Room", List.of())))
+                .verifyComplete();
+        assertThat(categoryRepository.findByName("Furniture").block().getSubCategories().size(), is(1));
+    }
+
+    @Test
+    void pushSubCategory_whenHierarchyMissing_thenEmpty() {
+        StepVerifier.create(categoryRepository.pushSubCategory(List.of("Furniture", "Missing"), new Category("Sofa", List.of())))
+                .verifyComplete();
+        StepVerifier.create(categoryRepository.pushSubCategory(List.of("Missing"), new Category("Sofa", List.of())))
+                .verifyComplete();
+    }
+
+    @Test
+    void pushSubCategory_concurrentlyIntoDifferentBranches_thenNoneLost() {
+        categoryRepository.pushSubCategory(List.of("Furniture"), new Category("Living Room", List.of())).block();
+        categoryRepository.pushSubCategory(List.of("Furniture"), new Category("Bedroom", List.of())).block();
+
+        Flux.fromStream(IntStream.range(0, 100).boxed())
+                .parallel()
+                .runOn(Schedulers.parallel())
+                .flatMap(i -> categoryRepository.pushSubCategory(
+                        List.of("Furniture", i % 2 == 0 ? "Living Room" : "Bedroom"),
+                        new Category("Item " + i, List.of())))
+                .sequential()
+                .blockLast();
+
+        Category furniture = categoryRepository.findByName("Furniture").block();
+        assertThat(furniture.traverse(List.of("Living Room")).getSubCategories().size(), is(50));
+        assertThat(furniture.traverse(List.of("Bedroom")).getSubCategories().size(), is(50));
+    }
 }
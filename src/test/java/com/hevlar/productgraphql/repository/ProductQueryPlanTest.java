@@ -0,0 +1,164 @@
+package com.hevlar.productgraphql.repository;
+
+import com.hevlar.productgraphql.model.Attribute;
+import com.hevlar.productgraphql.model.Product;
+import com.hevlar.productgraphql.model.ProductFilter;
+import com.hevlar.productgraphql.model.ProductStatus;
+import com.hevlar.productgraphql.model.Variant;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.convert.QueryMapper;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.test.context.ContextConfiguration;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.everyItem;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+
+/**
+ * Checks that each common filter shape is answered from the index meant for it, in id order, rather than from a
+ * collection scan or a blocking sort.
+ */
+@DataMongoTest
+@Testcontainers
+@ContextConfiguration(classes = {ReactiveMongoTestConfiguration.class})
+class ProductQueryPlanTest {
+
+    @Autowired
+    ReactiveMongoTemplate reactiveMongoTemplate;
+
+    @Autowired
+    ProductRepository productRepository;
+
+    @BeforeEach
+    void setup(){
+        // indexes are built in the background by the application, so make sure every index exists before explaining
+        MongoIndexes.PRODUCT.forEach(index -> reactiveMongoTemplate.indexOps(Product.class).ensureIndex(index).block());
+
+        List<Product> products = new ArrayList<>();
+        for(int i = 0; i < 200; i++){
+            List<Variant> variants = List.of(
+                    new Variant("Variant " + i + ".1", List.of(new Attribute("colour", "colour " + (i % 7)), new Attribute("size", "size " + (i % 3)))),
+                    new Variant("Variant " + i + ".2", List.of(new Attribute("colour", "colour " + (i % 5)), new Attribute("size", "size " + (i % 4)))));
+            products.add(new Product(String.format("%04d", i), "Product " + i, "Description " + i, List.of(),
+                    List.of("Furniture", i % 2 == 0 ? "Living Room" : "Kitchen"), List.of("tag" + (i % 10)), variants,
+                    ProductStatus.values()[i % ProductStatus.values().length]));
+        }
+        productRepository.saveAll(products).blockLast();
+    }
+
+    @AfterEach
+    void tearDown(){
+        productRepository.deleteAll().block();
+    }
+
+    @Test
+    void categoryAndStatus_usesCategoryPathIndex() {
+        assertPlan(new ProductFilter(List.of("Furniture", "Kitchen"), false, List.of(ProductStatus.AVAILABLE), null, null, null),
+                "categoryPath_status_id");
+    }
+
+    @Test
+    void categorySubtreeAndStatuses_usesCategoryAncestorsIndex() {
+        assertPlan(new ProductFilter(List.of("Furniture"), true, List.of(ProductStatus.AVAILABLE, ProductStatus.UPCOMING), null, null, null),
+                "categoryAncestors_status_id");
+    }
+
+    @Test
+    void tagsAndStatus_usesTagsIndex() {
+        assertPlan(new ProductFilter(null, null, List.of(ProductStatus.AVAILABLE), List.of("tag1", "tag2"), null, null), "tags_status_id");
+        assertPlan(new ProductFilter(null, null, null, null, List.of("tag1", "tag2"), null), "tags_id");
+    }
+
+    @Test
+    void categorySubtreeAndTags_usesTagsIndex() {
+        // a tag is held by a tenth of the products, the whole catalog is in the subtree
+        assertPlan(new ProductFilter(List.of("Furniture"), true, null, List.of("tag1"), List.of("tag1"), null), "tags_id");
+    }
+
+    @Test
+    void statusOnly_usesStatusIndex() {
+        assertPlan(new ProductFilter(null, null, List.of(ProductStatus.DISCONTINUED), null, null, null), "status_id");
+    }
+
+    @Test
+    void namePrefix_walksIdIndexUnlessThePrefixIsSelective() {
+        // not a bounded read: the _id index is walked and every product is fetched to test its name against the prefix,
+        // which stops once a page of matches is found. A prefix matching few products is answered from the name index
+        // and sorted instead, see MongoIndexes
+        List<String> stages = new ArrayList<>();
+        List<String> indexNames = new ArrayList<>();
+        collectStages(winningPlan(ProductRepositoryCustomImpl.filterQuery(new ProductFilter(null, null, null, null, null, "Product 1"), "0001", 20)),
+                stages, indexNames);
+        assertThat(indexNames, contains("_id_"));
+        assertThat(stages, hasItem("FETCH"));
+        assertThat(stages, not(hasItem("SORT")));
+    }
+
+    @Test
+    void noFilter_readsInIdOrderFromIdIndex() {
+        assertPlan(ProductFilter.NONE, "_id_");
+    }
+
+    @Test
+    void variantAttributes_usesAttributeIndex() {
+        Criteria criteria = ProductCriteria.withVariantAttributes(new Criteria(),
+                List.of(new Attribute("colour", "colour 1"), new Attribute("size", "size 2")));
+        List<String> stages = new ArrayList<>();
+        List<String> indexNames = new ArrayList<>();
+        collectStages(winningPlan(Query.query(criteria).with(Sort.by("id")).limit(20)), stages, indexNames);
+        assertThat(indexNames, contains("variants_attributeList"));
+        assertThat(stages, not(hasItem("COLLSCAN")));
+    }
+
+    /**
+     * Asserts the page of the filter is read from the one index, in id order, so no stage has to hold every match to sort it.
+     */
+    private void assertPlan(ProductFilter filter, String indexName){
+        List<String> stages = new ArrayList<>();
+        List<String> indexNames = new ArrayList<>();
+        collectStages(winningPlan(ProductRepositoryCustomImpl.filterQuery(filter, "0001", 20)), stages, indexNames);
+        assertThat(indexNames, everyItem(is(indexName)));
+        assertThat(indexNames, not(empty()));
+        assertThat(stages, not(hasItem("COLLSCAN")));
+        assertThat(stages, not(hasItem("SORT")));
+    }
+
+    private static void collectStages(Document stage, List<String> stages, List<String> indexNames){
+        stages.add(stage.getString("stage"));
+        if(stage.getString("indexName") != null) indexNames.add(stage.getString("indexName"));
+        Document inputStage = stage.get("inputStage", Document.class);
+        if(inputStage != null) collectStages(inputStage, stages, indexNames);
+        List<Document> inputStages = stage.getList("inputStages", Document.class);
+        if(inputStages != null) inputStages.forEach(input -> collectStages(input, stages, indexNames));
+    }
+
+    private Document winningPlan(Query query){
+        MongoPersistentEntity<?> entity = reactiveMongoTemplate.getConverter().getMappingContext().getRequiredPersistentEntity(Product.class);
+        QueryMapper queryMapper = new QueryMapper(reactiveMongoTemplate.getConverter());
+        Document find = new Document("find", reactiveMongoTemplate.getCollectionName(Product.class))
+                .append("filter", queryMapper.getMappedObject(query.getQueryObject(), entity))
+                .append("sort", queryMapper.getMappedSort(query.getSortObject(), entity))
+                .append("limit", query.getLimit());
+        Document explain = reactiveMongoTemplate.executeCommand(new Document("explain", find).append("verbosity", "queryPlanner")).block();
+        Document winningPlan = explain.get("queryPlanner", Document.class).get("winningPlan", Document.class);
+        // the slot based engine nests the classic plan under queryPlan
+        return winningPlan.containsKey("queryPlan") ? winningPlan.get("queryPlan", Document.class) : winningPlan;
+    }
+}
@@ -1,20 +1,33 @@
 package com.hevlar.productgraphql.repository;
 
+import com.hevlar.productgraphql.model.Attribute;
 import com.hevlar.productgraphql.model.Category;
+import com.hevlar.productgraphql.model.CategoryPath;
 import com.hevlar.productgraphql.model.Product;
+import com.hevlar.productgraphql.model.ProductFacets;
+import com.hevlar.productgraphql.model.ProductFilter;
+import com.hevlar.productgraphql.model.ProductProjection;
 import com.hevlar.productgraphql.model.ProductStatus;
+import com.hevlar.productgraphql.model.Variant;
+import org.bson.Document;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
 import org.springframework.test.context.ContextConfiguration;
 import org.testcontainers.junit.jupiter.Testcontainers;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 import reactor.test.StepVerifier;
 
 import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
 
 @DataMongoTest
 @Testcontainers
@@ -27,6 +40,9 @@ class ProductRepositoryTest {
     @Autowired
     CategoryRepository categoryRepository;
 
+    @Autowired
+    ReactiveMongoTemplate reactiveMongoTemplate;
+
     Category livingRoom = new Category("Living Room", List.of());
     Category kitchen = new Category("Kitchen", List.of());
     Category furniture = new Category("Furniture", List.of(livingRoom, kitchen));
@@ -51,6 +67,8 @@ class ProductRepositoryTest {
 
     @BeforeEach
     void setup(){
+        // the text search needs its index, which the application builds in the background
+        MongoIndexes.PRODUCT.forEach(index -> reactiveMongoTemplate.indexOps(Product.class).ensureIndex(index).block());
         categoryRepository.saveAll(List.of(furniture, livingRoom, kitchen)).blockLast();
         productRepository.saveAll(List.of(sofa1, sofa2)).blockLast();
     }
@@ -69,6 +87,376 @@ class ProductRepositoryTest {
                 .verifyComplete();
     }
 
+    @Test
+    void findProjectedByCategory() {
+        StepVerifier.create(productRepository.findProjectedByCategory(List.of("Furniture", "Living Room"), false, null, 0, ProductProjection.ALL))
+                .expectNext(sofa1, sofa2)
+                .verifyComplete();
+        StepVerifier.create(productRepository.findProjectedByCategory(List.of("Furniture"), true, "1", 10, ProductProjection.ALL))
+                .expectNext(sofa2)
+                .verifyComplete();
+        StepVerifier.create(productRepository.findProjectedByCategory(List.of("Furniture", "Living Room"), false, null, 1, ProductProjection.ALL))
+                .expectNext(sofa1)
+                .verifyComplete();
+    }
+
+    @Test
+    void findProjectedByCategory_readsOnlyProjectedFields() {
+        StepVerifier.create(productRepository.findProjectedByCategory(List.of("Furniture", "Living Room"), false, null, 1,
+                        ProductProjection.of(List.of("name"))))
+                .expectNextMatches(product -> product.getId().equals("1")
+                        && product.getName().equals("Sofa 1")
+                        && product.getDescription() == null
+                        && product.getCategory() == null
+                        && product.getVariants() == null)
+                .verifyComplete();
+    }
+
+    @Test
+    void findProjectedByIds_readsOnlyProjectedFields() {
+        productRepository.pushVariant("2", new Variant("blue", List.of(new Attribute("color", "blue")))).block();
+
+        StepVerifier.create(productRepository.findProjectedByIds(List.of("2", "missing"), ProductProjection.of(List.of("variants.name"))))
+                .expectNextMatches(product -> product.getId().equals("2")
+                        && product.getName() == null
+                        && product.getVariants().equals(List.of(new Variant("blue", null))))
+                .verifyComplete();
+    }
+
+    @Test
+    void givenVariantSlice_whenFindProjectedByIds_thenReadsFromTheAfterVariant() {
+        List<Variant> variants = List.of(new Variant("red", List.of()), new Variant("green", List.of()),
+                new Variant("blue", List.of()), new Variant("black", List.of()));
+        variants.forEach(variant -> productRepository.pushVariant("2", variant).block());
+        ProductProjection projection = ProductProjection.of(List.of("name", "variants.name"));
+
+        StepVerifier.create(productRepository.findProjectedByIds(List.of("2"),
+                        projection.withVariantSlice(new ProductProjection.VariantSlice(2, null))))
+                .expectNextMatches(product -> product.getName().equals("Sofa 2")
+                        && product.getVariants().equals(variants.subList(0, 2)))
+                .verifyComplete();
+        StepVerifier.create(productRepository.findProjectedByIds(List.of("2"),
+                        projection.withVariantSlice(new ProductProjection.VariantSlice(2, "green"))))
+                .expectNextMatches(product -> product.getVariants().equals(variants.subList(1, 4))
+                        && product.variantsAfter("green", 2).equals(variants.subList(2, 4)))
+                .verifyComplete();
+        StepVerifier.create(productRepository.findProjectedByIds(List.of("2"),
+                        projection.withVariantSlice(new ProductProjection.VariantSlice(2, "missing"))))
+                .expectNextMatches(product -> product.variantsAfter("missing", 2).isEmpty())
+                .verifyComplete();
+    }
+
+    @Test
+    void findVariant() {
+        Variant blue = new Variant("blue", List.of(new Attribute("color", "blue")));
+        productRepository.pushVariant("2", new Variant("red", List.of(new Attribute("color", "red")))).block();
+        productRepository.pushVariant("2", blue).block();
+
+        StepVerifier.create(productRepository.findVariant("2", "blue"))
+                .expectNext(blue)
+                .verifyComplete();
+        StepVerifier.create(productRepository.findVariant("2", "green"))
+                .verifyComplete();
+        StepVerifier.create(productRepository.findVariant("missing", "blue"))
+                .verifyComplete();
+    }
+
+    @Test
+    void findProjectedByFilter() {
+        Product stool = new Product("3", "Stool", "Bar stool", List.of(),
+                List.of("Furniture", "Kitchen"), List.of("luxury", "simple"), List.of(), ProductStatus.UPCOMING);
+        productRepository.save(stool).block();
+
+        StepVerifier.create(productRepository.findProjectedByFilter(ProductFilter.NONE, "1", 0, ProductProjection.ALL))
+                .expectNext(sofa2, stool)
+                .verifyComplete();
+        StepVerifier.create(productRepository.findProjectedByFilter(new ProductFilter(List.of("Furniture"), true,
+                        List.of(ProductStatus.AVAILABLE, ProductStatus.UPCOMING), List.of("luxury"), null, null), null, 10, ProductProjection.ALL))
+                .expectNext(sofa2, stool)
+                .verifyComplete();
+        StepVerifier.create(productRepository.findProjectedByFilter(new ProductFilter(List.of("Furniture", "Living Room"), false,
+                        List.of(ProductStatus.AVAILABLE), null, null, "Sofa"), null, 1, ProductProjection.ALL))
+                .expectNext(sofa1)
+                .verifyComplete();
+        StepVerifier.create(productRepository.findProjectedByFilter(new ProductFilter(List.of("Furniture"), false,
+                        null, null, null, null), null, 10, ProductProjection.ALL))
+                .verifyComplete();
+        StepVerifier.create(productRepository.findProjectedByFilter(new ProductFilter(null, null,
+                        null, List.of("simple"), List.of("luxury"), null), null, 10, ProductProjection.of(List.of("name"))))
+                .expectNextMatches(product -> product.getId().equals("3") && product.getDescription() == null)
+                .verifyComplete();
+    }
+
+    @Test
+    void findProjectedByVariantAttributes_matchesAttributesWithinOneVariant() {
+        Variant redLarge = new Variant("red L", List.of(new Attribute("color", "red"), new Attribute("size", "L")));
+        Variant redSmall = new Variant("red S", List.of(new Attribute("color", "red"), new Attribute("size", "S")));
+        Variant blueLarge = new Variant("blue L", List.of(new Attribute("color", "blue"), new Attribute("size", "L")));
+        productRepository.pushVariant("1", redSmall).block();
+        productRepository.pushVariant("1", blueLarge).block();
+        productRepository.pushVariant("2", blueLarge).block();
+        productRepository.pushVariant("2", redLarge).block();
+        List<Attribute> redAndLarge = List.of(new Attribute("color", "red"), new Attribute("size", "L"));
+
+        // sofa 1 has a red variant and a large variant, but no variant that is both
+        StepVerifier.create(productRepository.findProjectedByVariantAttributes(redAndLarge, null, false, null, 10, false, ProductProjection.ALL))
+                .expectNextMatches(product -> product.getId().equals("2") && product.getVariants().size() == 2)
+                .verifyComplete();
+        StepVerifier.create(productRepository.findProjectedByVariantAttributes(List.of(new Attribute("color", "red")),
+                        List.of("Furniture"), true, "1", 10, false, ProductProjection.ALL))
+                .expectNextMatches(product -> product.getId().equals("2"))
+                .verifyComplete();
+        StepVerifier.create(productRepository.findProjectedByVariantAttributes(redAndLarge, List.of("Furniture"), false, null, 10, false, ProductProjection.ALL))
+                .verifyComplete();
+    }
+
+    @Test
+    void findProjectedByVariantAttributes_readsOnlyMatchingVariants() {
+        Variant redLarge = new Variant("red L", List.of(new Attribute("color", "red"), new Attribute("size", "L")));
+        Variant blueLarge = new Variant("blue L", List.of(new Attribute("color", "blue"), new Attribute("size", "L")));
+        Variant redSmall = new Variant("red S", List.of(new Attribute("color", "red"), new Attribute("size", "S")));
+        productRepository.pushVariant("2", blueLarge).block();
+        productRepository.pushVariant("2", redLarge).block();
+        productRepository.pushVariant("2", redSmall).block();
+        List<Attribute> red = List.of(new Attribute("color", "red"));
+
+        StepVerifier.create(productRepository.findProjectedByVariantAttributes(red, null, false, null, 10, true, ProductProjection.ALL))
+                .expectNextMatches(product -> product.getVariants().equals(List.of(redLarge, redSmall))
+                        && product.getName().equals("Sofa 2")
+                        && product.getCategory().equals(List.of("Furniture", "Living Room")))
+                .verifyComplete();
+        StepVerifier.create(productRepository.findProjectedByVariantAttributes(red, null, false, null, 10, true,
+                        ProductProjection.of(List.of("name", "variants.name"))))
+                .expectNextMatches(product -> product.getVariants().equals(List.of(redLarge, redSmall))
+                        && product.getName().equals("Sofa 2")
+                        && product.getDescription() == null)
+                .verifyComplete();
+        StepVerifier.create(productRepository.findProjectedByVariantAttributes(List.of(new Attribute("color", "red"), new Attribute("size", "L")),
+                        null, false, null, 10, true, ProductProjection.ALL))
+                .expectNextMatches(product -> product.getVariants().equals(List.of(redLarge)))
+                .verifyComplete();
+    }
+
+    @Test
+    void findProjectedByVariantAttributes_readsOnlyMatchingVariantsInCategory() {
+        Variant redLarge = new Variant("red L", List.of(new Attribute("color", "red"), new Attribute("size", "L")));
+        Variant blueLarge = new Variant("blue L", List.of(new Attribute("color", "blue"), new Attribute("size", "L")));
+        Variant redSmall = new Variant("red S", List.of(new Attribute("color", "red"), new Attribute("size", "S")));
+        productRepository.pushVariant("1", blueLarge).block();
+        productRepository.pushVariant("2", blueLarge).block();
+        productRepository.pushVariant("2", redSmall).block();
+        productRepository.pushVariant("2", redLarge).block();
+        List<Attribute> red = List.of(new Attribute("color", "red"));
+
+        StepVerifier.create(productRepository.findProjectedByVariantAttributes(red, List.of("Furniture", "Living Room"), false, null, 10, true,
+                        ProductProjection.ALL))
+                .expectNextMatches(product -> product.getId().equals("2") && product.getVariants().equals(List.of(redSmall, redLarge)))
+                .verifyComplete();
+        StepVerifier.create(productRepository.findProjectedByVariantAttributes(red, List.of("Furniture"), true, null, 10, true,
+                        ProductProjection.ALL))
+                .expectNextMatches(product -> product.getId().equals("2") && product.getVariants().equals(List.of(redSmall, redLarge)))
+                .verifyComplete();
+    }
+
+    @Test
+    void searchProducts_ranksByWeightedRelevance() {
+        Product leather = new Product("3", "Leather armchair", "Pairs well with any sofa", List.of(),
+                List.of("Furniture", "Kitchen"), List.of("leather"), List.of(), ProductStatus.AVAILABLE);
+        Product tagged = new Product("4", "Loveseat", "Two seats", List.of(),
+                List.of("Furniture", "Living Room"), List.of("sofa"), List.of(), ProductStatus.AVAILABLE);
+        productRepository.saveAll(List.of(leather, tagged)).blockLast();
+
+        List<Product> results = productRepository.searchProducts("sofa", null, null, null, 10, ProductProjection.ALL).collectList().block();
+
+        // name matches weigh 10, tags 5 and the description 1
+        assertThat(results.stream().map(Product::getId).toList(), is(List.of("1", "2", "4", "3")));
+        assertThat(results.get(0).getScore() > results.get(2).getScore(), is(true));
+        assertThat(results.get(2).getScore() > results.get(3).getScore(), is(true));
+    }
+
+    @Test
+    void searchProducts_pagesAfterScoreAndId() {
+        Product first = productRepository.searchProducts("sofa", null, null, null, 1, ProductProjection.ALL).blockFirst();
+
+        StepVerifier.create(productRepository.searchProducts("sofa", null, first.getScore(), first.getId(), 10, ProductProjection.ALL))
+                .expectNextMatches(product -> product.getId().equals("2"))
+                .verifyComplete();
+    }
+
+    @Test
+    void searchProducts_inCategory_withProjection() {
+        StepVerifier.create(productRepository.searchProducts("sofa", CategoryPath.of(List.of("Furniture", "Kitchen")), null, null, 10, ProductProjection.ALL))
+                .verifyComplete();
+        StepVerifier.create(productRepository.searchProducts("sofa", CategoryPath.of(List.of("Furniture")), null, null, 1,
+                        ProductProjection.of(List.of("name"))))
+                .expectNextMatches(product -> product.getName().equals("Sofa 1")
+                        && product.getScore() != null
+                        && product.getDescription() == null)
+                .verifyComplete();
+    }
+
+    @Test
+    void findFacets_countsSubtreePerTagStatusAndChildCategory() {
+        Product stool = new Product("3", "Stool", "Bar stool", List.of(),
+                List.of("Furniture", "Kitchen"), List.of("luxury", "simple"), List.of(), ProductStatus.UPCOMING);
+        Product bench = new Product("4", "Bench", "Garden bench", List.of(),
+                List.of("Furniture"), List.of("luxury"), List.of(), ProductStatus.AVAILABLE);
+        productRepository.saveAll(List.of(stool, bench)).blockLast();
+
+        ProductFacets facets = productRepository.findFacets(List.of("Furniture"), null, 10).block();
+
+        assertThat(facets.total(), is(4L));
+        assertThat(facets.tags(), is(List.of(new ProductFacets.FacetCount("luxury", 3), new ProductFacets.FacetCount("simple", 2))));
+        assertThat(facets.statuses(), is(List.of(new ProductFacets.FacetCount("AVAILABLE", 3), new ProductFacets.FacetCount("UPCOMING", 1))));
+        // the bench sits in Furniture itself, so it has no child category
+        assertThat(facets.subCategories(), is(List.of(new ProductFacets.FacetCount("Living Room", 2), new ProductFacets.FacetCount("Kitchen", 1))));
+    }
+
+    @Test
+    void findFacets_withFilter() {
+        StepVerifier.create(productRepository.findFacets(List.of("Furniture"), new ProductFilter(null, null, List.of(ProductStatus.AVAILABLE), List.of("simple", "luxury"), null, "Sofa"), 1))
+                .expectNextMatches(facets -> facets.total() == 2 && facets.tags().size() == 1)
+                .verifyComplete();
+        StepVerifier.create(productRepository.findFacets(List.of("Furniture"), new ProductFilter(null, null, null, null, List.of("simple", "luxury"), null), 10))
+                .expectNext(ProductFacets.EMPTY)
+                .verifyComplete();
+        StepVerifier.create(productRepository.findFacets(List.of("Furniture"), new ProductFilter(null, null, null, List.of("luxury"), List.of("luxury"), "Sofa ."), 10))
+                .expectNext(ProductFacets.EMPTY)
+                .verifyComplete();
+        StepVerifier.create(productRepository.findFacets(List.of("Furniture"), new ProductFilter(null, null, null, List.of("luxury"), List.of("luxury"), "Sofa 2"), 10))
+                .expectNextMatches(facets -> facets.total() == 1)
+                .verifyComplete();
+    }
+
+    @Test
+    void findFacets_withFilterCategory_countsOnlyThatCategory() {
+        Product stool = new Product("3", "Stool", "Bar stool", List.of(),
+                List.of("Furniture", "Kitchen"), List.of("simple"), List.of(), ProductStatus.UPCOMING);
+        productRepository.save(stool).block();
+
+        ProductFacets kitchen = productRepository.findFacets(List.of("Furniture"),
+                new ProductFilter(List.of("Furniture", "Kitchen"), true, null, null, null, null), 10).block();
+        ProductFacets livingRoom = productRepository.findFacets(List.of("Furniture"),
+                new ProductFilter(List.of("Furniture", "Living Room"), false, null, null, null, null), 10).block();
+
+        assertThat(kitchen.total(), is(1L));
+        assertThat(kitchen.statuses(), is(List.of(new ProductFacets.FacetCount("UPCOMING", 1))));
+        assertThat(livingRoom.total(), is(2L));
+        assertThat(livingRoom.subCategories(), is(List.of(new ProductFacets.FacetCount("Living Room", 2))));
+        StepVerifier.create(productRepository.findFacets(List.of("Furniture", "Living Room"),
+                        new ProductFilter(List.of("Furniture", "Kitchen"), true, null, null, null, null), 10))
+                .expectNext(ProductFacets.EMPTY)
+                .verifyComplete();
+    }
+
+    @Test
+    void insertUnordered() {
+        Product sofa3 = new Product(
+                "Sofa 3",
+                "L-shaped sofa",
+                List.of(),
+                List.of("Furniture", "Living Room"),
+                List.of("luxury"),
+                List.of(),
+                ProductStatus.AVAILABLE);
+        Product duplicate = new Product(
+                "1",
+                "Sofa 1",
+                "2 seater sofa",
+                List.of(),
+                List.of("Furniture", "Living Room"),
+                List.of("simple"),
+                List.of(),
+                ProductStatus.AVAILABLE);
+
+        StepVerifier.create(productRepository.insertUnordered(List.of(duplicate, sofa3)))
+                .expectNext(Map.of(0, "Product already exists"))
+                .verifyComplete();
+        StepVerifier.create(productRepository.findById(sofa3.getId()))
+                .expectNextMatches(product -> product.getName().equals("Sofa 3"))
+                .verifyComplete();
+    }
+
+    @Test
+    void pushVariant() {
+        Variant variant = new Variant("blue", List.of(new Attribute("colour", "blue")));
+        StepVerifier.create(productRepository.pushVariant("1", variant))
+                .expectNextMatches(product -> product.getVariants().equals(List.of(variant)))
+                .verifyComplete();
+        StepVerifier.create(productRepository.pushVariant("1", new Variant("blue", List.of())))
+                .verifyComplete();
+        StepVerifier.create(productRepository.pushVariant("missing", variant))
+                .verifyComplete();
+    }
+
+    @Test
+    void backfillCategoryPaths_setsOnlyThePaths() {
+        reactiveMongoTemplate.getCollection("product")
+                .flatMap(collection -> Mono.from(collection.insertOne(new Document("_id", "3")
+                        .append("name", "Stool")
+                        .append("category", List.of("Furniture", "Kitchen"))
+                        .append("variants", List.of(new Document("name", "blue"))))))
+                .block();
+
+        StepVerifier.create(productRepository.backfillCategoryPaths())
+                .expectNext(1L)
+                .verifyComplete();
+        StepVerifier.create(productRepository.findById("3"))
+                .expectNextMatches(product -> product.getCategoryPath().equals(CategoryPath.of(List.of("Furniture", "Kitchen")))
+                        && product.getCategoryAncestors().equals(CategoryPath.ancestors(List.of("Furniture", "Kitchen")))
+                        && product.getVariants().equals(List.of(new Variant("blue", null))))
+                .verifyComplete();
+        StepVerifier.create(productRepository.backfillCategoryPaths())
+                .expectNext(0L)
+                .verifyComplete();
+    }
+
+    @Test
+    void appendVariant() {
+        Variant variant = new Variant("blue", List.of(new Attribute("colour", "blue")));
+        StepVerifier.create(productRepository.appendVariant("1", variant))
+                .expectNext(true)
+                .verifyComplete();
+        StepVerifier.create(productRepository.appendVariant("1", new Variant("blue", List.of())))
+                .expectNext(false)
+                .verifyComplete();
+        StepVerifier.create(productRepository.appendVariant("missing", variant))
+                .expectNext(false)
+                .verifyComplete();
+        StepVerifier.create(productRepository.findById("1"))
+                .expectNextMatches(product -> product.getVariants().equals(List.of(variant)))
+                .verifyComplete();
+    }
+
+    @Test
+    void givenParallelPushes_whenPushVariant_thenNoUpdateIsLost() {
+        int variants = 300;
+        Flux<Product> pushes = Flux.range(0, variants)
+                .flatMap(i -> productRepository.pushVariant("2", new Variant("variant " + i, List.of()))
+                        .subscribeOn(Schedulers.parallel()), variants);
+        StepVerifier.create(pushes)
+                .expectNextCount(variants)
+                .verifyComplete();
+        StepVerifier.create(productRepository.findById("2"))
+                .expectNextMatches(product -> product.getVariants().size() == variants &&
+                        product.getVariants().stream().map(Variant::name).distinct().count() == variants)
+                .verifyComplete();
+    }
+
+    @Test
+    void givenParallelPushesOfSameName_whenPushVariant_thenOnlyOneSucceeds() {
+        int attempts = 200;
+        Flux<Product> pushes = Flux.range(0, attempts)
+                .flatMap(i -> productRepository.pushVariant("1", new Variant("same name", List.of()))
+                        .subscribeOn(Schedulers.parallel()), attempts);
+        StepVerifier.create(pushes)
+                .expectNextCount(1)
+                .verifyComplete();
+        StepVerifier.create(productRepository.findById("1"))
+                .expectNextMatches(product -> product.getVariants().size() == 1)
+                .verifyComplete();
+    }
+
     @Test
     void findById(){
         Mono<Product> productMono = productRepository.findById("2");
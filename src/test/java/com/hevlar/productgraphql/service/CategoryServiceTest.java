@@ -2,17 +2,22 @@ package com.hevlar.productgraphql.service;
 
 import com.hevlar.productgraphql.model.Category;
 import com.hevlar.productgraphql.repository.CategoryRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.test.StepVerifier;
 
+import java.time.Duration;
 import java.util.List;
 
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Mockito.*;
@@ -23,9 +28,16 @@ class CategoryServiceTest {
     @Mock
     CategoryRepository categoryRepository;
 
-    @InjectMocks
+    MeterRegistry meterRegistry;
+
     CategoryService categoryService;
 
+    @BeforeEach
+    void setup(){
+        meterRegistry = new SimpleMeterRegistry();
+        categoryService = new CategoryService(categoryRepository, meterRegistry, Duration.ofMinutes(1));
+    }
+
     @Test
     void whenGetTopCategory_shouldReturnCorrectly(){
         Category categoryFromRepo = new Category("Furniture", List.of());
@@ -150,6 +162,7 @@ class CategoryServiceTest {
     @Test
     void whenExistingCategoryNotExist_whenAddCategoryToExisting_thenThrow(){
         Category testCategory = new Category("Test", List.of());
+        given(categoryRepository.pushSubCategory(List.of("Missing"), testCategory)).willReturn(Mono.empty());
         given(categoryRepository.findByName("Missing")).willReturn(Mono.empty());
 
         Mono<Category> categoryMono = categoryService.addCategoryToExisting(testCategory, List.of("Missing"));
@@ -162,6 +175,7 @@ class CategoryServiceTest {
     void whenExistingCategoryTargetNotExist_whenAddCategoryToExisting_thenThrow(){
         Category testCategory = new Category("Test", List.of());
         Category furnitureCategory = new Category("Furniture", List.of());
+        given(categoryRepository.pushSubCategory(List.of("Furniture", "Missing"), testCategory)).willReturn(Mono.empty());
         given(categoryRepository.findByName("Furniture")).willReturn(Mono.just(furnitureCategory));
 
         Mono<Category> categoryMono = categoryService.addCategoryToExisting(testCategory, List.of("Furniture", "Missing"));
@@ -174,6 +188,7 @@ class CategoryServiceTest {
     void whenExistingCategoryAlreadyExistInTarget_whenAddCategoryToExisting_thenThrow(){
         Category testCategory = new Category("Test", List.of());
         Category furnitureCategory = new Category("Furniture", List.of(testCategory));
+        given(categoryRepository.pushSubCategory(List.of("Furniture"), testCategory)).willReturn(Mono.empty());
         given(categoryRepository.findByName("Furniture")).willReturn(Mono.just(furnitureCategory));
 
         Mono<Category> categoryMono = categoryService.addCategoryToExisting(testCategory, List.of("Furniture"));
@@ -187,20 +202,33 @@ class CategoryServiceTest {
         Category testCategory = new Category("Test", List.of());
         Category livingRoomCategory = new Category("Living Room", List.of());
         Category furnitureCategory = new Category("Furniture", List.of(livingRoomCategory));
-        given(categoryRepository.findByName("Furniture")).willReturn(Mono.just(furnitureCategory));
-        given(categoryRepository.save(any())).willReturn(Mono.just(furnitureCategory));
+        given(categoryRepository.pushSubCategory(List.of("Furniture", "Living Room"), testCategory)).willReturn(Mono.just(furnitureCategory));
 
         Mono<Category> categoryMono = categoryService.addCategoryToExisting(testCategory, List.of("Furniture", "Living Room"));
         StepVerifier.create(categoryMono)
                 .expectNextCount(1)
                 .verifyComplete();
+        verify(categoryRepository, never()).save(any());
+    }
+
+    @Test
+    void whenPushMissesButTreeLooksValid_whenAddCategoryToExisting_thenThrow(){
+        Category testCategory = new Category("Test", List.of());
+        Category furnitureCategory = new Category("Furniture", List.of());
+        given(categoryRepository.pushSubCategory(List.of("Furniture"), testCategory)).willReturn(Mono.empty());
+        given(categoryRepository.findByName("Furniture")).willReturn(Mono.just(furnitureCategory));
+
+        Mono<Category> categoryMono = categoryService.addCategoryToExisting(testCategory, List.of("Furniture"));
+        StepVerifier.create(categoryMono)
+                .expectErrorMessage("Category was modified concurrently, please retry")
+                .verify();
     }
 
     @Test
     void givenCategoryHierarchyIsValid_whenValidateCategoryHierarchy_thenReturnCategory(){
         Category testCategory = new Category("Test", List.of());
         Category furnitureCategory = new Category("Furniture", List.of(testCategory));
-        given(categoryRepository.findByName("Furniture")).willReturn(Mono.just(furnitureCategory));
+        given(categoryRepository.findAll()).willReturn(Flux.just(furnitureCategory));
 
         Mono<Category> categoryMono = categoryService.validateCategoryHierarchy(List.of("Furniture", "Test"));
         StepVerifier.create(categoryMono)
@@ -211,7 +239,7 @@ class CategoryServiceTest {
     @Test
     void givenCategoryHierarchyIsOnly1Level_whenValidateCategoryHierarchy_thenReturnCategory(){
         Category furnitureCategory = new Category("Furniture", List.of());
-        given(categoryRepository.findByName("Furniture")).willReturn(Mono.just(furnitureCategory));
+        given(categoryRepository.findAll()).willReturn(Flux.just(furnitureCategory));
 
         Mono<Category> categoryMono = categoryService.validateCategoryHierarchy(List.of("Furniture"));
         StepVerifier.create(categoryMono)
@@ -225,7 +253,7 @@ class CategoryServiceTest {
         Category coffeeTableCategory = new Category("Coffee Table", List.of());
         Category livingRoomCategory = new Category("Living Room", List.of(sofaCategory, coffeeTableCategory));
         Category furnitureCategory = new Category("Furniture", List.of(livingRoomCategory));
-        given(categoryRepository.findByName("Furniture")).willReturn(Mono.just(furnitureCategory));
+        given(categoryRepository.findAll()).willReturn(Flux.just(furnitureCategory));
 
         Mono<Category> categoryMono = categoryService.validateCategoryHierarchy(List.of("Furniture", "Living Room", "Sofa"));
         StepVerifier.create(categoryMono)
@@ -251,10 +279,109 @@ class CategoryServiceTest {
 
     @Test
     void givenCategoryHierarchyIsInvalid_whenValidateCategoryHierarchy_thenThrow(){
-        given(categoryRepository.findByName(anyString())).willReturn(Mono.empty());
+        given(categoryRepository.findAll()).willReturn(Flux.empty());
         Mono<Category> categoryMono = categoryService.validateCategoryHierarchy(List.of("something"));
         StepVerifier.create(categoryMono)
                 .expectErrorMessage("Category not found")
                 .verify();
     }
+
+    @Test
+    void givenSnapshotLoaded_whenValidateCategoryHierarchy_thenRepositoryIsNotQueriedAgain(){
+        Category livingRoomCategory = new Category("Living Room", List.of());
+        Category furnitureCategory = new Category("Furniture", List.of(livingRoomCategory));
+        given(categoryRepository.findAll()).willReturn(Flux.just(furnitureCategory));
+
+        StepVerifier.create(categoryService.validateCategoryHierarchy(List.of("Furniture")))
+                .expectNext(furnitureCategory)
+                .verifyComplete();
+        StepVerifier.create(categoryService.validateCategoryHierarchy(List.of("Furniture", "Living Room")))
+                .expectNext(livingRoomCategory)
+                .verifyComplete();
+        verify(categoryRepository, times(1)).findAll();
+        verify(categoryRepository, never()).findByName(anyString());
+    }
+
+    @Test
+    void givenCategoryMissingFromSnapshot_whenValidateCategoryHierarchy_thenSnapshotIsReloaded(){
+        Category furnitureCategory = new Category("Furniture", List.of());
+        Category kitchenCategory = new Category("Kitchen", List.of());
+        given(categoryRepository.findAll())
+                .willReturn(Flux.just(furnitureCategory))
+                .willReturn(Flux.just(furnitureCategory, kitchenCategory));
+
+        StepVerifier.create(categoryService.validateCategoryHierarchy(List.of("Furniture")))
+                .expectNext(furnitureCategory)
+                .verifyComplete();
+        StepVerifier.create(categoryService.validateCategoryHierarchy(List.of("Kitchen")))
+                .expectNext(kitchenCategory)
+                .verifyComplete();
+        verify(categoryRepository, times(2)).findAll();
+    }
+
+    @Test
+    void givenRepeatedMisses_whenValidateCategoryHierarchy_thenSnapshotIsReloadedOncePerInterval(){
+        Category furnitureCategory = new Category("Furniture", List.of());
+        given(categoryRepository.findAll()).willReturn(Flux.just(furnitureCategory));
+
+        for(int i = 0; i < 5; i++){
+            StepVerifier.create(categoryService.validateCategoryHierarchy(List.of("Unknown " + i)))
+                    .expectErrorMessage("Category not found")
+                    .verify();
+        }
+        // the initial load and a single miss reload
+        verify(categoryRepository, times(2)).findAll();
+    }
+
+    @Test
+    void whenAddTopCategory_thenSnapshotIsUpdated(){
+        Category existingCategory = new Category("Furniture", List.of());
+        Category testCategory = new Category("Test", List.of());
+        given(categoryRepository.findAll()).willReturn(Flux.just(existingCategory));
+        given(categoryRepository.findByName("Test")).willReturn(Mono.empty());
+        given(categoryRepository.save(testCategory)).willReturn(Mono.just(testCategory));
+
+        StepVerifier.create(categoryService.getCategories())
+                .expectNext(existingCategory)
+                .verifyComplete();
+        StepVerifier.create(categoryService.addTopCategory(testCategory))
+                .expectNext(testCategory)
+                .verifyComplete();
+        StepVerifier.create(categoryService.getCategories())
+                .expectNext(existingCategory, testCategory)
+                .verifyComplete();
+        verify(categoryRepository, times(1)).findAll();
+        assertThat(meterRegistry.get("category.snapshot.version").gauge().value(), is(2.0));
+    }
+
+    @Test
+    void givenDepth_whenGetCategories_thenReturnTopCategoriesCutAtDepth(){
+        Category furniture = new Category("Furniture", List.of(new Category("Living Room", List.of(new Category("Sofa", List.of())))));
+        given(categoryRepository.findAll()).willReturn(Flux.just(furniture));
+
+        StepVerifier.create(categoryService.getCategories(1))
+                .expectNextMatches(category -> category.getSubCategories().size() == 1
+                        && category.getSubCategories().get(0).getSubCategories().isEmpty())
+                .verifyComplete();
+        StepVerifier.create(categoryService.getCategories(-1))
+                .expectErrorMessage("Depth must not be negative")
+                .verify();
+    }
+
+    @Test
+    void whenGetCategory_thenReturnSubtreeFromSnapshot(){
+        Category furniture = new Category("Furniture", List.of(new Category("Living Room", List.of(new Category("Sofa", List.of())))));
+        given(categoryRepository.findAll()).willReturn(Flux.just(furniture));
+
+        StepVerifier.create(categoryService.getCategory(List.of("Furniture", "Living Room"), null))
+                .expectNextMatches(category -> category.getName().equals("Living Room") && category.hasSubCategory("Sofa"))
+                .verifyComplete();
+        StepVerifier.create(categoryService.getCategory(List.of("Furniture", "Living Room"), 0))
+                .expectNextMatches(category -> category.getName().equals("Living Room") && category.getSubCategories().isEmpty())
+                .verifyComplete();
+        StepVerifier.create(categoryService.getCategory(List.of("Furniture", "Garage"), 0))
+                .expectErrorMessage("Existing category provided doesn't exist")
+                .verify();
+        verify(categoryRepository, times(2)).findAll();
+    }
 }
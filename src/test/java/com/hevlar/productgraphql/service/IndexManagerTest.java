@@ -0,0 +1,120 @@
+package com.hevlar.productgraphql.service;
+
+import com.hevlar.productgraphql.model.Product;
+import com.hevlar.productgraphql.repository.ReactiveMongoTestConfiguration;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.data.mongodb.core.index.TextIndexDefinition;
+import org.springframework.test.context.ContextConfiguration;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+
+@DataMongoTest
+@Testcontainers
+@ContextConfiguration(classes = {ReactiveMongoTestConfiguration.class})
+class IndexManagerTest {
+
+    @Autowired
+    ReactiveMongoTemplate reactiveMongoTemplate;
+
+    MeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setup(){
+        meterRegistry = new SimpleMeterRegistry();
+        reactiveMongoTemplate.dropCollection(Product.class).block();
+    }
+
+    @AfterEach
+    void tearDown(){
+        // leave the declared indexes for the other tests
+        new IndexManager(reactiveMongoTemplate, new SimpleMeterRegistry(), true, Duration.ZERO).reconcile().block();
+    }
+
+    private List<String> productIndexNames(){
+        return reactiveMongoTemplate.indexOps(Product.class).getIndexInfo().map(IndexInfo::getName).collectList().block();
+    }
+
+    private double drift(String kind){
+        return meterRegistry.get("mongodb.indexes.drift").tag("kind", kind).gauge().value();
+    }
+
+    @Test
+    void givenNoIndexes_whenReconcile_thenBuildDeclaredIndexes(){
+        IndexManager indexManager = new IndexManager(reactiveMongoTemplate, meterRegistry, false, Duration.ZERO);
+        IndexHealthIndicator healthIndicator = new IndexHealthIndicator(indexManager);
+        assertThat(healthIndicator.health().getStatus(), is(Status.UNKNOWN));
+
+        IndexManager.IndexState state = indexManager.reconcile().block();
+
+        assertThat(state.inSync(), is(true));
+        assertThat(productIndexNames(), hasItem("Product_TextIndex"));
+        assertThat(productIndexNames(), hasItem("variants_attributeList"));
+        assertThat(healthIndicator.health().getStatus(), is(Status.UP));
+        assertThat(drift("missing"), is(0.0));
+
+        // built indexes match their declaration, so a second check finds nothing to do
+        assertThat(indexManager.reconcile().block().inSync(), is(true));
+    }
+
+    @Test
+    void givenDriftedIndexes_whenReconcile_thenReportWithoutDropping(){
+        reactiveMongoTemplate.indexOps(Product.class).ensureIndex(new Index("description", Sort.Direction.ASC).named("legacy")).block();
+        reactiveMongoTemplate.indexOps(Product.class).ensureIndex(new Index("status", Sort.Direction.DESC).named("status_id")).block();
+        IndexManager indexManager = new IndexManager(reactiveMongoTemplate, meterRegistry, false, Duration.ZERO);
+
+        IndexManager.IndexState state = indexManager.reconcile().block();
+
+        assertThat(state.stale(), is(List.of("product.legacy")));
+        assertThat(state.mismatched(), is(List.of("product.status_id")));
+        assertThat(state.missing(), is(List.of()));
+        assertThat(productIndexNames(), hasItem("legacy"));
+        assertThat(drift("stale"), is(1.0));
+        assertThat(drift("mismatched"), is(1.0));
+        assertThat(new IndexHealthIndicator(indexManager).health().getStatus(), is(IndexHealthIndicator.DRIFT));
+    }
+
+    @Test
+    void givenDropStale_whenReconcile_thenDropStaleAndRebuildMismatched(){
+        reactiveMongoTemplate.indexOps(Product.class).ensureIndex(new Index("description", Sort.Direction.ASC).named("legacy")).block();
+        reactiveMongoTemplate.indexOps(Product.class).ensureIndex(new Index("status", Sort.Direction.DESC).named("status_id")).block();
+        IndexManager indexManager = new IndexManager(reactiveMongoTemplate, meterRegistry, true, Duration.ZERO);
+
+        IndexManager.IndexState state = indexManager.reconcile().block();
+
+        assertThat(state.inSync(), is(true));
+        assertThat(productIndexNames(), not(hasItem("legacy")));
+        assertThat(new IndexManager(reactiveMongoTemplate, new SimpleMeterRegistry(), false, Duration.ZERO).reconcile().block().inSync(), is(true));
+    }
+
+    @Test
+    void matches_comparesTextIndexesByWeight(){
+        TextIndexDefinition declared = TextIndexDefinition.builder().named("text")
+                .onField("name", 10F).onField("tags", 5F).onField("description", 1F).onField("summary").build();
+        Document existing = new Document("name", "text")
+                .append("key", new Document("_fts", "text").append("_ftsx", 1))
+                .append("weights", new Document("tags", 5).append("name", 10).append("description", 1).append("summary", 1));
+
+        assertThat(IndexManager.matches(declared, existing), is(true));
+        assertThat(IndexManager.matches(declared, existing.append("weights", new Document("name", 10).append("tags", 5).append("description", 1))), is(false));
+        assertThat(IndexManager.matches(declared, existing.append("weights", new Document("name", 10).append("tags", 5))), is(false));
+    }
+}
@@ -0,0 +1,103 @@
+package com.hevlar.productgraphql.service;
+
+import com.hevlar.productgraphql.model.Product;
+import com.hevlar.productgraphql.model.ProductStatus;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+class ProductCacheTest {
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    ProductCache productCache = new ProductCache(true, 100, Duration.ofMinutes(5), meterRegistry);
+    Product sofa1 = product("1", "Sofa 1");
+    Product sofa2 = product("2", "Sofa 2");
+    AtomicInteger loads = new AtomicInteger();
+
+    static Product product(String id, String name){
+        return new Product(id, name, null, List.of(), List.of("Furniture", "Living Room"), List.of(), List.of(), ProductStatus.AVAILABLE);
+    }
+
+    Mono<Product> load(Product product){
+        return Mono.fromSupplier(() -> {
+            loads.incrementAndGet();
+            return product;
+        });
+    }
+
+    @Test
+    void whenGetTwice_thenLoadOnce() {
+        StepVerifier.create(productCache.get("1", id -> load(sofa1))).expectNext(sofa1).verifyComplete();
+        StepVerifier.create(productCache.get("1", id -> load(sofa1))).expectNext(sofa1).verifyComplete();
+
+        assertThat(loads.get(), is(1));
+        assertThat(meterRegistry.get("cache.gets").tag("cache", "products").tag("result", "hit").functionCounter().count(), is(1.0));
+    }
+
+    @Test
+    void givenMissingProduct_whenGetTwice_thenLoadTwice() {
+        StepVerifier.create(productCache.get("9", id -> load(null))).verifyComplete();
+        StepVerifier.create(productCache.get("9", id -> load(null))).verifyComplete();
+
+        assertThat(loads.get(), is(2));
+    }
+
+    @Test
+    void whenInvalidate_thenLoadAgain() {
+        productCache.get("1", id -> load(sofa1)).block();
+        productCache.invalidate("1");
+        productCache.get("1", id -> load(sofa1)).block();
+
+        assertThat(loads.get(), is(2));
+    }
+
+    @Test
+    void givenInvalidatedWhileLoading_whenLoadCompletes_thenLoadedProductIsNotCached() {
+        Sinks.One<Product> staleRead = Sinks.one();
+        Mono<Product> pending = productCache.get("1", id -> staleRead.asMono()).cache();
+        pending.subscribe();
+
+        productCache.invalidate("1");
+        staleRead.tryEmitValue(sofa1);
+
+        StepVerifier.create(pending).expectNext(sofa1).verifyComplete();
+        StepVerifier.create(productCache.get("1", id -> load(sofa2))).expectNext(sofa2).verifyComplete();
+    }
+
+    @Test
+    void whenGetAll_thenLoadOnlyMissingProducts() {
+        productCache.get("1", id -> load(sofa1)).block();
+        List<Set<String>> requested = new ArrayList<>();
+
+        StepVerifier.create(productCache.getAll(List.of("1", "2", "9"), ids -> {
+                    requested.add(ids);
+                    return Mono.just(Map.of("2", sofa2));
+                }))
+                .expectNext(Map.of("1", sofa1, "2", sofa2))
+                .verifyComplete();
+
+        assertThat(requested, is(List.of(Set.of("2", "9"))));
+    }
+
+    @Test
+    void givenDisabled_whenGet_thenAlwaysLoad() {
+        ProductCache disabled = ProductCache.disabled();
+        disabled.get("1", id -> load(sofa1)).block();
+        disabled.get("1", id -> load(sofa1)).block();
+
+        assertThat(disabled.isEnabled(), is(false));
+        assertThat(loads.get(), is(2));
+    }
+}
@@ -0,0 +1,106 @@
+package com.hevlar.productgraphql.service;
+
+import com.hevlar.productgraphql.model.Category;
+import com.hevlar.productgraphql.model.ProductFacets;
+import com.hevlar.productgraphql.model.ProductFilter;
+import com.hevlar.productgraphql.model.ProductStatus;
+import com.hevlar.productgraphql.repository.ProductRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ProductFacetServiceTest {
+
+    @Mock
+    ProductRepository productRepository;
+
+    @Mock
+    CategoryService categoryService;
+
+    Category livingRoom = new Category("Living Room", List.of());
+    Category furniture = new Category("Furniture", List.of(livingRoom));
+    ProductFilter available = new ProductFilter(null, null, List.of(ProductStatus.AVAILABLE), null, null, null);
+    ProductFacets facets = new ProductFacets(2,
+            List.of(new ProductFacets.FacetCount("luxury", 2)),
+            List.of(new ProductFacets.FacetCount("AVAILABLE", 2)),
+            List.of(new ProductFacets.FacetCount("Living Room", 2)));
+
+    ProductFacetService productFacetService(Duration ttl){
+        return new ProductFacetService(productRepository, categoryService, 50, ttl, 100, new SimpleMeterRegistry());
+    }
+
+    @Test
+    void givenCacheTtl_whenGetSameFacetsTwice_thenAggregateOnce() {
+        given(categoryService.validateCategoryHierarchy(anyList())).willReturn(Mono.just(furniture));
+        given(productRepository.findFacets(List.of("Furniture"), available, 50)).willReturn(Mono.just(facets));
+        ProductFacetService productFacetService = productFacetService(Duration.ofMinutes(1));
+
+        StepVerifier.create(productFacetService.getProductFacets(List.of("Furniture"), available))
+                .expectNext(facets)
+                .verifyComplete();
+        StepVerifier.create(productFacetService.getProductFacets(List.of("Furniture"), new ProductFilter(null, null, List.of(ProductStatus.AVAILABLE), null, null, null)))
+                .expectNext(facets)
+                .verifyComplete();
+        verify(productRepository, times(1)).findFacets(List.of("Furniture"), available, 50);
+    }
+
+    @Test
+    void givenDifferentFilter_whenGetFacets_thenAggregateAgain() {
+        given(categoryService.validateCategoryHierarchy(anyList())).willReturn(Mono.just(furniture));
+        given(productRepository.findFacets(eq(List.of("Furniture")), any(), eq(50))).willReturn(Mono.just(facets));
+        ProductFacetService productFacetService = productFacetService(Duration.ofMinutes(1));
+
+        productFacetService.getProductFacets(List.of("Furniture"), available).block();
+        productFacetService.getProductFacets(List.of("Furniture"), null).block();
+
+        verify(productRepository).findFacets(List.of("Furniture"), available, 50);
+        verify(productRepository).findFacets(List.of("Furniture"), null, 50);
+    }
+
+    @Test
+    void givenZeroTtl_whenGetSameFacetsTwice_thenAggregateTwice() {
+        given(categoryService.validateCategoryHierarchy(anyList())).willReturn(Mono.just(furniture));
+        given(productRepository.findFacets(List.of("Furniture"), null, 50)).willReturn(Mono.just(facets));
+        ProductFacetService productFacetService = productFacetService(Duration.ZERO);
+
+        productFacetService.getProductFacets(List.of("Furniture"), null).block();
+        productFacetService.getProductFacets(List.of("Furniture"), null).block();
+
+        verify(productRepository, times(2)).findFacets(List.of("Furniture"), null, 50);
+    }
+
+    @Test
+    void givenFailedAggregation_whenGetFacetsAgain_thenRetry() {
+        given(categoryService.validateCategoryHierarchy(anyList())).willReturn(Mono.just(furniture));
+        given(productRepository.findFacets(List.of("Furniture"), null, 50))
+                .willReturn(Mono.error(new IllegalStateException("timeout")), Mono.just(facets));
+        ProductFacetService productFacetService = productFacetService(Duration.ofMinutes(1));
+
+        StepVerifier.create(productFacetService.getProductFacets(List.of("Furniture"), null))
+                .expectErrorMessage("timeout")
+                .verify();
+        StepVerifier.create(productFacetService.getProductFacets(List.of("Furniture"), null))
+                .expectNext(facets)
+                .verifyComplete();
+    }
+
+    @Test
+    void givenCategoryHierarchyIsEmpty_whenGetFacets_thenThrow() {
+        StepVerifier.create(productFacetService(Duration.ofMinutes(1)).getProductFacets(List.of(), null))
+                .expectErrorMessage("Category hierarchy is empty")
+                .verify();
+        verifyNoInteractions(productRepository);
+    }
+}
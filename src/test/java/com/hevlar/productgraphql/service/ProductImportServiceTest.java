@@ -0,0 +1,149 @@
+package com.hevlar.productgraphql.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hevlar.productgraphql.model.*;
+import com.hevlar.productgraphql.repository.ProductRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ProductImportServiceTest {
+
+    @Mock
+    ProductRepository productRepository;
+
+    @Mock
+    CategoryService categoryService;
+
+    ProductImportService productImportService;
+
+    Category livingRoom = new Category("Living Room", List.of());
+
+    @BeforeEach
+    void setup(){
+        productImportService = new ProductImportService(productRepository, categoryService, new ObjectMapper(), 2);
+    }
+
+    Product product(String name, List<String> category){
+        return new Product(name, name, List.of(), category, List.of(), List.of(), ProductStatus.AVAILABLE);
+    }
+
+    @Test
+    void givenProductsIsNull_whenAddProducts_thenThrow(){
+        StepVerifier.create(productImportService.addProducts(null))
+                .expectErrorMessage("Products is null")
+                .verify();
+    }
+
+    @Test
+    void givenProductsIsEmpty_whenAddProducts_thenReturnEmptyList(){
+        StepVerifier.create(productImportService.addProducts(List.of()))
+                .expectNext(List.of())
+                .verifyComplete();
+        verifyNoInteractions(productRepository, categoryService);
+    }
+
+    @Test
+    void whenAddProducts_thenValidateEachHierarchyOnceAndInsertInChunks(){
+        List<String> livingRoomHierarchy = List.of("Furniture", "Living Room");
+        List<Product> products = List.of(
+                product("Sofa 1", livingRoomHierarchy),
+                product("Sofa 2", new ArrayList<>(livingRoomHierarchy)),
+                product("Sofa 3", livingRoomHierarchy));
+        given(categoryService.validateCategoryHierarchy(livingRoomHierarchy)).willReturn(Mono.just(livingRoom));
+        given(productRepository.insertUnordered(anyList())).willReturn(Mono.just(Map.of()));
+
+        StepVerifier.create(productImportService.addProducts(products))
+                .expectNextMatches(results -> results.size() == 3 &&
+                        results.stream().allMatch(result -> result.error() == null) &&
+                        results.get(2).product().getName().equals("Sofa 3") &&
+                        results.get(2).index() == 2)
+                .verifyComplete();
+        verify(categoryService, times(1)).validateCategoryHierarchy(livingRoomHierarchy);
+        verify(productRepository, times(2)).insertUnordered(anyList());
+    }
+
+    @Test
+    void givenInvalidItems_whenAddProducts_thenReportErrorsPerItem(){
+        List<String> validHierarchy = List.of("Furniture", "Living Room");
+        List<String> invalidHierarchy = List.of("Furniture", "Garage");
+        List<Product> products = Arrays.asList(
+                product("Sofa 1", validHierarchy),
+                null,
+                product("Tool box", invalidHierarchy),
+                product("No category", List.of()),
+                product("Sofa 2", validHierarchy));
+        given(categoryService.validateCategoryHierarchy(validHierarchy)).willReturn(Mono.just(livingRoom));
+        given(categoryService.validateCategoryHierarchy(invalidHierarchy))
+                .willReturn(Mono.error(new IllegalArgumentException("Existing category provided doesn't exist")));
+        given(productRepository.insertUnordered(anyList())).willReturn(Mono.just(Map.of(1, "Product already exists")));
+
+        StepVerifier.create(productImportService.addProducts(products))
+                .expectNextMatches(results ->
+                        results.get(0).product() != null &&
+                        results.get(1).error().equals("Product is null") &&
+                        results.get(2).error().equals("Existing category provided doesn't exist") &&
+                        results.get(3).error().equals("Product category is null") &&
+                        results.get(4).error().equals("Product already exists") &&
+                        results.get(4).index() == 4)
+                .verifyComplete();
+    }
+
+    @Test
+    void whenImportProducts_thenEmitProgressPerBatchAndSummary(){
+        List<String> livingRoomHierarchy = List.of("Furniture", "Living Room");
+        List<String> invalidHierarchy = List.of("Garage");
+        given(categoryService.validateCategoryHierarchy(livingRoomHierarchy)).willReturn(Mono.just(livingRoom));
+        given(categoryService.validateCategoryHierarchy(invalidHierarchy)).willReturn(Mono.error(new IllegalArgumentException("Category not found")));
+        given(productRepository.insertUnordered(anyList())).willReturn(Mono.just(Map.of()));
+
+        Flux<Product> products = Flux.just(
+                product("Sofa 1", livingRoomHierarchy),
+                product("Sofa 2", livingRoomHierarchy),
+                product("Tool box", invalidHierarchy));
+
+        StepVerifier.create(productImportService.importProducts(products))
+                .expectNextMatches(progress -> progress.received() == 2 && progress.imported() == 2 && !progress.done())
+                .expectNextMatches(progress -> progress.received() == 3 && progress.failed() == 1 &&
+                        progress.errors().equals(List.of(new ImportProgress.ImportError(3, "Category not found"))))
+                .expectNextMatches(progress -> progress.done() && progress.imported() == 2 && progress.failed() == 1)
+                .verifyComplete();
+    }
+
+    @Test
+    void givenMalformedLines_whenImportJsonLines_thenSkipThemAndReportTheirLineNumbers(){
+        List<String> livingRoomHierarchy = List.of("Furniture", "Living Room");
+        given(categoryService.validateCategoryHierarchy(livingRoomHierarchy)).willReturn(Mono.just(livingRoom));
+        given(productRepository.insertUnordered(anyList())).willReturn(Mono.just(Map.of()));
+
+        Flux<String> lines = Flux.just(
+                "{\"name\": \"Sofa 1\", \"category\": [\"Furniture\", \"Living Room\"], \"status\": \"AVAILABLE\"}",
+                "{\"name\": \"Sofa 2\", \"category\": ",
+                "",
+                "{\"name\": \"Sofa 3\", \"category\": [\"Furniture\", \"Living Room\"], \"status\": \"AVAILABLE\"}");
+
+        StepVerifier.create(productImportService.importJsonLines(lines))
+                .expectNextMatches(progress -> progress.received() == 2 && progress.imported() == 1 && progress.failed() == 1 &&
+                        progress.errors().size() == 1 && progress.errors().get(0).line() == 2 &&
+                        progress.errors().get(0).error().startsWith("Malformed product"))
+                .expectNextMatches(progress -> progress.received() == 3 && progress.imported() == 2 && progress.errors().isEmpty())
+                .expectNextMatches(progress -> progress.done() && progress.imported() == 2 && progress.failed() == 1)
+                .verifyComplete();
+        verify(productRepository, times(2)).insertUnordered(anyList());
+    }
+}
@@ -6,13 +6,18 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.test.StepVerifier;
 
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.BDDMockito.given;
@@ -27,6 +32,9 @@ class ProductServiceTest {
     @Mock
     CategoryService categoryService;
 
+    @Spy
+    ProductCache productCache = ProductCache.disabled();
+
     @InjectMocks
     ProductService productService;
 
@@ -65,7 +73,8 @@ class ProductServiceTest {
     @Test
     void whenGetProductsByCategory_thenReturnProducts() {
         given(categoryService.validateCategoryHierarchy(anyList())).willReturn(Mono.just(livingRoom));
-        given(productRepository.findAllByCategory(anyList())).willReturn(Flux.just(sofa1, sofa2));
+        given(productRepository.findProjectedByCategory(List.of("Furniture", "Living Room"), false, null, 0, ProductProjection.ALL))
+                .willReturn(Flux.just(sofa1, sofa2));
 
         Flux<Product> productFlux = productService.getProductsByCategoryHierarchy(List.of("Furniture", "Living Room"));
         StepVerifier.create(productFlux)
@@ -73,6 +82,46 @@ class ProductServiceTest {
                 .verifyComplete();
     }
 
+    @Test
+    void givenIncludeDescendants_whenGetProductsByCategory_thenQueryCategoryAncestors() {
+        given(categoryService.validateCategoryHierarchy(anyList())).willReturn(Mono.just(furniture));
+        given(productRepository.findProjectedByCategory(List.of("Furniture"), true, null, 0, ProductProjection.ALL))
+                .willReturn(Flux.just(sofa1, sofa2));
+
+        Flux<Product> productFlux = productService.getProductsByCategoryHierarchy(List.of("Furniture"), true);
+        StepVerifier.create(productFlux)
+                .expectNext(sofa1, sofa2)
+                .verifyComplete();
+    }
+
+    @Test
+    void whenStreamProductsByCategory_thenRequestProductsInBatches() {
+        List<Long> requested = new CopyOnWriteArrayList<>();
+        given(categoryService.validateCategoryHierarchy(anyList())).willReturn(Mono.just(furniture));
+        given(productRepository.findProjectedByCategory(List.of("Furniture"), true, null, 0, ProductProjection.ALL))
+                .willReturn(Flux.range(0, 1000).map(i -> sofa1).doOnRequest(requested::add));
+
+        StepVerifier.create(productService.streamProductsByCategoryHierarchy(List.of("Furniture"), true, ProductProjection.ALL), 0)
+                .thenRequest(1)
+                .expectNext(sofa1)
+                .then(() -> assertThat(requested, is(List.of((long) ProductService.STREAM_BATCH_SIZE))))
+                .thenRequest(Long.MAX_VALUE)
+                .expectNextCount(999)
+                .verifyComplete();
+        assertThat(requested.stream().allMatch(request -> request <= ProductService.STREAM_BATCH_SIZE), is(true));
+    }
+
+    @Test
+    void givenIncludeDescendants_whenGetProductsPageByCategory_thenQueryCategoryAncestors() {
+        given(categoryService.validateCategoryHierarchy(anyList())).willReturn(Mono.just(furniture));
+        given(productRepository.findProjectedByCategory(List.of("Furniture"), true, "1", 11, ProductProjection.ALL))
+                .willReturn(Flux.just(sofa2));
+
+        StepVerifier.create(productService.getProductsByCategoryHierarchy(List.of("Furniture"), true, 10, "1"))
+                .expectNextMatches(page -> page.products().equals(List.of(sofa2)) && !page.hasNextPage())
+                .verifyComplete();
+    }
+
     @Test
     void givenCategoryHierarchyIsNull_whenGetProductsByCategory_thenReturnProducts() {
         Flux<Product> productFlux = productService.getProductsByCategoryHierarchy(null);
@@ -91,6 +140,128 @@ class ProductServiceTest {
 
     }
 
+    @Test
+    void whenGetProductsPageByCategory_thenReturnFirstPage() {
+        given(categoryService.validateCategoryHierarchy(anyList())).willReturn(Mono.just(livingRoom));
+        given(productRepository.findProjectedByCategory(List.of("Furniture", "Living Room"), false, null, 2, ProductProjection.ALL))
+                .willReturn(Flux.just(sofa1, sofa2));
+
+        StepVerifier.create(productService.getProductsByCategoryHierarchy(List.of("Furniture", "Living Room"), false, 1, null))
+                .expectNextMatches(page -> page.products().equals(List.of(sofa1)) && page.hasNextPage())
+                .verifyComplete();
+    }
+
+    @Test
+    void givenAfterId_whenGetProductsPageByCategory_thenReturnProductsAfterId() {
+        given(categoryService.validateCategoryHierarchy(anyList())).willReturn(Mono.just(livingRoom));
+        given(productRepository.findProjectedByCategory(List.of("Furniture", "Living Room"), false, "1", 3, ProductProjection.ALL))
+                .willReturn(Flux.just(sofa2, sofa3));
+
+        StepVerifier.create(productService.getProductsByCategoryHierarchy(List.of("Furniture", "Living Room"), false, 2, "1"))
+                .expectNextMatches(page -> page.products().equals(List.of(sofa2, sofa3)) && !page.hasNextPage())
+                .verifyComplete();
+    }
+
+    @Test
+    void givenFirstIsOutOfRange_whenGetProductsPageByCategory_thenThrow() {
+        StepVerifier.create(productService.getProductsByCategoryHierarchy(List.of("Furniture"), false, 0, null))
+                .expectErrorMessage("First must be between 1 and 100")
+                .verify();
+        StepVerifier.create(productService.getProductsByCategoryHierarchy(List.of("Furniture"), false, 101, null))
+                .expectErrorMessage("First must be between 1 and 100")
+                .verify();
+    }
+
+    @Test
+    void givenFilterWithCategory_whenFindProducts_thenValidateCategoryAndReturnPage() {
+        ProductFilter filter = new ProductFilter(List.of("Furniture"), true, List.of(ProductStatus.AVAILABLE), List.of("luxury"), null, null);
+        given(categoryService.validateCategoryHierarchy(List.of("Furniture"))).willReturn(Mono.just(furniture));
+        given(productRepository.findProjectedByFilter(filter, "1", 2, ProductProjection.ALL)).willReturn(Flux.just(sofa2, sofa3));
+
+        StepVerifier.create(productService.findProducts(filter, 1, "1", ProductProjection.ALL))
+                .expectNextMatches(page -> page.products().equals(List.of(sofa2)) && page.hasNextPage())
+                .verifyComplete();
+    }
+
+    @Test
+    void givenNoFilter_whenFindProducts_thenReadAllProducts() {
+        given(productRepository.findProjectedByFilter(ProductFilter.NONE, null, 11, ProductProjection.ALL)).willReturn(Flux.just(sofa1));
+
+        StepVerifier.create(productService.findProducts(null, 10, null, ProductProjection.ALL))
+                .expectNextMatches(page -> page.products().equals(List.of(sofa1)) && !page.hasNextPage())
+                .verifyComplete();
+        verifyNoInteractions(categoryService);
+    }
+
+    @Test
+    void givenFirstOutOfRange_whenFindProducts_thenThrow() {
+        StepVerifier.create(productService.findProducts(ProductFilter.NONE, 0, null, ProductProjection.ALL))
+                .expectErrorMessage("First must be between 1 and 100")
+                .verify();
+    }
+
+    @Test
+    void whenFindProductsByVariantAttributes_thenPassAttributesAndCategoryToRepository() {
+        List<Attribute> attributes = List.of(new Attribute("color", "red"), new Attribute("size", "L"));
+        given(categoryService.validateCategoryHierarchy(List.of("Furniture"))).willReturn(Mono.just(furniture));
+        given(productRepository.findProjectedByVariantAttributes(attributes, List.of("Furniture"), true, null, 11, true, ProductProjection.ALL))
+                .willReturn(Flux.just(sofa1, sofa2));
+
+        StepVerifier.create(productService.findProductsByVariantAttributes(attributes, List.of("Furniture"), true, 10, null, true, ProductProjection.ALL))
+                .expectNextMatches(page -> page.products().equals(List.of(sofa1, sofa2)) && !page.hasNextPage())
+                .verifyComplete();
+    }
+
+    @Test
+    void givenNoAttributes_whenFindProductsByVariantAttributes_thenThrow() {
+        StepVerifier.create(productService.findProductsByVariantAttributes(List.of(), null, false, 10, null, false, ProductProjection.ALL))
+                .expectErrorMessage("Attributes are empty")
+                .verify();
+        verifyNoInteractions(productRepository);
+    }
+
+    @Test
+    void whenSearchProducts_thenReturnFirstPage() {
+        sofa1.setScore(2.5);
+        sofa2.setScore(1.5);
+        given(productRepository.searchProducts("sofa", null, null, null, 2, ProductProjection.ALL)).willReturn(Flux.just(sofa1, sofa2));
+
+        StepVerifier.create(productService.searchProducts("sofa", null, 1, null, ProductProjection.ALL))
+                .expectNextMatches(page -> page.products().equals(List.of(sofa1)) && page.hasNextPage())
+                .verifyComplete();
+        verifyNoInteractions(categoryService);
+    }
+
+    @Test
+    void givenAfterPositionAndCategory_whenSearchProducts_thenSearchAfterPositionInSubtree() {
+        given(categoryService.validateCategoryHierarchy(List.of("Furniture"))).willReturn(Mono.just(furniture));
+        given(productRepository.searchProducts("sofa", CategoryPath.of(List.of("Furniture")), 2.5, "1", 11, ProductProjection.ALL))
+                .willReturn(Flux.just(sofa2));
+
+        StepVerifier.create(productService.searchProducts("sofa", List.of("Furniture"), 10, "2.5:1", ProductProjection.ALL))
+                .expectNextMatches(page -> page.products().equals(List.of(sofa2)) && !page.hasNextPage())
+                .verifyComplete();
+    }
+
+    @Test
+    void givenInvalidSearch_whenSearchProducts_thenThrow() {
+        StepVerifier.create(productService.searchProducts(" ", null, 10, null, ProductProjection.ALL))
+                .expectErrorMessage("Search text is empty")
+                .verify();
+        StepVerifier.create(productService.searchProducts("sofa", null, 101, null, ProductProjection.ALL))
+                .expectErrorMessage("First must be between 1 and 100")
+                .verify();
+        StepVerifier.create(productService.searchProducts("sofa", null, 10, "not a position", ProductProjection.ALL))
+                .expectErrorMessage("Invalid cursor")
+                .verify();
+    }
+
+    @Test
+    void searchPosition_isScoreAndId() {
+        sofa1.setScore(2.5);
+        assertThat(ProductService.searchPosition(sofa1), is("2.5:1"));
+    }
+
     @Test
     void whenAddProduct_thenReturnProduct(){
         given(productRepository.save(sofa3)).willReturn(Mono.just(sofa3));
@@ -99,6 +270,23 @@ class ProductServiceTest {
         StepVerifier.create(productMono)
                 .expectNext(sofa3)
                 .verifyComplete();
+        verify(productCache).invalidate("3");
+    }
+
+    @Test
+    void whenAddProduct_thenCategoryAncestorsAreMaterialized(){
+        Product product = new Product();
+        product.setName("Sofa 4");
+        product.setCategory(List.of("Furniture", "Living Room"));
+        given(productRepository.save(product)).willReturn(Mono.just(product));
+        given(categoryService.validateCategoryHierarchy(anyList())).willReturn(Mono.just(livingRoom));
+
+        StepVerifier.create(productService.addProduct(product))
+                .expectNextMatches(saved -> saved.getCategoryAncestors().equals(List.of(
+                        CategoryPath.of(List.of("Furniture")),
+                        CategoryPath.of(List.of("Furniture", "Living Room"))
+                )))
+                .verifyComplete();
     }
 
     @Test
@@ -166,6 +354,34 @@ class ProductServiceTest {
                 .verifyComplete();
     }
 
+    @Test
+    void whenGetProductsByIds_thenReturnProductsKeyedById(){
+        given(productRepository.findProjectedByIds(List.of("1", "3", "9"), ProductProjection.ALL)).willReturn(Flux.just(sofa1, sofa3));
+        StepVerifier.create(productService.getProductsByIds(List.of("1", "3", "9")))
+                .expectNext(Map.of("1", sofa1, "3", sofa3))
+                .verifyComplete();
+    }
+
+    @Test
+    void givenProjection_whenGetProductsByCategory_thenProjectionIsPassedToRepository() {
+        ProductProjection projection = ProductProjection.of(List.of("name"));
+        given(categoryService.validateCategoryHierarchy(anyList())).willReturn(Mono.just(livingRoom));
+        given(productRepository.findProjectedByCategory(List.of("Furniture", "Living Room"), false, null, 0, projection))
+                .willReturn(Flux.just(sofa1));
+
+        StepVerifier.create(productService.getProductsByCategoryHierarchy(List.of("Furniture", "Living Room"), false, projection))
+                .expectNext(sofa1)
+                .verifyComplete();
+    }
+
+    @Test
+    void givenNoIds_whenGetProductsByIds_thenReturnEmptyMap(){
+        StepVerifier.create(productService.getProductsByIds(List.of()))
+                .expectNext(Map.of())
+                .verifyComplete();
+        verifyNoInteractions(productRepository);
+    }
+
     @Test
     void givenProductIdIsNull_whenAddVariant_thenThrow() {
         StepVerifier.create(productService.addVariant(null, new Variant("Variant", List.of())))
@@ -182,8 +398,10 @@ class ProductServiceTest {
 
     @Test
     void givenProductNotFound_whenAddVariant_thenThrow(){
-        given(productRepository.findById("9")).willReturn(Mono.empty());
-        StepVerifier.create(productService.addVariant("9", new Variant("Variant", List.of())))
+        Variant variant = new Variant("Variant", List.of());
+        given(productRepository.pushVariant("9", variant)).willReturn(Mono.empty());
+        given(productRepository.existsById("9")).willReturn(Mono.just(false));
+        StepVerifier.create(productService.addVariant("9", variant))
                 .expectErrorMessage("Product not found")
                 .verify();
     }
@@ -191,18 +409,8 @@ class ProductServiceTest {
     @Test
     void givenProductAlreadyHasVariantOfName_whenAddVariant_thenThrow(){
         Variant variant1 = new Variant("Variant 1", List.of());
-        Variant variant2 = new Variant("Variant 2", List.of());
-        Product product = new Product(
-                "1",
-                "Product",
-                "Description",
-                List.of(),
-                List.of("Category"),
-                List.of("tags"),
-                List.of(variant1, variant2),
-                ProductStatus.AVAILABLE
-        );
-        given(productRepository.findById("1")).willReturn(Mono.just(product));
+        given(productRepository.pushVariant("1", variant1)).willReturn(Mono.empty());
+        given(productRepository.existsById("1")).willReturn(Mono.just(true));
         StepVerifier.create(productService.addVariant("1", variant1))
                 .expectErrorMessage("Variant name already exists")
                 .verify();
@@ -213,15 +421,84 @@ class ProductServiceTest {
         Variant blue2SeaterSofa = new Variant("blue 2 seater", List.of(
                 new Attribute("color", "blue")
         ));
-        ProductRepository spyProductRepository = spy(productRepository);
-
-        given(spyProductRepository.findById("1")).willReturn(Mono.just(sofa1));
-        doAnswer(invocation -> Mono.just(sofa1)).when(spyProductRepository).save(any());
-        ProductService spiedProductService = new ProductService(spyProductRepository, categoryService);
+        given(productRepository.pushVariant("1", blue2SeaterSofa)).willReturn(Mono.just(sofa1));
 
-        StepVerifier.create(spiedProductService.addVariant("1", blue2SeaterSofa))
+        StepVerifier.create(productService.addVariant("1", blue2SeaterSofa))
                 .expectNext(sofa1)
                 .verifyComplete();
-        verify(spyProductRepository, times(1)).save(any());
+        verify(productRepository, never()).existsById(anyString());
+        verify(productRepository, never()).save(any());
+        verify(productCache).invalidate("1");
+    }
+
+    @Test
+    void givenVariantNotAdded_whenAddVariant_thenKeepCachedProduct(){
+        Variant variant1 = new Variant("Variant 1", List.of());
+        given(productRepository.pushVariant("1", variant1)).willReturn(Mono.empty());
+        given(productRepository.existsById("1")).willReturn(Mono.just(true));
+        StepVerifier.create(productService.addVariant("1", variant1))
+                .expectErrorMessage("Variant name already exists")
+                .verify();
+        verify(productCache, never()).invalidate(anyString());
+    }
+
+    @Test
+    void whenAppendVariant_thenReturnOnlyTheVariant(){
+        Variant variant = new Variant("blue", List.of(new Attribute("color", "blue")));
+        given(productRepository.appendVariant("1", variant)).willReturn(Mono.just(true));
+
+        StepVerifier.create(productService.appendVariant("1", variant))
+                .expectNext(variant)
+                .verifyComplete();
+        verify(productRepository, never()).existsById(anyString());
+        verify(productCache).invalidate("1");
+    }
+
+    @Test
+    void givenVariantNotAppended_whenAppendVariant_thenThrow(){
+        Variant variant = new Variant("Variant 1", List.of());
+        given(productRepository.appendVariant("1", variant)).willReturn(Mono.just(false));
+        given(productRepository.appendVariant("9", variant)).willReturn(Mono.just(false));
+        given(productRepository.existsById("1")).willReturn(Mono.just(true));
+        given(productRepository.existsById("9")).willReturn(Mono.just(false));
+
+        StepVerifier.create(productService.appendVariant("1", variant))
+                .expectErrorMessage("Variant name already exists")
+                .verify();
+        StepVerifier.create(productService.appendVariant("9", variant))
+                .expectErrorMessage("Product not found")
+                .verify();
+        verify(productCache, never()).invalidate(anyString());
+    }
+
+    @Test
+    void givenNullArguments_whenAppendVariant_thenThrow(){
+        StepVerifier.create(productService.appendVariant(null, new Variant("Variant", List.of())))
+                .expectErrorMessage("ProductId is null")
+                .verify();
+        StepVerifier.create(productService.appendVariant("1", null))
+                .expectErrorMessage("Variant is null")
+                .verify();
+    }
+
+    @Test
+    void whenGetVariant_thenReturnTheVariant(){
+        Variant variant = new Variant("blue", List.of());
+        given(productRepository.findVariant("1", "blue")).willReturn(Mono.just(variant));
+
+        StepVerifier.create(productService.getVariant("1", "blue"))
+                .expectNext(variant)
+                .verifyComplete();
+    }
+
+    @Test
+    void givenNullArguments_whenGetVariant_thenThrow(){
+        StepVerifier.create(productService.getVariant(null, "blue"))
+                .expectErrorMessage("ProductId is null")
+                .verify();
+        StepVerifier.create(productService.getVariant("1", null))
+                .expectErrorMessage("Variant name is null")
+                .verify();
+        verifyNoInteractions(productRepository);
     }
 }